@@ -0,0 +1,35 @@
+package de.briemla.matsim.benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks selected on the command line, all of them by default,
+ * and writes the results as JSON to {@link #RESULT_FILE}. All other JMH
+ * command line options are supported as well, e.g.
+ * <code>DistrictBenchmark -f 1</code>.
+ *
+ * @author lars
+ *
+ */
+public class Benchmarks {
+
+	private static final String RESULT_FILE = "target/jmh-result.json";
+
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+		CommandLineOptions commandLine = new CommandLineOptions(args);
+		OptionsBuilder options = new OptionsBuilder();
+		options.parent(commandLine);
+		if (!commandLine.getResultFormat().hasValue()) {
+			options.resultFormat(ResultFormatType.JSON);
+		}
+		if (!commandLine.getResult().hasValue()) {
+			options.result(RESULT_FILE);
+		}
+		new Runner(options.build()).run();
+	}
+}
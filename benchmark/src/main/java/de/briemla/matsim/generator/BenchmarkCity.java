@@ -0,0 +1,79 @@
+package de.briemla.matsim.generator;
+
+import java.awt.geom.Rectangle2D;
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.NetworkFactory;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.core.utils.geometry.CoordImpl;
+
+/**
+ * Input shared by the benchmarks: the {@link District}s of Karlsruhe and
+ * {@link Node}s at random positions inside their bounding box. All random
+ * numbers are drawn from fixed seeds, so every run uses the same input.
+ *
+ * @author lars
+ *
+ */
+class BenchmarkCity {
+
+	/**
+	 * kml file relative to the benchmark module, can be changed with the
+	 * system property <code>benchmark.kml</code>.
+	 */
+	static final File KML = new File(System.getProperty("benchmark.kml", "../transit/input/doc.kml"));
+	static final long SEED = 42L;
+
+	private BenchmarkCity() {
+	}
+
+	/**
+	 * @return {@link City} with the {@link District}s of Karlsruhe, but
+	 *         without {@link Node}s
+	 */
+	static City districts() {
+		return DistrictGenerator.loadDistricts(Statistic.karlsruhe(), KML);
+	}
+
+	/**
+	 * Create {@link Node}s uniformly distributed over the bounding box of the
+	 * {@link City}.
+	 *
+	 * @param city
+	 *            {@link City} whose bounds are used
+	 * @param count
+	 *            number of {@link Node}s
+	 * @param seed
+	 *            seed of the positions
+	 * @return {@link Node}s by id in creation order
+	 */
+	static Map<Id<Node>, Node> randomNodes(City city, int count, long seed) {
+		Rectangle2D bounds = city.getBounds();
+		NetworkFactory factory = ScenarioUtils.createScenario(ConfigUtils.createConfig()).getNetwork().getFactory();
+		SplittableRandom random = new SplittableRandom(seed);
+		Map<Id<Node>, Node> nodes = new LinkedHashMap<>(2 * count);
+		for (int node = 0; node < count; node++) {
+			double x = bounds.getMinX() + random.nextDouble() * bounds.getWidth();
+			double y = bounds.getMinY() + random.nextDouble() * bounds.getHeight();
+			Id<Node> id = Id.createNodeId(node);
+			nodes.put(id, factory.createNode(id, new CoordImpl(x, y)));
+		}
+		return nodes;
+	}
+
+	/**
+	 * @return {@link City} of Karlsruhe whose {@link District}s contain the
+	 *         given {@link Node}s, ready to create its population
+	 */
+	static City withNodes(Map<Id<Node>, Node> nodes) {
+		City city = districts();
+		city.addNodes(nodes);
+		return city;
+	}
+}
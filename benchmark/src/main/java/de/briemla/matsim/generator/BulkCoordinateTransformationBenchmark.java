@@ -0,0 +1,76 @@
+package de.briemla.matsim.generator;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.matsim.api.core.v01.Coord;
+import org.matsim.core.utils.geometry.CoordImpl;
+import org.matsim.core.utils.geometry.CoordinateTransformation;
+import org.matsim.core.utils.geometry.transformations.TransformationFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the throughput of {@link BulkCoordinateTransformation} with
+ * transforming one {@link Coord} at a time.
+ *
+ * @author lars
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BulkCoordinateTransformationBenchmark {
+
+	private static final int POINTS = 1_000_000;
+
+	private final CoordinateTransformation single = TransformationFactory.getCoordinateTransformation(
+			TransformationFactory.WGS84, TransformationFactory.WGS84_UTM33N);
+	private final BulkCoordinateTransformation bulk = BulkCoordinateTransformation
+			.between(TransformationFactory.WGS84, TransformationFactory.WGS84_UTM33N);
+	private double[] longitudes;
+	private double[] latitudes;
+
+	@Setup
+	public void createPoints() {
+		longitudes = new double[POINTS];
+		latitudes = new double[POINTS];
+		SplittableRandom random = new SplittableRandom(BenchmarkCity.SEED);
+		for (int point = 0; point < POINTS; point++) {
+			longitudes[point] = 8.2 + random.nextDouble() * 0.5;
+			latitudes[point] = 48.9 + random.nextDouble() * 0.2;
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(POINTS)
+	public double[] single() {
+		double[] x = new double[POINTS];
+		for (int point = 0; point < POINTS; point++) {
+			Coord transformed = single.transform(new CoordImpl(longitudes[point], latitudes[point]));
+			x[point] = transformed.getX();
+		}
+		return x;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(POINTS)
+	public double[] bulk() {
+		double[] x = longitudes.clone();
+		double[] y = latitudes.clone();
+		bulk.transform(x, y);
+		return x;
+	}
+}
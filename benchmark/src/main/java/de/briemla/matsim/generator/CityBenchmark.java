@@ -0,0 +1,158 @@
+package de.briemla.matsim.generator;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.PopulationFactory;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks of the population synthesis of a {@link City}. Splitting
+ * {@link Node}s into {@link District}s and creating the population change
+ * the {@link City}, so each invocation gets a new {@link City} and is
+ * measured as a single shot.
+ *
+ * @author lars
+ *
+ */
+@Fork(1)
+public class CityBenchmark {
+
+	/**
+	 * {@link Node}s for {@link City#addNodes(Map)}.
+	 */
+	@State(Scope.Benchmark)
+	public static class SplitState {
+
+		@Param({ "1000000" })
+		public int nodes;
+
+		private Map<Id<Node>, Node> network;
+		private City city;
+
+		@Setup(Level.Trial)
+		public void createNodes() {
+			network = BenchmarkCity.randomNodes(BenchmarkCity.districts(), nodes, BenchmarkCity.SEED);
+		}
+
+		@Setup(Level.Invocation)
+		public void createCity() {
+			city = BenchmarkCity.districts();
+		}
+	}
+
+	/**
+	 * {@link City} with {@link Node}s, whose population has not been created
+	 * yet.
+	 */
+	@State(Scope.Benchmark)
+	public static class PopulationState {
+
+		@Param({ "100000" })
+		public int nodes;
+		@Param({ "1", "4" })
+		public int threads;
+
+		private Map<Id<Node>, Node> network;
+		private PopulationFactory factory;
+		private City city;
+
+		@Setup(Level.Trial)
+		public void createNodes() {
+			network = BenchmarkCity.randomNodes(BenchmarkCity.districts(), nodes, BenchmarkCity.SEED);
+			factory = ScenarioUtils.createScenario(ConfigUtils.createConfig()).getPopulation().getFactory();
+		}
+
+		@Setup(Level.Invocation)
+		public void createCity() {
+			city = BenchmarkCity.withNodes(network);
+		}
+	}
+
+	/**
+	 * {@link PlanTable} of a complete population to create {@link Person}s
+	 * from.
+	 */
+	@State(Scope.Thread)
+	public static class TableState {
+
+		private PlanTable table;
+		private PopulationFactory factory;
+		private int row;
+
+		@Setup(Level.Trial)
+		public void createTable() {
+			City city = BenchmarkCity.withNodes(BenchmarkCity.randomNodes(BenchmarkCity.districts(), 100_000,
+					BenchmarkCity.SEED));
+			table = city.createPlanTable(BenchmarkCity.SEED, 1);
+			factory = ScenarioUtils.createScenario(ConfigUtils.createConfig()).getPopulation().getFactory();
+		}
+
+		int nextRow() {
+			row = row + 1 == table.size() ? 0 : row + 1;
+			return row;
+		}
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	@Warmup(iterations = 3)
+	@Measurement(iterations = 10)
+	public City addNodes(SplitState state) {
+		state.city.addNodes(state.network);
+		return state.city;
+	}
+
+	/**
+	 * Workplace assignment of all inhabitants followed by the plan creation
+	 * of all {@link District}s.
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	@Warmup(iterations = 3)
+	@Measurement(iterations = 10)
+	public PlanTable createPlanTable(PopulationState state) {
+		return state.city.createPlanTable(BenchmarkCity.SEED, state.threads);
+	}
+
+	/**
+	 * Complete population synthesis including the creation of every
+	 * {@link Person}.
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	@Warmup(iterations = 3)
+	@Measurement(iterations = 10)
+	public void createPopulation(PopulationState state, Blackhole blackhole) {
+		state.city.createPopulation(state.factory, blackhole::consume, BenchmarkCity.SEED, state.threads);
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	@Warmup(iterations = 5, time = 1)
+	@Measurement(iterations = 10, time = 1)
+	public Person createPerson(TableState state) {
+		return state.table.person(state.nextRow(), state.factory);
+	}
+}
@@ -0,0 +1,69 @@
+package de.briemla.matsim.generator;
+
+import java.awt.geom.Rectangle2D;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Point in polygon tests of {@link District#isInside(double, double)} on the
+ * borders of Karlsruhe. Each operation tests one point against every
+ * {@link District}, which is what a lookup without spatial index costs.
+ *
+ * @author lars
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class DistrictBenchmark {
+
+	private static final int POINTS = 10_000;
+
+	private List<District> districts;
+	private double[] x;
+	private double[] y;
+
+	@Setup
+	public void setUp() {
+		City city = BenchmarkCity.districts();
+		districts = city.getDistricts();
+		Rectangle2D bounds = city.getBounds();
+		SplittableRandom random = new SplittableRandom(BenchmarkCity.SEED);
+		x = new double[POINTS];
+		y = new double[POINTS];
+		for (int point = 0; point < POINTS; point++) {
+			x[point] = bounds.getMinX() + random.nextDouble() * bounds.getWidth();
+			y[point] = bounds.getMinY() + random.nextDouble() * bounds.getHeight();
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(POINTS)
+	public int isInside() {
+		int inside = 0;
+		for (int point = 0; point < POINTS; point++) {
+			for (District district : districts) {
+				if (district.isInside(x[point], y[point])) {
+					inside++;
+				}
+			}
+		}
+		return inside;
+	}
+}
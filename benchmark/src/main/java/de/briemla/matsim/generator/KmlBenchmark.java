@@ -0,0 +1,48 @@
+package de.briemla.matsim.generator;
+
+import java.util.concurrent.TimeUnit;
+
+import org.matsim.core.utils.geometry.transformations.TransformationFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Loading the {@link District}s of Karlsruhe, once by parsing and
+ * projecting the kml file and once from the {@link DistrictCache}.
+ *
+ * @author lars
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class KmlBenchmark {
+
+	private static final BulkCoordinateTransformation TRANSFORMATION = BulkCoordinateTransformation
+			.between(TransformationFactory.WGS84, TransformationFactory.WGS84_UTM33N);
+
+	@Benchmark
+	public void readKml(Blackhole blackhole) {
+		DistrictBorders borders = new DistrictBorders();
+		new KmlDistrictReader(BenchmarkCity.KML).read(borders);
+		borders.transform(TRANSFORMATION);
+		blackhole.consume(borders);
+	}
+
+	/**
+	 * Uses the cache next to the kml file, which is written by the first
+	 * call if it is missing.
+	 */
+	@Benchmark
+	public City loadDistricts() {
+		return BenchmarkCity.districts();
+	}
+}
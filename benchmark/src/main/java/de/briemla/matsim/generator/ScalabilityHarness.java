@@ -0,0 +1,103 @@
+package de.briemla.matsim.generator;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Node;
+
+import de.briemla.matsim.instrumentation.PhaseTimer;
+import de.briemla.matsim.instrumentation.PhaseTimer.Phase;
+
+/**
+ * Runs splitting and population synthesis on {@link SyntheticCity}s of
+ * growing size and prints time and memory per size as CSV, so scaling
+ * regressions show up before they hit the real input. All phases are also
+ * written as JSON report by {@link PhaseTimer}.
+ * <p>
+ * The sizes can be changed on the command line, e.g.
+ * <code>--districts=10,100,1000 --corners=4,256 --nodes=100000,1000000 --inhabitants=1000000 --threads=4</code>
+ * . Corners are counted per district border. Every combination of districts,
+ * corners and nodes is run with every number of inhabitants.
+ *
+ * @author lars
+ *
+ */
+public class ScalabilityHarness {
+
+	private static final String DISTRICTS_OPTION = "--districts=";
+	private static final String CORNERS_OPTION = "--corners=";
+	private static final String NODES_OPTION = "--nodes=";
+	private static final String INHABITANTS_OPTION = "--inhabitants=";
+	private static final String THREADS_OPTION = "--threads=";
+	private static final int[] DEFAULT_DISTRICTS = { 10, 100, 1000 };
+	private static final int[] DEFAULT_CORNERS = { 4, 256 };
+	private static final int[] DEFAULT_NODES = { 10_000, 100_000, 1_000_000 };
+	private static final int[] DEFAULT_INHABITANTS = { 100_000, 1_000_000 };
+	private static final long SEED = 42L;
+	private static final long BYTES_PER_MEGABYTE = 1024 * 1024;
+	private static final long NANOS_PER_MILLI = 1000000L;
+
+	public static void main(String[] args) {
+		int[] districts = option(args, DISTRICTS_OPTION, DEFAULT_DISTRICTS);
+		int[] corners = option(args, CORNERS_OPTION, DEFAULT_CORNERS);
+		int[] nodes = option(args, NODES_OPTION, DEFAULT_NODES);
+		int[] inhabitants = option(args, INHABITANTS_OPTION, DEFAULT_INHABITANTS);
+		int threads = option(args, THREADS_OPTION, new int[] { Runtime.getRuntime().availableProcessors() })[0];
+
+		PhaseTimer timer = new PhaseTimer(ScalabilityHarness.class.getSimpleName());
+		System.out.println(
+				"districts,corners,nodes,inhabitants,threads,createMs,splitMs,populateMs,totalMs,peakHeapMB");
+		for (int districtCount : districts) {
+			for (int cornerCount : corners) {
+				for (int nodeCount : nodes) {
+					if (nodeCount < districtCount) {
+						continue;
+					}
+					for (int inhabitantCount : inhabitants) {
+						SyntheticCity synthetic = new SyntheticCity(districtCount, nodeCount, inhabitantCount,
+								cornerCount, SEED);
+						run(timer, synthetic, threads, districtCount + "," + synthetic.corners() + "," + nodeCount
+								+ "," + inhabitantCount + "," + threads);
+					}
+				}
+			}
+		}
+		timer.finish(System.out);
+	}
+
+	/**
+	 * Each size is measured in its own top level phase, so its peak heap
+	 * usage does not include previous sizes.
+	 */
+	private static void run(PhaseTimer timer, SyntheticCity synthetic, int threads, String size) {
+		System.gc();
+		Phase total = timer.start(size + " total");
+		Phase create = timer.start(size + " create");
+		City city = synthetic.createDistricts();
+		Map<Id<Node>, Node> network = synthetic.createNodes();
+		create.end();
+		Phase split = timer.start(size + " split");
+		city.addNodes(network);
+		split.end();
+		Phase populate = timer.start(size + " populate");
+		PlanTable table = city.createPlanTable(SEED, threads);
+		populate.end();
+		total.end();
+		if (table.size() == 0) {
+			System.out.println("No plans created for " + size);
+		}
+		System.out.println(size + "," + millis(create) + "," + millis(split) + "," + millis(populate) + ","
+				+ millis(total) + "," + total.getPeakHeap() / BYTES_PER_MEGABYTE);
+	}
+
+	private static long millis(Phase phase) {
+		return phase.getWallTime() / NANOS_PER_MILLI;
+	}
+
+	private static int[] option(String[] args, String option, int[] defaultValues) {
+		return Arrays.stream(args).filter(arg -> arg.startsWith(option)).findFirst()
+				.map(arg -> Arrays.stream(arg.substring(option.length()).split(",")).map(String::trim)
+						.mapToInt(Integer::parseInt).toArray()).orElse(defaultValues);
+	}
+}
@@ -0,0 +1,257 @@
+package de.briemla.matsim.generator;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.NetworkFactory;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.core.utils.geometry.CoordImpl;
+import org.matsim.core.utils.geometry.transformations.TransformationFactory;
+
+/**
+ * Creates cities of arbitrary size in memory, independent of the input of
+ * Karlsruhe. The {@link District}s are the cells of a square grid, the
+ * {@link Node}s are distributed uniformly over the grid. Real borders have
+ * hundreds of corners, which drive the cost of splitting the network, so each
+ * side of a cell is divided into several segments. Sides between two
+ * {@link District}s are jittered, while both {@link District}s share the
+ * same corners, so the {@link District}s still cover the grid without gaps
+ * or overlaps. Inhabitants and workplaces vary randomly between
+ * {@link District}s, while there are always more workplaces than
+ * inhabitants, so every inhabitant finds a workplace. Everything is derived
+ * from a single seed.
+ *
+ * @author lars
+ *
+ */
+public class SyntheticCity {
+
+	private static final double CELL_SIZE = 1000.0;
+	private static final double WORKPLACE_SURPLUS = 1.1;
+	/**
+	 * Maximum displacement of a corner relative to the length of a segment.
+	 * It is less than half a segment, so the sides of a cell never cross.
+	 */
+	private static final double JITTER = 0.4;
+	private static final int SIDES = 4;
+	private static final String NAME_PREFIX = "District ";
+	/**
+	 * Borders and {@link Node}s are created in projected coordinates, so
+	 * nothing is transformed.
+	 */
+	private static final BulkCoordinateTransformation IDENTITY = BulkCoordinateTransformation.between(
+			TransformationFactory.WGS84_UTM33N, TransformationFactory.WGS84_UTM33N);
+
+	private final int districts;
+	private final int nodes;
+	private final int inhabitants;
+	private final int segmentsPerSide;
+	private final long seed;
+	private final int columns;
+
+	/**
+	 * @param districts
+	 *            number of {@link District}s
+	 * @param nodes
+	 *            number of {@link Node}s, at least one per {@link District}
+	 * @param inhabitants
+	 *            number of inhabitants of the whole city
+	 * @param corners
+	 *            number of corners of the border of each {@link District},
+	 *            rounded down to a multiple of four
+	 * @param seed
+	 *            seed of all random decisions
+	 */
+	public SyntheticCity(int districts, int nodes, int inhabitants, int corners, long seed) {
+		if (districts < 1) {
+			throw new IllegalArgumentException("At least one district is required, but got " + districts);
+		}
+		if (nodes < districts) {
+			throw new IllegalArgumentException("Each of the " + districts + " districts needs a node, but got only "
+					+ nodes + " nodes");
+		}
+		if (corners < SIDES) {
+			throw new IllegalArgumentException("A border needs at least " + SIDES + " corners, but got " + corners);
+		}
+		this.districts = districts;
+		this.nodes = nodes;
+		this.inhabitants = inhabitants;
+		this.segmentsPerSide = corners / SIDES;
+		this.seed = seed;
+		this.columns = (int) Math.ceil(Math.sqrt(districts));
+	}
+
+	/**
+	 * @return census of each {@link District}
+	 */
+	public Statistic createStatistic() {
+		SplittableRandom random = new SplittableRandom(seed);
+		double[] inhabitantWeights = weights(random);
+		double[] workplaceWeights = weights(random);
+		int[] districtInhabitants = distribute(inhabitants, inhabitantWeights);
+		int[] districtWorkplaces = distribute((int) Math.ceil(WORKPLACE_SURPLUS * inhabitants), workplaceWeights);
+		Statistic statistic = new Statistic();
+		for (int district = 0; district < districts; district++) {
+			statistic.add(new Census(name(district), districtInhabitants[district], districtWorkplaces[district]));
+		}
+		return statistic;
+	}
+
+	/**
+	 * Random weights between 0.5 and 1.5.
+	 */
+	private double[] weights(SplittableRandom random) {
+		double[] weights = new double[districts];
+		for (int district = 0; district < districts; district++) {
+			weights[district] = 0.5 + random.nextDouble();
+		}
+		return weights;
+	}
+
+	/**
+	 * Split the total by the weights. Rounding down loses less than one per
+	 * {@link District}, which is added to the first {@link District}s.
+	 */
+	private static int[] distribute(int total, double[] weights) {
+		double sum = 0.0;
+		for (double weight : weights) {
+			sum += weight;
+		}
+		int[] shares = new int[weights.length];
+		int distributed = 0;
+		for (int index = 0; index < weights.length; index++) {
+			shares[index] = (int) (total * weights[index] / sum);
+			distributed += shares[index];
+		}
+		for (int index = 0; distributed < total; index = (index + 1) % shares.length) {
+			shares[index]++;
+			distributed++;
+		}
+		return shares;
+	}
+
+	/**
+	 * @return number of corners of the border of each {@link District}
+	 */
+	public int corners() {
+		return SIDES * segmentsPerSide;
+	}
+
+	/**
+	 * @return {@link City} with all grid cells as {@link District}s, but
+	 *         without {@link Node}s
+	 */
+	public City createDistricts() {
+		City city = new City(createStatistic(), IDENTITY);
+		for (int district = 0; district < districts; district++) {
+			int column = column(district);
+			int row = row(district);
+			double[] x = new double[corners()];
+			double[] y = new double[corners()];
+			double[] bottom = horizontalSide(column, row);
+			double[] right = verticalSide(column + 1, row);
+			double[] top = horizontalSide(column, row + 1);
+			double[] left = verticalSide(column, row);
+			for (int segment = 0; segment < segmentsPerSide; segment++) {
+				double along = (double) segment / segmentsPerSide;
+				double back = 1.0 - along;
+				x[segment] = column + along;
+				y[segment] = row + bottom[segment];
+				x[segmentsPerSide + segment] = column + 1 + right[segment];
+				y[segmentsPerSide + segment] = row + along;
+				x[2 * segmentsPerSide + segment] = column + back;
+				y[2 * segmentsPerSide + segment] = row + 1 + top[segmentsPerSide - segment];
+				x[3 * segmentsPerSide + segment] = column + left[segmentsPerSide - segment];
+				y[3 * segmentsPerSide + segment] = row + back;
+			}
+			for (int corner = 0; corner < x.length; corner++) {
+				x[corner] *= CELL_SIZE;
+				y[corner] *= CELL_SIZE;
+			}
+			city.addProjectedDistrict(name(district), x, y);
+		}
+		return city;
+	}
+
+	/**
+	 * @return vertical displacement of each corner of the side starting at
+	 *         the given grid point and running in x direction, in cell sizes
+	 */
+	private double[] horizontalSide(int column, int row) {
+		boolean shared = isDistrict(column, row - 1) && isDistrict(column, row);
+		return side(2L * (row * (columns + 1L) + column), shared);
+	}
+
+	/**
+	 * @return horizontal displacement of each corner of the side starting at
+	 *         the given grid point and running in y direction, in cell sizes
+	 */
+	private double[] verticalSide(int column, int row) {
+		boolean shared = isDistrict(column - 1, row) && isDistrict(column, row);
+		return side(2L * (row * (columns + 1L) + column) + 1, shared);
+	}
+
+	/**
+	 * Each side is derived from its own seed, so both {@link District}s next
+	 * to it get the same corners. The end points are not displaced, so the
+	 * sides meet in the grid points. Sides at the border of the city stay
+	 * straight, so all {@link Node}s of the grid lie inside a
+	 * {@link District}.
+	 */
+	private double[] side(long side, boolean shared) {
+		double[] displacement = new double[segmentsPerSide + 1];
+		if (!shared) {
+			return displacement;
+		}
+		SplittableRandom random = new SplittableRandom(seed + 1 + side);
+		double amplitude = JITTER / segmentsPerSide;
+		for (int corner = 1; corner < segmentsPerSide; corner++) {
+			displacement[corner] = amplitude * (2.0 * random.nextDouble() - 1.0);
+		}
+		return displacement;
+	}
+
+	private boolean isDistrict(int column, int row) {
+		return column >= 0 && column < columns && row >= 0 && row * columns + column < districts;
+	}
+
+	/**
+	 * The first {@link Node}s are placed in the centers of the
+	 * {@link District}s, so no {@link District} is empty. All others are
+	 * placed uniformly at random inside the grid cells used by
+	 * {@link District}s.
+	 *
+	 * @return {@link Node}s by id in creation order
+	 */
+	public Map<Id<Node>, Node> createNodes() {
+		NetworkFactory factory = ScenarioUtils.createScenario(ConfigUtils.createConfig()).getNetwork().getFactory();
+		SplittableRandom random = new SplittableRandom(seed).split();
+		Map<Id<Node>, Node> network = new LinkedHashMap<>(2 * nodes);
+		for (int node = 0; node < nodes; node++) {
+			int district = node < districts ? node : random.nextInt(districts);
+			double offsetX = node < districts ? 0.5 : random.nextDouble();
+			double offsetY = node < districts ? 0.5 : random.nextDouble();
+			double x = (column(district) + offsetX) * CELL_SIZE;
+			double y = (row(district) + offsetY) * CELL_SIZE;
+			Id<Node> id = Id.createNodeId(node);
+			network.put(id, factory.createNode(id, new CoordImpl(x, y)));
+		}
+		return network;
+	}
+
+	private int column(int district) {
+		return district % columns;
+	}
+
+	private int row(int district) {
+		return district / columns;
+	}
+
+	private static String name(int district) {
+		return NAME_PREFIX + district;
+	}
+}
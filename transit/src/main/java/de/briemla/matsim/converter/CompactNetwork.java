@@ -0,0 +1,149 @@
+package de.briemla.matsim.converter;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+
+/**
+ * Topology of a {@link Network} copied into primitive arrays in compressed
+ * sparse row layout. {@link Node}s and {@link Link}s are numbered in the
+ * iteration order of the {@link Network}. The outgoing {@link Link}s of node
+ * <code>n</code> are <code>outLink(k)</code> for <code>outStart(n) &lt;= k
+ * &lt; outStart(n + 1)</code>, incoming {@link Link}s are stored the same
+ * way. Both are sorted by {@link Link} index.
+ * <p>
+ * The copy is not updated when the {@link Network} changes.
+ *
+ * @author lars
+ *
+ */
+public class CompactNetwork {
+
+	private final Node[] nodes;
+	private final Link[] links;
+	private final int[] fromNode;
+	private final int[] toNode;
+	private final int[] outStart;
+	private final int[] outLinks;
+	private final int[] inStart;
+	private final int[] inLinks;
+
+	private CompactNetwork(Node[] nodes, Link[] links, int[] fromNode, int[] toNode) {
+		this.nodes = nodes;
+		this.links = links;
+		this.fromNode = fromNode;
+		this.toNode = toNode;
+		this.outStart = new int[nodes.length + 1];
+		this.outLinks = new int[links.length];
+		this.inStart = new int[nodes.length + 1];
+		this.inLinks = new int[links.length];
+		group(fromNode, outStart, outLinks);
+		group(toNode, inStart, inLinks);
+	}
+
+	/**
+	 * Copy the topology of the {@link Network}.
+	 *
+	 * @param network
+	 *            {@link Network} to copy
+	 * @return compact copy of the {@link Network}
+	 */
+	public static CompactNetwork of(Network network) {
+		Node[] nodes = network.getNodes().values().toArray(new Node[network.getNodes().size()]);
+		Map<Id<Node>, Integer> nodeIndex = new HashMap<>(2 * nodes.length);
+		for (int node = 0; node < nodes.length; node++) {
+			nodeIndex.put(nodes[node].getId(), node);
+		}
+		Link[] links = network.getLinks().values().toArray(new Link[network.getLinks().size()]);
+		int[] fromNode = new int[links.length];
+		int[] toNode = new int[links.length];
+		for (int link = 0; link < links.length; link++) {
+			fromNode[link] = index(nodeIndex, links[link].getFromNode());
+			toNode[link] = index(nodeIndex, links[link].getToNode());
+		}
+		return new CompactNetwork(nodes, links, fromNode, toNode);
+	}
+
+	private static int index(Map<Id<Node>, Integer> nodeIndex, Node node) {
+		Integer index = nodeIndex.get(node.getId());
+		if (index == null) {
+			throw new IllegalArgumentException("Link references node " + node.getId() + " outside of the network");
+		}
+		return index;
+	}
+
+	/**
+	 * Counting sort of all {@link Link}s by the given end {@link Node}.
+	 */
+	private static void group(int[] endNode, int[] start, int[] sortedLinks) {
+		for (int link = 0; link < endNode.length; link++) {
+			start[endNode[link] + 1]++;
+		}
+		for (int node = 0; node < start.length - 1; node++) {
+			start[node + 1] += start[node];
+		}
+		int[] next = new int[start.length - 1];
+		System.arraycopy(start, 0, next, 0, next.length);
+		for (int link = 0; link < endNode.length; link++) {
+			sortedLinks[next[endNode[link]]++] = link;
+		}
+	}
+
+	public int nodeCount() {
+		return nodes.length;
+	}
+
+	public int linkCount() {
+		return links.length;
+	}
+
+	public Node node(int node) {
+		return nodes[node];
+	}
+
+	public Link link(int link) {
+		return links[link];
+	}
+
+	public int fromNode(int link) {
+		return fromNode[link];
+	}
+
+	public int toNode(int link) {
+		return toNode[link];
+	}
+
+	/**
+	 * @return position of the first outgoing {@link Link} of the node
+	 */
+	public int outStart(int node) {
+		return outStart[node];
+	}
+
+	/**
+	 * @return index of the {@link Link} at the given position of the
+	 *         outgoing {@link Link}s
+	 */
+	public int outLink(int position) {
+		return outLinks[position];
+	}
+
+	/**
+	 * @return position of the first incoming {@link Link} of the node
+	 */
+	public int inStart(int node) {
+		return inStart[node];
+	}
+
+	/**
+	 * @return index of the {@link Link} at the given position of the
+	 *         incoming {@link Link}s
+	 */
+	public int inLink(int position) {
+		return inLinks[position];
+	}
+}
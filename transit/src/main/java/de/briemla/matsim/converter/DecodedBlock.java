@@ -0,0 +1,73 @@
+package de.briemla.matsim.converter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Nodes and ways of a single PrimitiveBlock, decoded by any thread and passed
+ * on later in the order of the blocks. Nodes are kept in primitive arrays, so
+ * a block of dense nodes creates no object per node.
+ *
+ * @author lars
+ *
+ */
+class DecodedBlock implements OsmHandler {
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	private long[] nodeIds = new long[INITIAL_CAPACITY];
+	private long[] latitudes = new long[INITIAL_CAPACITY];
+	private long[] longitudes = new long[INITIAL_CAPACITY];
+	private int nodes = 0;
+	private final List<Way> ways = new ArrayList<>();
+
+	@Override
+	public void node(long id, long latitude, long longitude) {
+		if (nodes == nodeIds.length) {
+			nodeIds = Arrays.copyOf(nodeIds, 2 * nodes);
+			latitudes = Arrays.copyOf(latitudes, 2 * nodes);
+			longitudes = Arrays.copyOf(longitudes, 2 * nodes);
+		}
+		nodeIds[nodes] = id;
+		latitudes[nodes] = latitude;
+		longitudes[nodes] = longitude;
+		nodes++;
+	}
+
+	@Override
+	public void way(long id, long[] nodes, Map<String, String> tags) {
+		ways.add(new Way(id, nodes, tags));
+	}
+
+	/**
+	 * Pass all nodes and then all ways of this block to the handler. A
+	 * PrimitiveGroup only contains elements of one type, so this is the order
+	 * of the file as long as nodes and ways are not mixed within a block.
+	 *
+	 * @param handler
+	 *            receives the elements
+	 */
+	void replayTo(OsmHandler handler) {
+		for (int node = 0; node < nodes; node++) {
+			handler.node(nodeIds[node], latitudes[node], longitudes[node]);
+		}
+		for (Way way : ways) {
+			handler.way(way.id, way.nodes, way.tags);
+		}
+	}
+
+	private static class Way {
+
+		private final long id;
+		private final long[] nodes;
+		private final Map<String, String> tags;
+
+		Way(long id, long[] nodes, Map<String, String> tags) {
+			this.id = id;
+			this.nodes = nodes;
+			this.tags = tags;
+		}
+	}
+}
@@ -0,0 +1,96 @@
+package de.briemla.matsim.converter;
+
+import java.util.Arrays;
+
+/**
+ * Hash map from long keys to non-negative int values with open addressing,
+ * so neither keys nor values are boxed. Used to look up OSM ids, which are
+ * too sparse to index an array directly.
+ *
+ * @author lars
+ *
+ */
+class LongIndex {
+
+	static final int MISSING = -1;
+	private static final int MINIMUM_CAPACITY = 16;
+	private static final long GOLDEN_RATIO = 0x9E3779B97F4A7C15L;
+
+	private long[] keys;
+	private int[] values;
+	private int size;
+	private int shift;
+
+	/**
+	 * @param expectedSize
+	 *            number of keys to be stored without growing the table
+	 */
+	LongIndex(int expectedSize) {
+		allocate(Math.max(MINIMUM_CAPACITY, Integer.highestOneBit(Math.max(1, 2 * expectedSize - 1)) << 1));
+	}
+
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		values = new int[capacity];
+		Arrays.fill(values, MISSING);
+		shift = Long.numberOfLeadingZeros(capacity - 1L);
+		size = 0;
+	}
+
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Store the value for the key and replace the previous one, if any.
+	 *
+	 * @param key
+	 * @param value
+	 *            non-negative value
+	 */
+	void put(long key, int value) {
+		if (value < 0) {
+			throw new IllegalArgumentException("Negative value " + value + " for key " + key);
+		}
+		if (2 * (size + 1) > keys.length) {
+			grow();
+		}
+		int slot = slot(key);
+		if (values[slot] == MISSING) {
+			keys[slot] = key;
+			size++;
+		}
+		values[slot] = value;
+	}
+
+	/**
+	 * @param key
+	 * @return value of the key or {@link #MISSING}
+	 */
+	int get(long key) {
+		return values[slot(key)];
+	}
+
+	/**
+	 * @return slot containing the key or the empty slot where it belongs
+	 */
+	private int slot(long key) {
+		int mask = keys.length - 1;
+		int slot = (int) ((key * GOLDEN_RATIO) >>> shift);
+		while (values[slot] != MISSING && keys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private void grow() {
+		long[] oldKeys = keys;
+		int[] oldValues = values;
+		allocate(2 * oldKeys.length);
+		for (int slot = 0; slot < oldKeys.length; slot++) {
+			if (oldValues[slot] != MISSING) {
+				put(oldKeys[slot], oldValues[slot]);
+			}
+		}
+	}
+}
@@ -0,0 +1,126 @@
+package de.briemla.matsim.converter;
+
+import java.util.Arrays;
+
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.network.algorithms.NetworkCleaner;
+
+/**
+ * Reduces a {@link Network} to its biggest strongly connected component, like
+ * the {@link NetworkCleaner} of MATSim. Instead of searching the cluster of
+ * every {@link Node} on the {@link Network} itself, the topology is copied
+ * into a {@link CompactNetwork} once and all components are found with a
+ * single iterative run of Tarjan's algorithm. If several components have the
+ * biggest size, the one containing the first {@link Node} of the
+ * {@link Network} is kept, which is the one the {@link NetworkCleaner} keeps.
+ * <p>
+ * The biggest component is copied by the {@link SubnetworkExtractor} in one
+ * pass instead of removing all other {@link Node}s one by one, so the result
+ * is a new {@link Network}.
+ *
+ * @author lars
+ *
+ */
+public class NetworkComponentCleaner {
+
+	private static final int UNVISITED = -1;
+
+	/**
+	 * Copy the biggest strongly connected component with all links inside of
+	 * it.
+	 *
+	 * @param network
+	 *            {@link Network} to clean, it is not modified
+	 * @return new {@link Network} containing only the biggest component
+	 */
+	public Network run(Network network) {
+		CompactNetwork compact = CompactNetwork.of(network);
+		int[] component = components(compact);
+		int biggest = biggestComponent(component, compact.nodeCount());
+		return SubnetworkExtractor.extractByIndex(network, node -> component[node] == biggest);
+	}
+
+	/**
+	 * Number the strongly connected components of the network. Components are
+	 * numbered in the order Tarjan's algorithm completes them.
+	 *
+	 * @return component of each node
+	 */
+	static int[] components(CompactNetwork network) {
+		int nodes = network.nodeCount();
+		int[] index = new int[nodes];
+		int[] lowLink = new int[nodes];
+		int[] component = new int[nodes];
+		boolean[] onStack = new boolean[nodes];
+		int[] stack = new int[nodes];
+		int stackSize = 0;
+		int[] callNode = new int[nodes];
+		int[] callPosition = new int[nodes];
+		int depth = 0;
+		int nextIndex = 0;
+		int components = 0;
+		Arrays.fill(index, UNVISITED);
+		for (int root = 0; root < nodes; root++) {
+			if (index[root] != UNVISITED) {
+				continue;
+			}
+			index[root] = lowLink[root] = nextIndex++;
+			stack[stackSize++] = root;
+			onStack[root] = true;
+			callNode[depth] = root;
+			callPosition[depth++] = network.outStart(root);
+			while (depth > 0) {
+				int node = callNode[depth - 1];
+				int position = callPosition[depth - 1];
+				if (position < network.outStart(node + 1)) {
+					callPosition[depth - 1]++;
+					int next = network.toNode(network.outLink(position));
+					if (index[next] == UNVISITED) {
+						index[next] = lowLink[next] = nextIndex++;
+						stack[stackSize++] = next;
+						onStack[next] = true;
+						callNode[depth] = next;
+						callPosition[depth++] = network.outStart(next);
+					} else if (onStack[next]) {
+						lowLink[node] = Math.min(lowLink[node], index[next]);
+					}
+					continue;
+				}
+				depth--;
+				if (lowLink[node] == index[node]) {
+					int member;
+					do {
+						member = stack[--stackSize];
+						onStack[member] = false;
+						component[member] = components;
+					} while (member != node);
+					components++;
+				}
+				if (depth > 0) {
+					int parent = callNode[depth - 1];
+					lowLink[parent] = Math.min(lowLink[parent], lowLink[node]);
+				}
+			}
+		}
+		return component;
+	}
+
+	/**
+	 * The biggest component, or of several with the same size, the one
+	 * containing the node with the lowest index.
+	 */
+	private static int biggestComponent(int[] component, int nodes) {
+		int[] size = new int[nodes];
+		for (int node = 0; node < nodes; node++) {
+			size[component[node]]++;
+		}
+		int biggest = UNVISITED;
+		for (int node = 0; node < nodes; node++) {
+			if (biggest == UNVISITED || size[component[node]] > size[biggest]) {
+				biggest = component[node];
+			}
+		}
+		return biggest;
+	}
+}
@@ -1,9 +1,10 @@
 package de.briemla.matsim.converter;
 
-import java.time.Duration;
-import java.time.LocalTime;
-import java.util.List;
-import java.util.stream.Collectors;
+import java.awt.geom.Rectangle2D;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
 
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.Scenario;
@@ -12,70 +13,192 @@ import org.matsim.api.core.v01.network.Node;
 import org.matsim.core.config.Config;
 import org.matsim.core.config.ConfigUtils;
 import org.matsim.core.network.NetworkWriter;
-import org.matsim.core.network.algorithms.NetworkCleaner;
 import org.matsim.core.scenario.ScenarioUtils;
 import org.matsim.core.utils.geometry.CoordinateTransformation;
 import org.matsim.core.utils.geometry.transformations.TransformationFactory;
 import org.matsim.core.utils.io.OsmNetworkReader;
 
+import de.briemla.matsim.generator.BulkCoordinateTransformation;
 import de.briemla.matsim.generator.City;
 import de.briemla.matsim.generator.DistrictGenerator;
+import de.briemla.matsim.generator.NetworkSnapshot;
 import de.briemla.matsim.generator.Statistic;
+import de.briemla.matsim.instrumentation.PhaseTimer;
+import de.briemla.matsim.instrumentation.PhaseTimer.Phase;
 
 public class NetworkConverter {
 
+	private static final String KML_FILE = "./input/doc.kml";
+	private static final String NETWORK_FILE = "./input/karlsruhe.xml";
+	/**
+	 * Command line option to drop everything outside of the {@link City}
+	 * while the OSM file is parsed.
+	 */
+	private static final String CLIP_OPTION = "--clip";
+	private static final String OPTION_PREFIX = "--";
+	private static final String DEFAULT_OSM_FILE = "/home/lars/Downloads/karlsruhe-regbez-latest.xml";
+	private static final String PBF_SUFFIX = ".pbf";
+	/**
+	 * Distance in meters the bounding box of the {@link City} is extended by
+	 * before parsing, so rounding during the projection can not cut off
+	 * {@link Node}s on its border.
+	 */
+	private static final double CLIP_BUFFER = 500.0;
+	private static final int ALL_HIERARCHY_LEVELS = Integer.MAX_VALUE;
+
 	private static final CoordinateTransformation TRANSFORM_TO_WSG84_UTM33N = TransformationFactory
 			.getCoordinateTransformation(TransformationFactory.WGS84, TransformationFactory.WGS84_UTM33N);
 
 	public static void main(String[] args) {
-		LocalTime start = LocalTime.now();
-		Network osmNetwork = loadOsmNetwork();
-		LocalTime afterLoad = LocalTime.now();
-		// shrinkToKarlsruhe(osmNetwork);
-		LocalTime afterShrink = LocalTime.now();
+		PhaseTimer timer = new PhaseTimer(NetworkConverter.class.getSimpleName());
+		Phase overall = timer.start("Overall");
+		Phase load = timer.start("Load");
+		boolean clip = Arrays.asList(args).contains(CLIP_OPTION);
+		String osm = Arrays.stream(args).filter(arg -> !arg.startsWith(OPTION_PREFIX)).findFirst()
+				.orElse(DEFAULT_OSM_FILE);
+		City karlsruhe = null;
+		Network osmNetwork;
+		if (clip) {
+			karlsruhe = DistrictGenerator.loadDistricts(Statistic.karlsruhe(), new File(KML_FILE));
+			osmNetwork = loadOsmNetwork(osm, karlsruhe.getBounds());
+		} else {
+			osmNetwork = loadOsmNetwork(osm);
+		}
+		load.end();
+		Phase shrink = timer.start("Shrink");
+		if (clip) {
+			osmNetwork = shrinkTo(karlsruhe, osmNetwork);
+		}
+		// osmNetwork = shrinkToKarlsruhe(osmNetwork);
+		shrink.end();
 
+		Phase clean = timer.start("Clean");
 		Node startNode = osmNetwork.getNodes().get(Id.createNodeId(1670591290));
 		osmNetwork.getNodes().get(Id.createLinkId(131484444));
-		new NetworkCleaner().run(osmNetwork);
-		LocalTime afterClean = LocalTime.now();
+		osmNetwork = new NetworkComponentCleaner().run(osmNetwork);
+		clean.end();
+		Phase write = timer.start("Write");
 		write(osmNetwork);
-		LocalTime end = LocalTime.now();
-
-		Duration load = Duration.between(start, afterLoad);
-		Duration shrink = Duration.between(afterLoad, afterShrink);
-		Duration clean = Duration.between(afterShrink, afterClean);
-		Duration write = Duration.between(afterClean, end);
-		Duration complete = Duration.between(start, end);
-
-		System.out.println("Overall time: " + complete.getSeconds() + "s");
-		System.out.println("Load took: " + load.getSeconds() + "s");
-		System.out.println("Shrink took: " + shrink.getSeconds() + "s");
-		System.out.println("Clean took: " + clean.getSeconds() + "s");
-		System.out.println("Write took: " + write.getSeconds() + "s");
+		write.end();
+		overall.end();
+
+		timer.finish(System.out);
 	}
 
+	/**
+	 * Write the network file and a {@link NetworkSnapshot} of it, which the
+	 * generators load instead of parsing the network file.
+	 */
 	private static void write(Network karlsruheNetwork) {
-		new NetworkWriter(karlsruheNetwork).write("./input/karlsruhe.xml");
+		new NetworkWriter(karlsruheNetwork).write(NETWORK_FILE);
+		new NetworkSnapshot(new File(NETWORK_FILE)).write(karlsruheNetwork);
 	}
 
-	private static void shrinkToKarlsruhe(Network osmNetwork) {
-		DistrictGenerator districtGenerator = new DistrictGenerator(osmNetwork, Statistic.karlsruhe());
+	private static Network shrinkToKarlsruhe(Network osmNetwork) {
+		DistrictGenerator districtGenerator = new DistrictGenerator(osmNetwork, Statistic.karlsruhe(),
+				new File(KML_FILE));
 		City karlsruhe = districtGenerator.createCity();
-		List<Id<Node>> nodesToRemove = osmNetwork.getNodes().values().stream()
-				.filter(node -> !karlsruhe.isInside(node)).map(Node::getId).collect(Collectors.toList());
-		nodesToRemove.stream().forEach(osmNetwork::removeNode);
+		return shrinkTo(karlsruhe, osmNetwork);
+	}
+
+	/**
+	 * Copy all {@link Node}s inside the districts of the {@link City} and the
+	 * links between them into a new {@link Network}, so the whole region can
+	 * be released. The spatial index of the {@link City} already exists,
+	 * because its bounds or {@link Node}s were requested before, so it is not
+	 * built concurrently.
+	 *
+	 * @return {@link Network} inside of the {@link City}
+	 */
+	private static Network shrinkTo(City city, Network osmNetwork) {
+		return SubnetworkExtractor.extract(osmNetwork, city::isInside);
+	}
+
+	private static Network loadOsmNetwork(String osm) {
+		return loadOsmNetwork(osm, null);
 	}
 
-	private static Network loadOsmNetwork() {
-		String osm = "/home/lars/Downloads/karlsruhe-regbez-latest.xml";
+	/**
+	 * Load the OSM network. If bounds are given, only {@link Node}s and links
+	 * of ways inside the bounds are created, so the network of the whole
+	 * region is never built. OSM XML files are converted by the
+	 * {@link OsmNetworkReader}. Files ending with <code>.pbf</code> are
+	 * decoded by several threads with {@link OsmPbfReader} and their nodes
+	 * and ways are passed straight to the {@link OsmHighwayConverter}, which
+	 * creates the same {@link Node}s and links without rendering and parsing
+	 * XML.
+	 *
+	 * @param osm
+	 *            OSM XML or PBF file
+	 * @param bounds
+	 *            bounding box in UTM33N to clip the network to or
+	 *            <code>null</code> to load everything
+	 */
+	private static Network loadOsmNetwork(String osm, Rectangle2D bounds) {
 		Config config = ConfigUtils.createConfig();
 		Scenario sc = ScenarioUtils.createScenario(config);
 		Network administrativeRegion = sc.getNetwork();
-		OsmNetworkReader onr = new OsmNetworkReader(administrativeRegion, TRANSFORM_TO_WSG84_UTM33N);
 		// TODO change OSMNetworkReader to convert unused nodes. Otherwise
 		// transit nodes will be removed.
+		if (osm.endsWith(PBF_SUFFIX)) {
+			convertPbf(administrativeRegion, osm, bounds);
+			return administrativeRegion;
+		}
+		OsmNetworkReader onr = new OsmNetworkReader(administrativeRegion, TRANSFORM_TO_WSG84_UTM33N);
+		if (bounds != null) {
+			Rectangle2D filter = toWgs84(bounds);
+			onr.setHierarchyLayer(filter.getMaxY(), filter.getMinX(), filter.getMinY(), filter.getMaxX(),
+					ALL_HIERARCHY_LEVELS);
+		}
 		onr.parse(osm);
 		return administrativeRegion;
 	}
 
+	private static void convertPbf(Network network, String pbf, Rectangle2D bounds) {
+		OsmHighwayConverter converter = new OsmHighwayConverter(network,
+				BulkCoordinateTransformation.between(TransformationFactory.WGS84, TransformationFactory.WGS84_UTM33N));
+		if (bounds != null) {
+			Rectangle2D filter = toWgs84(bounds);
+			converter.setHierarchyLayer(filter.getMaxY(), filter.getMinX(), filter.getMinY(), filter.getMaxX(),
+					ALL_HIERARCHY_LEVELS);
+		}
+		int threads = Runtime.getRuntime().availableProcessors();
+		try {
+			new OsmPbfReader(threads).read(Paths.get(pbf), converter);
+		} catch (IOException e) {
+			throw new RuntimeException("Could not read " + pbf, e);
+		}
+		converter.convert();
+	}
+
+	/**
+	 * Transform the buffered bounds from UTM33N to WGS84, because both readers
+	 * expect the corners of their filter in WGS84 and project them
+	 * themselves. The UTM grid is
+	 * rotated against meridians and parallels away from its central meridian,
+	 * by about 5 degrees around Karlsruhe. So all four corners are transformed
+	 * and the filter spans the smallest and largest longitude and latitude of
+	 * them. Otherwise the filter would cut off the other two corners.
+	 *
+	 * @param bounds
+	 *            bounding box in UTM33N
+	 * @return bounding box in WGS84 with longitudes as x and latitudes as y,
+	 *         which contains all buffered corners of the bounds
+	 */
+	static Rectangle2D toWgs84(Rectangle2D bounds) {
+		double minX = bounds.getMinX() - CLIP_BUFFER;
+		double maxX = bounds.getMaxX() + CLIP_BUFFER;
+		double minY = bounds.getMinY() - CLIP_BUFFER;
+		double maxY = bounds.getMaxY() + CLIP_BUFFER;
+		double[] x = new double[] { minX, maxX, maxX, minX };
+		double[] y = new double[] { minY, minY, maxY, maxY };
+		BulkCoordinateTransformation.between(TransformationFactory.WGS84_UTM33N, TransformationFactory.WGS84)
+				.transform(x, y);
+		double west = Arrays.stream(x).min().getAsDouble();
+		double east = Arrays.stream(x).max().getAsDouble();
+		double south = Arrays.stream(y).min().getAsDouble();
+		double north = Arrays.stream(y).max().getAsDouble();
+		return new Rectangle2D.Double(west, south, east - west, north - south);
+	}
+
 }
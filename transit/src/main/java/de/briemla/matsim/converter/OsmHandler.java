@@ -0,0 +1,34 @@
+package de.briemla.matsim.converter;
+
+import java.util.Map;
+
+/**
+ * Receives the nodes and ways of an OSM file. Only the content used to build
+ * a network is passed on: id and coordinates of nodes, and id, node
+ * references and tags of ways.
+ *
+ * @author lars
+ *
+ */
+interface OsmHandler {
+
+	/**
+	 * @param id
+	 *            id of the node
+	 * @param latitude
+	 *            latitude in nanodegrees
+	 * @param longitude
+	 *            longitude in nanodegrees
+	 */
+	void node(long id, long latitude, long longitude);
+
+	/**
+	 * @param id
+	 *            id of the way
+	 * @param nodes
+	 *            ids of the nodes of the way in order
+	 * @param tags
+	 *            tags of the way in the order of the file
+	 */
+	void way(long id, long[] nodes, Map<String, String> tags);
+}
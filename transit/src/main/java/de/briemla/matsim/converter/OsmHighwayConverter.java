@@ -0,0 +1,432 @@
+package de.briemla.matsim.converter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.NetworkFactory;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.network.LinkImpl;
+import org.matsim.core.utils.geometry.CoordImpl;
+import org.matsim.core.utils.io.OsmNetworkReader;
+
+import de.briemla.matsim.generator.BulkCoordinateTransformation;
+
+/**
+ * Converts highways into {@link Node}s and {@link Link}s of a
+ * {@link Network} like the {@link OsmNetworkReader} of MATSim with its
+ * default settings, but receives the nodes and ways from an
+ * {@link OsmHandler} instead of parsing OSM XML. The {@link OsmNetworkReader}
+ * keeps its parser and the parsed nodes and ways private, so its conversion
+ * is ported here. Nodes are stored in primitive arrays and projected at once
+ * by a {@link BulkCoordinateTransformation}.
+ * <p>
+ * The result only differs in two points. {@link Link} ids are numbered in
+ * the order of the ways in the file instead of the iteration order of a hash
+ * map. References to nodes missing in the file are ignored instead of
+ * failing.
+ *
+ * @author lars
+ *
+ */
+class OsmHighwayConverter implements OsmHandler {
+
+	private static final String TAG_HIGHWAY = "highway";
+	private static final String TAG_LANES = "lanes";
+	private static final String TAG_MAXSPEED = "maxspeed";
+	private static final String TAG_JUNCTION = "junction";
+	private static final String TAG_ONEWAY = "oneway";
+	private static final String TAG_ACCESS = "access";
+	private static final double KILOMETERS_PER_HOUR = 1.0 / 3.6;
+	private static final double NANO_DEGREES = 1e9;
+	private static final int INITIAL_NODES = 1024;
+
+	private final Network network;
+	private final BulkCoordinateTransformation transformation;
+	private final Map<String, HighwayDefaults> highwayDefaults;
+	private final List<Filter> hierarchyLayers;
+	private final LongIndex nodeIndex;
+	private long[] nodeIds;
+	private double[] nodeX;
+	private double[] nodeY;
+	private int nodes;
+	private final List<Way> ways;
+
+	/**
+	 * @param network
+	 *            empty {@link Network} to add {@link Node}s and {@link Link}s
+	 *            to
+	 * @param transformation
+	 *            transformation from WGS84 to the coordinate system of the
+	 *            {@link Network}
+	 */
+	OsmHighwayConverter(Network network, BulkCoordinateTransformation transformation) {
+		this.network = network;
+		this.transformation = transformation;
+		highwayDefaults = new HashMap<>();
+		hierarchyLayers = new ArrayList<>();
+		nodeIndex = new LongIndex(INITIAL_NODES);
+		nodeIds = new long[INITIAL_NODES];
+		nodeX = new double[INITIAL_NODES];
+		nodeY = new double[INITIAL_NODES];
+		nodes = 0;
+		ways = new ArrayList<>();
+		setHighwayDefaults(1, "motorway", 2, 120.0, 2000, true);
+		setHighwayDefaults(1, "motorway_link", 1, 80.0, 1500, true);
+		setHighwayDefaults(2, "trunk", 1, 80.0, 2000, false);
+		setHighwayDefaults(2, "trunk_link", 1, 50.0, 1500, false);
+		setHighwayDefaults(3, "primary", 1, 80.0, 1500, false);
+		setHighwayDefaults(3, "primary_link", 1, 60.0, 1500, false);
+		setHighwayDefaults(4, "secondary", 1, 60.0, 1000, false);
+		setHighwayDefaults(5, "tertiary", 1, 45.0, 600, false);
+		setHighwayDefaults(6, "minor", 1, 45.0, 600, false);
+		setHighwayDefaults(6, "unclassified", 1, 45.0, 600, false);
+		setHighwayDefaults(6, "residential", 1, 30.0, 600, false);
+		setHighwayDefaults(6, "living_street", 1, 15.0, 300, false);
+	}
+
+	private void setHighwayDefaults(int hierarchy, String highway, double lanesPerDirection, double freespeed,
+			double laneCapacity, boolean oneway) {
+		highwayDefaults.put(highway, new HighwayDefaults(hierarchy, lanesPerDirection,
+				freespeed * KILOMETERS_PER_HOUR, laneCapacity, oneway));
+	}
+
+	/**
+	 * Only convert ways of the given hierarchy or above inside the given
+	 * corners, like {@link OsmNetworkReader#setHierarchyLayer}. Both corners
+	 * are projected, so the filter is a rectangle in the coordinate system of
+	 * the {@link Network}.
+	 *
+	 * @param northWestLatitude
+	 * @param northWestLongitude
+	 * @param southEastLatitude
+	 * @param southEastLongitude
+	 * @param hierarchy
+	 *            lowest hierarchy level to convert, 1 for motorways
+	 */
+	void setHierarchyLayer(double northWestLatitude, double northWestLongitude, double southEastLatitude,
+			double southEastLongitude, int hierarchy) {
+		double[] x = new double[] { northWestLongitude, southEastLongitude };
+		double[] y = new double[] { northWestLatitude, southEastLatitude };
+		transformation.transform(x, y);
+		hierarchyLayers.add(new Filter(x[0], y[0], x[1], y[1], hierarchy));
+	}
+
+	@Override
+	public void node(long id, long latitude, long longitude) {
+		if (nodes == nodeIds.length) {
+			nodeIds = Arrays.copyOf(nodeIds, 2 * nodes);
+			nodeX = Arrays.copyOf(nodeX, 2 * nodes);
+			nodeY = Arrays.copyOf(nodeY, 2 * nodes);
+		}
+		nodeIds[nodes] = id;
+		nodeX[nodes] = longitude / NANO_DEGREES;
+		nodeY[nodes] = latitude / NANO_DEGREES;
+		nodeIndex.put(id, nodes);
+		nodes++;
+	}
+
+	@Override
+	public void way(long id, long[] nodes, Map<String, String> tags) {
+		HighwayDefaults defaults = highwayDefaults.get(tags.get(TAG_HIGHWAY));
+		if (defaults == null || nodes.length == 0) {
+			return;
+		}
+		ways.add(new Way(id, nodes, tags, defaults));
+	}
+
+	/**
+	 * Create the {@link Node}s and {@link Link}s of all received highways.
+	 * Nodes only passed by a single way are dropped and their distance is
+	 * added to the {@link Link} across them.
+	 */
+	void convert() {
+		nodeX = Arrays.copyOf(nodeX, nodes);
+		nodeY = Arrays.copyOf(nodeY, nodes);
+		transformation.transform(nodeX, nodeY);
+		int[][] wayNodes = new int[ways.size()][];
+		for (int way = 0; way < wayNodes.length; way++) {
+			wayNodes[way] = resolve(ways.get(way).nodes);
+		}
+		boolean[] used = markUsedNodes(wayNodes);
+		Node[] created = createNodes(used);
+		int linkId = 1;
+		for (int way = 0; way < wayNodes.length; way++) {
+			linkId = createLinks(ways.get(way), wayNodes[way], used, created, linkId);
+		}
+		ways.clear();
+	}
+
+	private int[] resolve(long[] ids) {
+		int[] resolved = new int[ids.length];
+		int size = 0;
+		for (long id : ids) {
+			int node = nodeIndex.get(id);
+			if (node != LongIndex.MISSING) {
+				resolved[size++] = node;
+			}
+		}
+		return Arrays.copyOf(resolved, size);
+	}
+
+	/**
+	 * Keep the nodes inside a hierarchy layer which end a way or are shared by
+	 * several ways. First and last node of a way are counted twice, so they
+	 * are kept in all cases. If a way returns to a kept node without passing
+	 * another one, some nodes in between are kept as well, so the loop does
+	 * not collapse into a {@link Link} from a node to itself.
+	 */
+	private boolean[] markUsedNodes(int[][] wayNodes) {
+		int[] waysPerNode = new int[nodes];
+		boolean[] used = new boolean[nodes];
+		for (int way = 0; way < wayNodes.length; way++) {
+			int[] path = wayNodes[way];
+			if (path.length == 0) {
+				continue;
+			}
+			int hierarchy = ways.get(way).defaults.hierarchy;
+			waysPerNode[path[0]]++;
+			waysPerNode[path[path.length - 1]]++;
+			for (int node : path) {
+				if (isInHierarchyLayer(node, hierarchy)) {
+					used[node] = true;
+					waysPerNode[node]++;
+				}
+			}
+		}
+		for (int node = 0; node < nodes; node++) {
+			if (waysPerNode[node] == 1) {
+				used[node] = false;
+			}
+		}
+		for (int[] path : wayNodes) {
+			if (path.length == 0) {
+				continue;
+			}
+			int previousUsedIndex = 0;
+			int previousUsedNode = path[0];
+			for (int index = 1; index < path.length; index++) {
+				if (!used[path[index]]) {
+					continue;
+				}
+				if (path[index] == previousUsedNode) {
+					double increment = Math.sqrt(index - previousUsedIndex);
+					for (double keep = previousUsedIndex + increment; keep < index; keep += increment) {
+						used[path[(int) Math.floor(keep)]] = true;
+					}
+				}
+				previousUsedIndex = index;
+				previousUsedNode = path[index];
+			}
+		}
+		return used;
+	}
+
+	private boolean isInHierarchyLayer(int node, int hierarchy) {
+		if (hierarchyLayers.isEmpty()) {
+			return true;
+		}
+		for (Filter filter : hierarchyLayers) {
+			if (filter.contains(nodeX[node], nodeY[node], hierarchy)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private Node[] createNodes(boolean[] used) {
+		NetworkFactory factory = network.getFactory();
+		Node[] created = new Node[nodes];
+		for (int node = 0; node < nodes; node++) {
+			if (used[node]) {
+				created[node] = factory.createNode(Id.createNodeId(nodeIds[node]),
+						new CoordImpl(nodeX[node], nodeY[node]));
+				network.addNode(created[node]);
+			}
+		}
+		return created;
+	}
+
+	/**
+	 * Create a {@link Link} between each pair of consecutive kept nodes of the
+	 * way. A way whose first node is not kept, e.g. because it lies outside
+	 * of all hierarchy layers, gets no {@link Link}s at all, just like in the
+	 * {@link OsmNetworkReader}.
+	 *
+	 * @return next free {@link Link} id
+	 */
+	private int createLinks(Way way, int[] path, boolean[] used, Node[] created, int firstLinkId) {
+		int linkId = firstLinkId;
+		if (path.length == 0 || !used[path[0]]) {
+			return linkId;
+		}
+		int hierarchy = way.defaults.hierarchy;
+		int from = path[0];
+		int last = from;
+		double length = 0.0;
+		for (int index = 1; index < path.length; index++) {
+			int to = path[index];
+			if (to == last) {
+				continue;
+			}
+			length += distance(last, to);
+			if (used[to]) {
+				if (isInHierarchyLayer(from, hierarchy) || isInHierarchyLayer(to, hierarchy)) {
+					linkId = createLink(way, created[from], created[to], length, linkId);
+				}
+				from = to;
+				length = 0.0;
+			}
+			last = to;
+		}
+		return linkId;
+	}
+
+	private double distance(int from, int to) {
+		double xDifference = nodeX[from] - nodeX[to];
+		double yDifference = nodeY[from] - nodeY[to];
+		return Math.sqrt(xDifference * xDifference + yDifference * yDifference);
+	}
+
+	/**
+	 * Apply the tags overriding the defaults of the highway type and create
+	 * the {@link Link}s in the allowed directions.
+	 *
+	 * @return next free {@link Link} id
+	 */
+	private int createLink(Way way, Node from, Node to, double length, int firstLinkId) {
+		if ("no".equals(way.tags.get(TAG_ACCESS))) {
+			return firstLinkId;
+		}
+		String highway = way.tags.get(TAG_HIGHWAY);
+		HighwayDefaults defaults = way.defaults;
+		double lanes = defaults.lanesPerDirection;
+		double freespeed = defaults.freespeed;
+		boolean oneway = defaults.oneway;
+		boolean onewayReverse = false;
+		if ("roundabout".equals(way.tags.get(TAG_JUNCTION))) {
+			oneway = true;
+		}
+		String onewayTag = way.tags.get(TAG_ONEWAY);
+		if ("yes".equals(onewayTag) || "true".equals(onewayTag) || "1".equals(onewayTag)) {
+			oneway = true;
+		} else if ("-1".equals(onewayTag)) {
+			onewayReverse = true;
+			oneway = false;
+		} else if ("no".equals(onewayTag)) {
+			oneway = false;
+		}
+		if (("trunk".equalsIgnoreCase(highway) || "primary".equalsIgnoreCase(highway)
+				|| "secondary".equalsIgnoreCase(highway)) && oneway && lanes == 1.0) {
+			lanes = 2.0;
+		}
+		String maxspeedTag = way.tags.get(TAG_MAXSPEED);
+		if (maxspeedTag != null) {
+			try {
+				freespeed = Double.parseDouble(maxspeedTag) / 3.6;
+			} catch (NumberFormatException e) {
+				// keep the default like the OsmNetworkReader
+			}
+		}
+		String lanesTag = way.tags.get(TAG_LANES);
+		if (lanesTag != null) {
+			try {
+				double lanesOfWay = Double.parseDouble(lanesTag);
+				if (lanesOfWay > 0) {
+					lanes = lanesOfWay;
+				}
+			} catch (NumberFormatException e) {
+				// keep the default like the OsmNetworkReader
+			}
+		}
+		double capacity = lanes * defaults.laneCapacity;
+		int linkId = firstLinkId;
+		String origId = Long.toString(way.id);
+		if (!onewayReverse) {
+			addLink(linkId++, from, to, length, freespeed, capacity, lanes, origId);
+		}
+		if (!oneway) {
+			addLink(linkId++, to, from, length, freespeed, capacity, lanes, origId);
+		}
+		return linkId;
+	}
+
+	private void addLink(int id, Node from, Node to, double length, double freespeed, double capacity,
+			double lanes, String origId) {
+		Link link = network.getFactory().createLink(Id.createLinkId(id), from, to);
+		link.setLength(length);
+		link.setFreespeed(freespeed);
+		link.setCapacity(capacity);
+		link.setNumberOfLanes(lanes);
+		if (link instanceof LinkImpl) {
+			((LinkImpl) link).setOrigId(origId);
+		}
+		network.addLink(link);
+	}
+
+	private static class HighwayDefaults {
+
+		private final int hierarchy;
+		private final double lanesPerDirection;
+		private final double freespeed;
+		private final double laneCapacity;
+		private final boolean oneway;
+
+		HighwayDefaults(int hierarchy, double lanesPerDirection, double freespeed, double laneCapacity,
+				boolean oneway) {
+			this.hierarchy = hierarchy;
+			this.lanesPerDirection = lanesPerDirection;
+			this.freespeed = freespeed;
+			this.laneCapacity = laneCapacity;
+			this.oneway = oneway;
+		}
+	}
+
+	/**
+	 * Rectangle between two projected corners which only lets ways of the
+	 * given hierarchy or above pass.
+	 */
+	private static class Filter {
+
+		private final double northWestX;
+		private final double northWestY;
+		private final double southEastX;
+		private final double southEastY;
+		private final int hierarchy;
+
+		Filter(double northWestX, double northWestY, double southEastX, double southEastY, int hierarchy) {
+			this.northWestX = northWestX;
+			this.northWestY = northWestY;
+			this.southEastX = southEastX;
+			this.southEastY = southEastY;
+			this.hierarchy = hierarchy;
+		}
+
+		boolean contains(double x, double y, int hierarchyOfWay) {
+			if (hierarchy < hierarchyOfWay) {
+				return false;
+			}
+			return northWestX < x && x < southEastX && northWestY > y && y > southEastY;
+		}
+	}
+
+	private static class Way {
+
+		private final long id;
+		private final long[] nodes;
+		private final Map<String, String> tags;
+		private final HighwayDefaults defaults;
+
+		Way(long id, long[] nodes, Map<String, String> tags, HighwayDefaults defaults) {
+			this.id = id;
+			this.nodes = nodes;
+			this.tags = tags;
+			this.defaults = defaults;
+		}
+	}
+}
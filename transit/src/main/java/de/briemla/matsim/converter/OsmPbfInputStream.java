@@ -0,0 +1,139 @@
+package de.briemla.matsim.converter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import de.briemla.matsim.instrumentation.PhaseTimer;
+
+/**
+ * Provides an OSM PBF file as OSM XML, so it can be passed to any reader of
+ * OSM XML files, e.g. the OsmNetworkReader of MATSim. The blocks of the file
+ * are decoded by several threads, while the XML is consumed in the order of
+ * the blocks. Only a limited number of decoded blocks is kept in memory at
+ * any time.
+ * <p>
+ * The XML still has to be parsed by the reader on a single thread. To build
+ * a network, {@link OsmPbfReader} passes the decoded nodes and ways to
+ * {@link OsmHighwayConverter} directly instead.
+ *
+ * @author lars
+ *
+ */
+public class OsmPbfInputStream extends InputStream {
+
+	private static final int BLOCKS_PER_THREAD = 2;
+	private static final byte[] HEADER = ("<?xml version='1.0' encoding='UTF-8'?>\n"
+			+ "<osm version=\"0.6\" generator=\"" + OsmPbfInputStream.class.getSimpleName() + "\">\n")
+			.getBytes(StandardCharsets.UTF_8);
+	private static final byte[] FOOTER = "</osm>\n".getBytes(StandardCharsets.UTF_8);
+
+	private final PbfBlobReader input;
+	private final ExecutorService executor;
+	private final int window;
+	private final Deque<Future<byte[]>> blocks;
+	private byte[] current;
+	private int position;
+	private boolean endOfFile;
+	private boolean footerRead;
+
+	/**
+	 * @param pbf
+	 *            OSM PBF file
+	 * @param threads
+	 *            number of threads decoding blocks
+	 * @throws IOException
+	 *             if the file can not be opened
+	 */
+	public OsmPbfInputStream(Path pbf, int threads) throws IOException {
+		if (threads < 1) {
+			throw new IllegalArgumentException("At least one thread is required, but got " + threads);
+		}
+		this.input = new PbfBlobReader(Files.newInputStream(pbf));
+		this.executor = Executors.newFixedThreadPool(threads, PhaseTimer.threadFactory());
+		this.window = BLOCKS_PER_THREAD * threads;
+		this.blocks = new ArrayDeque<>(window);
+		this.current = HEADER;
+		this.position = 0;
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (!ensureAvailable()) {
+			return -1;
+		}
+		return current[position++] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] buffer, int offset, int length) throws IOException {
+		if (length == 0) {
+			return 0;
+		}
+		if (!ensureAvailable()) {
+			return -1;
+		}
+		int count = Math.min(length, current.length - position);
+		System.arraycopy(current, position, buffer, offset, count);
+		position += count;
+		return count;
+	}
+
+	@Override
+	public void close() throws IOException {
+		executor.shutdownNow();
+		input.close();
+	}
+
+	/**
+	 * @return <code>true</code> if there are bytes left in the current block
+	 */
+	private boolean ensureAvailable() throws IOException {
+		while (position == current.length) {
+			if (footerRead) {
+				return false;
+			}
+			current = nextBlock();
+			position = 0;
+		}
+		return true;
+	}
+
+	private byte[] nextBlock() throws IOException {
+		while (!endOfFile && blocks.size() < window) {
+			submitNextBlob();
+		}
+		if (blocks.isEmpty()) {
+			footerRead = true;
+			return FOOTER;
+		}
+		try {
+			return blocks.removeFirst().get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while decoding pbf block", e);
+		} catch (ExecutionException e) {
+			throw new IOException("Could not decode pbf block", e.getCause());
+		}
+	}
+
+	/**
+	 * Read the next blob of the file and schedule it for decoding.
+	 */
+	private void submitNextBlob() throws IOException {
+		byte[] blob = input.next();
+		if (blob == null) {
+			endOfFile = true;
+			return;
+		}
+		blocks.addLast(executor.submit(() -> PbfBlockDecoder.toXml(blob)));
+	}
+}
@@ -0,0 +1,81 @@
+package de.briemla.matsim.converter;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import de.briemla.matsim.instrumentation.PhaseTimer;
+
+/**
+ * Passes the nodes and ways of an OSM PBF file to an {@link OsmHandler}
+ * without rendering and parsing them as XML. The blocks of the file are
+ * decoded by several threads, while the handler receives them on the calling
+ * thread in the order of the blocks. Only a limited number of decoded blocks
+ * is kept in memory at any time.
+ *
+ * @author lars
+ *
+ */
+class OsmPbfReader {
+
+	private static final int BLOCKS_PER_THREAD = 2;
+
+	private final int threads;
+
+	/**
+	 * @param threads
+	 *            number of threads decoding blocks
+	 */
+	OsmPbfReader(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("At least one thread is required, but got " + threads);
+		}
+		this.threads = threads;
+	}
+
+	/**
+	 * Read all nodes and ways of the file.
+	 *
+	 * @param pbf
+	 *            OSM PBF file
+	 * @param handler
+	 *            receives the nodes and ways
+	 * @throws IOException
+	 *             if the file can not be read or a block can not be decoded
+	 */
+	void read(Path pbf, OsmHandler handler) throws IOException {
+		ExecutorService executor = Executors.newFixedThreadPool(threads, PhaseTimer.threadFactory());
+		int window = BLOCKS_PER_THREAD * threads;
+		Deque<Future<DecodedBlock>> blocks = new ArrayDeque<>(window);
+		try (PbfBlobReader blobs = new PbfBlobReader(Files.newInputStream(pbf))) {
+			boolean endOfFile = false;
+			while (true) {
+				while (!endOfFile && blocks.size() < window) {
+					byte[] blob = blobs.next();
+					if (blob == null) {
+						endOfFile = true;
+					} else {
+						blocks.addLast(executor.submit(() -> PbfBlockDecoder.decode(blob)));
+					}
+				}
+				if (blocks.isEmpty()) {
+					return;
+				}
+				blocks.removeFirst().get().replayTo(handler);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while decoding pbf block", e);
+		} catch (ExecutionException e) {
+			throw new IOException("Could not decode pbf block", e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+}
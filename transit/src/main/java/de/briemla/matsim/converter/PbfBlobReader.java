@@ -0,0 +1,89 @@
+package de.briemla.matsim.converter;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads the blobs of an OSM PBF file one after another without decoding
+ * them. The header block is checked right away, because it contains no nodes
+ * or ways. Blobs of unknown type are skipped.
+ *
+ * @author lars
+ *
+ */
+class PbfBlobReader implements Closeable {
+
+	private static final int MAX_HEADER_SIZE = 64 * 1024;
+	private static final int MAX_BLOB_SIZE = 32 * 1024 * 1024;
+	private static final String HEADER_BLOCK = "OSMHeader";
+	private static final String DATA_BLOCK = "OSMData";
+	// BlobHeader
+	private static final int BLOB_HEADER_TYPE = 1;
+	private static final int BLOB_HEADER_DATA_SIZE = 3;
+
+	private final DataInputStream input;
+
+	PbfBlobReader(InputStream input) {
+		this.input = new DataInputStream(new BufferedInputStream(input));
+	}
+
+	/**
+	 * @return content of the next blob containing a PrimitiveBlock or
+	 *         <code>null</code> at the end of the file
+	 * @throws IOException
+	 *             if the file can not be read or a blob header is invalid
+	 */
+	byte[] next() throws IOException {
+		while (true) {
+			int headerSize;
+			try {
+				headerSize = input.readInt();
+			} catch (EOFException e) {
+				return null;
+			}
+			if (headerSize < 0 || headerSize > MAX_HEADER_SIZE) {
+				throw new IOException("Invalid blob header size " + headerSize);
+			}
+			ProtobufReader header = new ProtobufReader(readFully(headerSize));
+			String type = null;
+			int dataSize = -1;
+			while (header.hasNext()) {
+				int key = header.readKey();
+				switch (ProtobufReader.fieldNumber(key)) {
+				case BLOB_HEADER_TYPE:
+					type = header.readString();
+					break;
+				case BLOB_HEADER_DATA_SIZE:
+					dataSize = header.readInt();
+					break;
+				default:
+					header.skip(key);
+				}
+			}
+			if (dataSize < 0 || dataSize > MAX_BLOB_SIZE) {
+				throw new IOException("Invalid blob size " + dataSize);
+			}
+			byte[] blob = readFully(dataSize);
+			if (HEADER_BLOCK.equals(type)) {
+				PbfBlockDecoder.checkHeader(blob);
+			} else if (DATA_BLOCK.equals(type)) {
+				return blob;
+			}
+		}
+	}
+
+	private byte[] readFully(int size) throws IOException {
+		byte[] bytes = new byte[size];
+		input.readFully(bytes);
+		return bytes;
+	}
+
+	@Override
+	public void close() throws IOException {
+		input.close();
+	}
+}
@@ -0,0 +1,480 @@
+package de.briemla.matsim.converter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Decodes blocks of an OSM PBF file and passes their nodes and ways to an
+ * {@link OsmHandler} or renders them as OSM XML. Only the content used to
+ * build a network is decoded: id and coordinates of nodes, and id, node
+ * references and tags of ways. Node tags and relations are skipped.
+ * Coordinates are printed exactly as they are stored, so they parse to the
+ * same values as in an OSM XML extract.
+ * <p>
+ * Each block is decoded independently, so several blocks can be decoded in
+ * parallel.
+ *
+ * @author lars
+ *
+ */
+class PbfBlockDecoder {
+
+	private static final List<String> SUPPORTED_FEATURES = Arrays.asList("OsmSchema-V0.6", "DenseNodes");
+	private static final int NANO_DEGREE_DIGITS = 9;
+
+	// Blob
+	private static final int BLOB_RAW = 1;
+	private static final int BLOB_RAW_SIZE = 2;
+	private static final int BLOB_ZLIB_DATA = 3;
+	// HeaderBlock
+	private static final int HEADER_REQUIRED_FEATURES = 4;
+	// PrimitiveBlock
+	private static final int BLOCK_STRING_TABLE = 1;
+	private static final int BLOCK_PRIMITIVE_GROUP = 2;
+	private static final int BLOCK_GRANULARITY = 17;
+	private static final int BLOCK_LAT_OFFSET = 19;
+	private static final int BLOCK_LON_OFFSET = 20;
+	private static final int STRING_TABLE_ENTRY = 1;
+	// PrimitiveGroup
+	private static final int GROUP_NODE = 1;
+	private static final int GROUP_DENSE_NODES = 2;
+	private static final int GROUP_WAY = 3;
+	// Node and DenseNodes
+	private static final int NODE_ID = 1;
+	private static final int NODE_LAT = 8;
+	private static final int NODE_LON = 9;
+	// Way
+	private static final int WAY_ID = 1;
+	private static final int WAY_KEYS = 2;
+	private static final int WAY_VALUES = 3;
+	private static final int WAY_REFS = 8;
+
+	private static final int DEFAULT_GRANULARITY = 100;
+
+	private PbfBlockDecoder() {
+	}
+
+	/**
+	 * Check that all features required by the file are supported.
+	 *
+	 * @param blob
+	 *            content of the blob containing the HeaderBlock
+	 */
+	static void checkHeader(byte[] blob) {
+		ProtobufReader header = new ProtobufReader(uncompress(blob));
+		while (header.hasNext()) {
+			int key = header.readKey();
+			if (ProtobufReader.fieldNumber(key) != HEADER_REQUIRED_FEATURES) {
+				header.skip(key);
+				continue;
+			}
+			String feature = header.readString();
+			if (!SUPPORTED_FEATURES.contains(feature)) {
+				throw new IllegalArgumentException("Unsupported feature in pbf file: " + feature);
+			}
+		}
+	}
+
+	/**
+	 * Render all nodes and ways of a PrimitiveBlock as OSM XML elements.
+	 *
+	 * @param blob
+	 *            content of the blob containing the PrimitiveBlock
+	 * @return UTF-8 encoded XML elements
+	 */
+	static byte[] toXml(byte[] blob) {
+		XmlRenderer xml = new XmlRenderer();
+		decode(blob, xml);
+		return xml.toBytes();
+	}
+
+	/**
+	 * Decode all nodes and ways of a PrimitiveBlock, so they can be passed on
+	 * later in the order of the blocks.
+	 *
+	 * @param blob
+	 *            content of the blob containing the PrimitiveBlock
+	 * @return decoded nodes and ways
+	 */
+	static DecodedBlock decode(byte[] blob) {
+		DecodedBlock decoded = new DecodedBlock();
+		decode(blob, decoded);
+		return decoded;
+	}
+
+	/**
+	 * Pass all nodes and ways of a PrimitiveBlock to the handler in the order
+	 * of the block.
+	 *
+	 * @param blob
+	 *            content of the blob containing the PrimitiveBlock
+	 * @param handler
+	 *            receives the nodes and ways
+	 */
+	static void decode(byte[] blob, OsmHandler handler) {
+		byte[] content = uncompress(blob);
+		Block block = readBlock(new ProtobufReader(content));
+		ProtobufReader reader = new ProtobufReader(content);
+		while (reader.hasNext()) {
+			int key = reader.readKey();
+			if (ProtobufReader.fieldNumber(key) == BLOCK_PRIMITIVE_GROUP) {
+				readGroup(handler, reader.readMessage(), block);
+			} else {
+				reader.skip(key);
+			}
+		}
+	}
+
+	private static byte[] uncompress(byte[] blob) {
+		ProtobufReader reader = new ProtobufReader(blob);
+		byte[] raw = null;
+		byte[] compressed = null;
+		int rawSize = -1;
+		while (reader.hasNext()) {
+			int key = reader.readKey();
+			switch (ProtobufReader.fieldNumber(key)) {
+			case BLOB_RAW:
+				raw = reader.readBytes();
+				break;
+			case BLOB_RAW_SIZE:
+				rawSize = reader.readInt();
+				break;
+			case BLOB_ZLIB_DATA:
+				compressed = reader.readBytes();
+				break;
+			default:
+				if (ProtobufReader.wireType(key) == ProtobufReader.LENGTH_DELIMITED) {
+					throw new IllegalArgumentException("Unsupported compression in field "
+							+ ProtobufReader.fieldNumber(key) + " of pbf blob");
+				}
+				reader.skip(key);
+			}
+		}
+		if (raw != null) {
+			return raw;
+		}
+		if (compressed == null || rawSize < 0) {
+			throw new IllegalArgumentException("Pbf blob without data");
+		}
+		return inflate(compressed, rawSize);
+	}
+
+	private static byte[] inflate(byte[] compressed, int rawSize) {
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(compressed);
+			byte[] raw = new byte[rawSize];
+			int length = 0;
+			while (length < rawSize && !inflater.finished()) {
+				int inflated = inflater.inflate(raw, length, rawSize - length);
+				if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					break;
+				}
+				length += inflated;
+			}
+			if (length != rawSize) {
+				throw new IllegalArgumentException("Pbf blob has " + length + " bytes instead of " + rawSize);
+			}
+			return raw;
+		} catch (DataFormatException e) {
+			throw new IllegalArgumentException("Corrupt zlib data in pbf blob", e);
+		} finally {
+			inflater.end();
+		}
+	}
+
+	private static Block readBlock(ProtobufReader reader) {
+		Block block = new Block();
+		while (reader.hasNext()) {
+			int key = reader.readKey();
+			switch (ProtobufReader.fieldNumber(key)) {
+			case BLOCK_STRING_TABLE:
+				block.strings = readStringTable(reader.readMessage());
+				break;
+			case BLOCK_GRANULARITY:
+				block.granularity = reader.readInt();
+				break;
+			case BLOCK_LAT_OFFSET:
+				block.latitudeOffset = reader.readVarint();
+				break;
+			case BLOCK_LON_OFFSET:
+				block.longitudeOffset = reader.readVarint();
+				break;
+			default:
+				reader.skip(key);
+			}
+		}
+		return block;
+	}
+
+	private static String[] readStringTable(ProtobufReader reader) {
+		String[] strings = new String[16];
+		int size = 0;
+		while (reader.hasNext()) {
+			int key = reader.readKey();
+			if (ProtobufReader.fieldNumber(key) != STRING_TABLE_ENTRY) {
+				reader.skip(key);
+				continue;
+			}
+			if (size == strings.length) {
+				strings = Arrays.copyOf(strings, 2 * size);
+			}
+			strings[size++] = reader.readString();
+		}
+		return Arrays.copyOf(strings, size);
+	}
+
+	private static void readGroup(OsmHandler handler, ProtobufReader group, Block block) {
+		while (group.hasNext()) {
+			int key = group.readKey();
+			switch (ProtobufReader.fieldNumber(key)) {
+			case GROUP_NODE:
+				readNode(handler, group.readMessage(), block);
+				break;
+			case GROUP_DENSE_NODES:
+				readDenseNodes(handler, group.readMessage(), block);
+				break;
+			case GROUP_WAY:
+				readWay(handler, group.readMessage(), block);
+				break;
+			default:
+				group.skip(key);
+			}
+		}
+	}
+
+	private static void readNode(OsmHandler handler, ProtobufReader node, Block block) {
+		long id = 0;
+		long latitude = 0;
+		long longitude = 0;
+		while (node.hasNext()) {
+			int key = node.readKey();
+			switch (ProtobufReader.fieldNumber(key)) {
+			case NODE_ID:
+				id = node.readSignedVarint();
+				break;
+			case NODE_LAT:
+				latitude = node.readSignedVarint();
+				break;
+			case NODE_LON:
+				longitude = node.readSignedVarint();
+				break;
+			default:
+				node.skip(key);
+			}
+		}
+		handler.node(id, block.latitude(latitude), block.longitude(longitude));
+	}
+
+	private static void readDenseNodes(OsmHandler handler, ProtobufReader nodes, Block block) {
+		long[] ids = new long[0];
+		long[] latitudes = new long[0];
+		long[] longitudes = new long[0];
+		while (nodes.hasNext()) {
+			int key = nodes.readKey();
+			switch (ProtobufReader.fieldNumber(key)) {
+			case NODE_ID:
+				ids = readDeltaCoded(nodes.readMessage());
+				break;
+			case NODE_LAT:
+				latitudes = readDeltaCoded(nodes.readMessage());
+				break;
+			case NODE_LON:
+				longitudes = readDeltaCoded(nodes.readMessage());
+				break;
+			default:
+				nodes.skip(key);
+			}
+		}
+		if (latitudes.length != ids.length || longitudes.length != ids.length) {
+			throw new IllegalArgumentException("Dense nodes with " + ids.length + " ids, " + latitudes.length
+					+ " latitudes and " + longitudes.length + " longitudes");
+		}
+		for (int node = 0; node < ids.length; node++) {
+			handler.node(ids[node], block.latitude(latitudes[node]), block.longitude(longitudes[node]));
+		}
+	}
+
+	private static void readWay(OsmHandler handler, ProtobufReader way, Block block) {
+		long id = 0;
+		long[] keys = new long[0];
+		long[] values = new long[0];
+		long[] references = new long[0];
+		while (way.hasNext()) {
+			int key = way.readKey();
+			switch (ProtobufReader.fieldNumber(key)) {
+			case WAY_ID:
+				id = way.readVarint();
+				break;
+			case WAY_KEYS:
+				keys = readPacked(way.readMessage());
+				break;
+			case WAY_VALUES:
+				values = readPacked(way.readMessage());
+				break;
+			case WAY_REFS:
+				references = readDeltaCoded(way.readMessage());
+				break;
+			default:
+				way.skip(key);
+			}
+		}
+		if (keys.length != values.length) {
+			throw new IllegalArgumentException("Way " + id + " has " + keys.length + " keys and " + values.length
+					+ " values");
+		}
+		Map<String, String> tags = new LinkedHashMap<>();
+		for (int tag = 0; tag < keys.length; tag++) {
+			tags.put(block.string(keys[tag]), block.string(values[tag]));
+		}
+		handler.way(id, references, tags);
+	}
+
+	private static long[] readPacked(ProtobufReader packed) {
+		long[] values = new long[16];
+		int size = 0;
+		while (packed.hasNext()) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, 2 * size);
+			}
+			values[size++] = packed.readVarint();
+		}
+		return Arrays.copyOf(values, size);
+	}
+
+	private static long[] readDeltaCoded(ProtobufReader packed) {
+		long[] values = new long[16];
+		int size = 0;
+		long value = 0;
+		while (packed.hasNext()) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, 2 * size);
+			}
+			value += packed.readSignedVarint();
+			values[size++] = value;
+		}
+		return Arrays.copyOf(values, size);
+	}
+
+	/**
+	 * Print a coordinate given in nanodegrees as decimal degrees without
+	 * trailing zeros, e.g. 49012345600 as 49.0123456.
+	 */
+	static void appendNanoDegrees(StringBuilder xml, long nanoDegrees) {
+		if (nanoDegrees < 0) {
+			xml.append('-');
+		}
+		String digits = Long.toString(Math.abs(nanoDegrees));
+		if (digits.length() <= NANO_DEGREE_DIGITS) {
+			xml.append('0');
+		} else {
+			xml.append(digits, 0, digits.length() - NANO_DEGREE_DIGITS);
+		}
+		int end = NANO_DEGREE_DIGITS;
+		String fraction = digits.length() >= NANO_DEGREE_DIGITS ? digits.substring(digits.length()
+				- NANO_DEGREE_DIGITS) : zeros(NANO_DEGREE_DIGITS - digits.length()) + digits;
+		while (end > 0 && fraction.charAt(end - 1) == '0') {
+			end--;
+		}
+		if (end > 0) {
+			xml.append('.').append(fraction, 0, end);
+		}
+	}
+
+	private static String zeros(int count) {
+		char[] zeros = new char[count];
+		Arrays.fill(zeros, '0');
+		return new String(zeros);
+	}
+
+	private static void appendEscaped(StringBuilder xml, String value) {
+		for (int index = 0; index < value.length(); index++) {
+			char character = value.charAt(index);
+			switch (character) {
+			case '&':
+				xml.append("&amp;");
+				break;
+			case '<':
+				xml.append("&lt;");
+				break;
+			case '>':
+				xml.append("&gt;");
+				break;
+			case '"':
+				xml.append("&quot;");
+				break;
+			default:
+				xml.append(character);
+			}
+		}
+	}
+
+	/**
+	 * Renders nodes and ways as OSM XML elements.
+	 */
+	private static class XmlRenderer implements OsmHandler {
+
+		private final StringBuilder xml = new StringBuilder();
+
+		@Override
+		public void node(long id, long latitude, long longitude) {
+			xml.append("<node id=\"").append(id).append("\" lat=\"");
+			appendNanoDegrees(xml, latitude);
+			xml.append("\" lon=\"");
+			appendNanoDegrees(xml, longitude);
+			xml.append("\"/>\n");
+		}
+
+		@Override
+		public void way(long id, long[] nodes, Map<String, String> tags) {
+			xml.append("<way id=\"").append(id).append("\">\n");
+			for (long reference : nodes) {
+				xml.append("<nd ref=\"").append(reference).append("\"/>\n");
+			}
+			for (Map.Entry<String, String> tag : tags.entrySet()) {
+				xml.append("<tag k=\"");
+				appendEscaped(xml, tag.getKey());
+				xml.append("\" v=\"");
+				appendEscaped(xml, tag.getValue());
+				xml.append("\"/>\n");
+			}
+			xml.append("</way>\n");
+		}
+
+		byte[] toBytes() {
+			return xml.toString().getBytes(StandardCharsets.UTF_8);
+		}
+	}
+
+	/**
+	 * Settings of a PrimitiveBlock needed to decode its groups.
+	 */
+	private static class Block {
+
+		private String[] strings = new String[0];
+		private long granularity = DEFAULT_GRANULARITY;
+		private long latitudeOffset = 0;
+		private long longitudeOffset = 0;
+
+		long latitude(long latitude) {
+			return latitudeOffset + granularity * latitude;
+		}
+
+		long longitude(long longitude) {
+			return longitudeOffset + granularity * longitude;
+		}
+
+		String string(long index) {
+			if (index < 0 || index >= strings.length) {
+				throw new IllegalArgumentException("String " + index + " outside of string table with "
+						+ strings.length + " entries");
+			}
+			return strings[(int) index];
+		}
+	}
+}
@@ -0,0 +1,152 @@
+package de.briemla.matsim.converter;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Minimal reader for the protocol buffers wire format. It only supports what
+ * is needed to decode OSM PBF files: varints, zigzag encoded varints, length
+ * delimited fields and packed repeated varints. Nested messages and packed
+ * fields are read by a new {@link ProtobufReader} over the same array, so no
+ * bytes are copied.
+ *
+ * @author lars
+ *
+ */
+class ProtobufReader {
+
+	static final int VARINT = 0;
+	static final int FIXED64 = 1;
+	static final int LENGTH_DELIMITED = 2;
+	static final int FIXED32 = 5;
+
+	private final byte[] buffer;
+	private final int limit;
+	private int position;
+
+	ProtobufReader(byte[] buffer) {
+		this(buffer, 0, buffer.length);
+	}
+
+	ProtobufReader(byte[] buffer, int offset, int length) {
+		if (offset < 0 || length < 0 || offset + length > buffer.length) {
+			throw new IllegalArgumentException("Invalid range " + offset + "+" + length + " in " + buffer.length
+					+ " bytes");
+		}
+		this.buffer = buffer;
+		this.position = offset;
+		this.limit = offset + length;
+	}
+
+	boolean hasNext() {
+		return position < limit;
+	}
+
+	/**
+	 * @return key of the next field, containing field number and wire type
+	 */
+	int readKey() {
+		return (int) readVarint();
+	}
+
+	static int fieldNumber(int key) {
+		return key >>> 3;
+	}
+
+	static int wireType(int key) {
+		return key & 0x7;
+	}
+
+	long readVarint() {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			byte current = nextByte();
+			value |= (long) (current & 0x7f) << shift;
+			if (current >= 0) {
+				return value;
+			}
+		}
+		throw new IllegalArgumentException("Malformed varint at position " + position);
+	}
+
+	long readSignedVarint() {
+		long value = readVarint();
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	int readInt() {
+		return (int) readVarint();
+	}
+
+	/**
+	 * @return reader over the content of the next length delimited field
+	 */
+	ProtobufReader readMessage() {
+		int length = readLength();
+		ProtobufReader message = new ProtobufReader(buffer, position, length);
+		position += length;
+		return message;
+	}
+
+	byte[] readBytes() {
+		int length = readLength();
+		byte[] bytes = new byte[length];
+		System.arraycopy(buffer, position, bytes, 0, length);
+		position += length;
+		return bytes;
+	}
+
+	String readString() {
+		int length = readLength();
+		String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+		position += length;
+		return value;
+	}
+
+	/**
+	 * Skip the value of a field which is not needed.
+	 *
+	 * @param key
+	 *            key of the field as returned by {@link #readKey()}
+	 */
+	void skip(int key) {
+		switch (wireType(key)) {
+		case VARINT:
+			readVarint();
+			return;
+		case FIXED64:
+			advance(8);
+			return;
+		case LENGTH_DELIMITED:
+			advance(readLength());
+			return;
+		case FIXED32:
+			advance(4);
+			return;
+		default:
+			throw new IllegalArgumentException("Unsupported wire type " + wireType(key) + " of field "
+					+ fieldNumber(key));
+		}
+	}
+
+	private int readLength() {
+		long length = readVarint();
+		if (length < 0 || length > limit - position) {
+			throw new IllegalArgumentException("Length " + length + " exceeds message at position " + position);
+		}
+		return (int) length;
+	}
+
+	private void advance(int bytes) {
+		if (bytes > limit - position) {
+			throw new IllegalArgumentException("Field exceeds message at position " + position);
+		}
+		position += bytes;
+	}
+
+	private byte nextByte() {
+		if (position >= limit) {
+			throw new IllegalArgumentException("Unexpected end of message");
+		}
+		return buffer[position++];
+	}
+}
@@ -0,0 +1,117 @@
+package de.briemla.matsim.converter;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.NetworkFactory;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.network.LinkImpl;
+import org.matsim.core.network.NetworkImpl;
+import org.matsim.core.scenario.ScenarioUtils;
+
+/**
+ * Copies the part of a {@link Network} whose {@link Node}s are accepted by a
+ * predicate into a new {@link Network}. In contrast to removing all other
+ * {@link Node}s one by one, each {@link Node} and {@link Link} is visited
+ * exactly once and the original {@link Network} can be released as soon as
+ * the copy exists.
+ *
+ * @author lars
+ *
+ */
+public class SubnetworkExtractor {
+
+	private SubnetworkExtractor() {
+	}
+
+	/**
+	 * Create a new {@link Network} containing all accepted {@link Node}s and
+	 * all {@link Link}s between them. The predicate is evaluated in parallel,
+	 * so it has to be thread safe. {@link Node}s and {@link Link}s keep their
+	 * order.
+	 *
+	 * @param network
+	 *            {@link Network} to copy from, it is not modified
+	 * @param accept
+	 *            decides which {@link Node}s are copied
+	 * @return new {@link Network} with the accepted part
+	 */
+	public static Network extract(Network network, Predicate<Node> accept) {
+		Node[] nodes = network.getNodes().values().toArray(new Node[network.getNodes().size()]);
+		return extract(network, nodes, node -> accept.test(nodes[node]));
+	}
+
+	/**
+	 * Create a new {@link Network} containing all accepted {@link Node}s and
+	 * all {@link Link}s between them. {@link Node}s are identified by their
+	 * index in the iteration order of the {@link Network}, like in a
+	 * {@link CompactNetwork}. The predicate is evaluated in parallel, so it has
+	 * to be thread safe. {@link Node}s and {@link Link}s keep their order.
+	 *
+	 * @param network
+	 *            {@link Network} to copy from, it is not modified
+	 * @param accept
+	 *            decides by index which {@link Node}s are copied
+	 * @return new {@link Network} with the accepted part
+	 */
+	public static Network extractByIndex(Network network, IntPredicate accept) {
+		return extract(network, network.getNodes().values().toArray(new Node[network.getNodes().size()]), accept);
+	}
+
+	private static Network extract(Network network, Node[] nodes, IntPredicate accept) {
+		boolean[] accepted = new boolean[nodes.length];
+		IntStream.range(0, nodes.length).parallel().forEach(node -> accepted[node] = accept.test(node));
+
+		Network subnetwork = ScenarioUtils.createScenario(ConfigUtils.createConfig()).getNetwork();
+		if (subnetwork instanceof NetworkImpl) {
+			((NetworkImpl) subnetwork).setCapacityPeriod(network.getCapacityPeriod());
+			((NetworkImpl) subnetwork).setEffectiveLaneWidth(network.getEffectiveLaneWidth());
+		}
+		NetworkFactory factory = subnetwork.getFactory();
+		Map<Id<Node>, Node> copies = new HashMap<>(2 * nodes.length);
+		for (int node = 0; node < nodes.length; node++) {
+			if (accepted[node]) {
+				Node copy = factory.createNode(nodes[node].getId(), nodes[node].getCoord());
+				copies.put(copy.getId(), copy);
+				subnetwork.addNode(copy);
+			}
+		}
+		for (Link link : network.getLinks().values()) {
+			Node from = copies.get(link.getFromNode().getId());
+			Node to = copies.get(link.getToNode().getId());
+			if (from != null && to != null) {
+				Link copy = factory.createLink(link.getId(), from, to);
+				copyAttributes(link, copy);
+				subnetwork.addLink(copy);
+			}
+		}
+		return subnetwork;
+	}
+
+	/**
+	 * Copy all attributes of a {@link Link} except its id and {@link Node}s.
+	 *
+	 * @param from
+	 *            {@link Link} to copy from
+	 * @param to
+	 *            {@link Link} to copy to
+	 */
+	public static void copyAttributes(Link from, Link to) {
+		to.setLength(from.getLength());
+		to.setFreespeed(from.getFreespeed());
+		to.setCapacity(from.getCapacity());
+		to.setNumberOfLanes(from.getNumberOfLanes());
+		to.setAllowedModes(from.getAllowedModes());
+		if (from instanceof LinkImpl && to instanceof LinkImpl) {
+			((LinkImpl) to).setOrigId(((LinkImpl) from).getOrigId());
+			((LinkImpl) to).setType(((LinkImpl) from).getType());
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package de.briemla.matsim.generator;
+
+import java.util.SplittableRandom;
+
+/**
+ * Samples indices according to a fixed set of weights in constant time with
+ * the alias method of Vose. Each index owns a bucket of equal probability,
+ * which is split between the index and one alias. Sampling needs two random
+ * numbers and no allocation. Like {@link DiscreteDistribution} the source of
+ * randomness is passed on each call, so one instance can be shared between
+ * threads.
+ *
+ * @author lars
+ *
+ */
+class AliasTable {
+
+	private final double[] probability;
+	private final int[] alias;
+
+	AliasTable(double[] weights) {
+		int size = weights.length;
+		double sum = 0.0;
+		for (int index = 0; index < size; index++) {
+			if (weights[index] < 0.0 || Double.isNaN(weights[index])) {
+				throw new IllegalArgumentException("Invalid weight at index " + index + ": " + weights[index]);
+			}
+			sum += weights[index];
+		}
+		if (!(sum > 0.0) || Double.isInfinite(sum)) {
+			throw new IllegalArgumentException("Weights must have a positive, finite sum, but got " + sum);
+		}
+		probability = new double[size];
+		alias = new int[size];
+		double[] scaled = new double[size];
+		int[] small = new int[size];
+		int[] large = new int[size];
+		int smallSize = 0;
+		int largeSize = 0;
+		for (int index = 0; index < size; index++) {
+			scaled[index] = weights[index] * size / sum;
+			if (scaled[index] < 1.0) {
+				small[smallSize++] = index;
+			} else {
+				large[largeSize++] = index;
+			}
+		}
+		while (smallSize > 0 && largeSize > 0) {
+			int less = small[--smallSize];
+			int more = large[--largeSize];
+			probability[less] = scaled[less];
+			alias[less] = more;
+			scaled[more] = (scaled[more] + scaled[less]) - 1.0;
+			if (scaled[more] < 1.0) {
+				small[smallSize++] = more;
+			} else {
+				large[largeSize++] = more;
+			}
+		}
+		// Whatever is left is full up to rounding errors
+		while (largeSize > 0) {
+			int index = large[--largeSize];
+			probability[index] = 1.0;
+			alias[index] = index;
+		}
+		while (smallSize > 0) {
+			int index = small[--smallSize];
+			probability[index] = 1.0;
+			alias[index] = index;
+		}
+	}
+
+	/**
+	 * Draw an index. The probability of each index is proportional to its
+	 * weight.
+	 *
+	 * @param random
+	 *            source of randomness
+	 * @return sampled index
+	 */
+	int sample(SplittableRandom random) {
+		int bucket = random.nextInt(probability.length);
+		if (random.nextDouble() < probability[bucket]) {
+			return bucket;
+		}
+		return alias[bucket];
+	}
+
+	int size() {
+		return probability.length;
+	}
+}
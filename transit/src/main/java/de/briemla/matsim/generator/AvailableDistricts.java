@@ -0,0 +1,85 @@
+package de.briemla.matsim.generator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Keeps track of {@link District}s which still have inhabitants without
+ * workplace and of {@link District}s which still have free workplaces.
+ * {@link District}s are removed when they notify their
+ * {@link DistrictListener}, so the sets never have to be filtered again.
+ * Removal swaps the last {@link District} into the free position and takes
+ * constant time.
+ *
+ * @author lars
+ *
+ */
+class AvailableDistricts implements DistrictListener {
+
+	private final List<District> homeDistricts;
+	private final Map<District, Integer> homeDistrictIndices;
+	private final List<District> workDistricts;
+	private final Map<District, Integer> workDistrictIndices;
+
+	AvailableDistricts() {
+		homeDistricts = new ArrayList<>();
+		homeDistrictIndices = new HashMap<>();
+		workDistricts = new ArrayList<>();
+		workDistrictIndices = new HashMap<>();
+	}
+
+	void add(District district) {
+		if (district.hasNonWorkingInhabitants()) {
+			add(district, homeDistricts, homeDistrictIndices);
+		}
+		if (district.hasFreeWorkplace()) {
+			add(district, workDistricts, workDistrictIndices);
+		}
+	}
+
+	private static void add(District district, List<District> districts, Map<District, Integer> indices) {
+		if (indices.containsKey(district)) {
+			return;
+		}
+		indices.put(district, districts.size());
+		districts.add(district);
+	}
+
+	boolean hasHomeDistricts() {
+		return !homeDistricts.isEmpty();
+	}
+
+	District randomHomeDistrict(SplittableRandom random) {
+		return homeDistricts.get(random.nextInt(homeDistricts.size()));
+	}
+
+	List<District> workDistricts() {
+		return Collections.unmodifiableList(workDistricts);
+	}
+
+	@Override
+	public void allInhabitantsWorking(District district) {
+		remove(district, homeDistricts, homeDistrictIndices);
+	}
+
+	@Override
+	public void allWorkplacesTaken(District district) {
+		remove(district, workDistricts, workDistrictIndices);
+	}
+
+	private static void remove(District district, List<District> districts, Map<District, Integer> indices) {
+		Integer index = indices.remove(district);
+		if (index == null) {
+			return;
+		}
+		District last = districts.remove(districts.size() - 1);
+		if (last != district) {
+			districts.set(index, last);
+			indices.put(last, index);
+		}
+	}
+}
@@ -0,0 +1,133 @@
+package de.briemla.matsim.generator;
+
+import java.util.stream.IntStream;
+
+import org.geotools.referencing.CRS;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.core.utils.geometry.CoordImpl;
+import org.matsim.core.utils.geometry.CoordinateTransformation;
+import org.matsim.core.utils.geometry.geotools.MGC;
+import org.matsim.core.utils.geometry.transformations.GeotoolsTransformation;
+import org.matsim.core.utils.geometry.transformations.IdentityTransformation;
+import org.matsim.core.utils.geometry.transformations.TransformationFactory;
+import org.opengis.referencing.FactoryException;
+import org.opengis.referencing.operation.MathTransform;
+import org.opengis.referencing.operation.TransformException;
+
+/**
+ * Transforms whole arrays of coordinates in place instead of one
+ * {@link Coord} at a time. If MATSim transforms between the two coordinate
+ * systems with geotools, the same geotools {@link MathTransform} is applied
+ * to chunks of the arrays in parallel, so the results are identical to
+ * {@link CoordinateTransformation#transform(Coord)} without creating any
+ * objects per point. All other {@link CoordinateTransformation}s are applied
+ * point by point.
+ *
+ * @author lars
+ *
+ */
+public class BulkCoordinateTransformation {
+
+	private static final int CHUNK_SIZE = 4096;
+
+	private final CoordinateTransformation transformation;
+	private final MathTransform mathTransform;
+
+	/**
+	 * Transformation applied point by point.
+	 *
+	 * @param transformation
+	 *            transformation of a single {@link Coord}
+	 */
+	public BulkCoordinateTransformation(CoordinateTransformation transformation) {
+		this(transformation, null);
+	}
+
+	private BulkCoordinateTransformation(CoordinateTransformation transformation, MathTransform mathTransform) {
+		this.transformation = transformation;
+		this.mathTransform = mathTransform;
+	}
+
+	/**
+	 * Create the bulk version of
+	 * {@link TransformationFactory#getCoordinateTransformation(String, String)}.
+	 *
+	 * @param fromSystem
+	 *            coordinate system of the input coordinates
+	 * @param toSystem
+	 *            coordinate system of the transformed coordinates
+	 * @return transformation between both systems
+	 */
+	public static BulkCoordinateTransformation between(String fromSystem, String toSystem) {
+		CoordinateTransformation transformation = TransformationFactory.getCoordinateTransformation(fromSystem,
+				toSystem);
+		if (!(transformation instanceof GeotoolsTransformation)) {
+			return new BulkCoordinateTransformation(transformation);
+		}
+		try {
+			MathTransform mathTransform = CRS.findMathTransform(MGC.getCRS(fromSystem), MGC.getCRS(toSystem), true);
+			return new BulkCoordinateTransformation(transformation, mathTransform);
+		} catch (FactoryException e) {
+			throw new RuntimeException("No transformation from " + fromSystem + " to " + toSystem, e);
+		}
+	}
+
+	/**
+	 * Transform all coordinates in place.
+	 *
+	 * @param x
+	 *            x coordinates, e.g. longitudes
+	 * @param y
+	 *            y coordinates, e.g. latitudes
+	 */
+	public void transform(double[] x, double[] y) {
+		if (x.length != y.length) {
+			throw new IllegalArgumentException("Different number of coordinates: " + x.length + " x and "
+					+ y.length + " y");
+		}
+		if (transformation instanceof IdentityTransformation) {
+			return;
+		}
+		if (mathTransform == null) {
+			transformEach(x, y);
+			return;
+		}
+		int chunks = (x.length + CHUNK_SIZE - 1) / CHUNK_SIZE;
+		if (chunks <= 1) {
+			transformChunk(x, y, 0, x.length);
+			return;
+		}
+		IntStream.range(0, chunks).parallel().forEach(
+				chunk -> transformChunk(x, y, chunk * CHUNK_SIZE, Math.min(x.length, (chunk + 1) * CHUNK_SIZE)));
+	}
+
+	/**
+	 * {@link CoordinateTransformation}s are not guaranteed to be thread safe,
+	 * so they are applied sequentially.
+	 */
+	private void transformEach(double[] x, double[] y) {
+		for (int point = 0; point < x.length; point++) {
+			Coord transformed = transformation.transform(new CoordImpl(x[point], y[point]));
+			x[point] = transformed.getX();
+			y[point] = transformed.getY();
+		}
+	}
+
+	private void transformChunk(double[] x, double[] y, int from, int to) {
+		int points = to - from;
+		double[] interleaved = new double[2 * points];
+		for (int point = 0; point < points; point++) {
+			interleaved[2 * point] = x[from + point];
+			interleaved[2 * point + 1] = y[from + point];
+		}
+		try {
+			mathTransform.transform(interleaved, 0, interleaved, 0, points);
+		} catch (TransformException e) {
+			throw new RuntimeException("Could not transform coordinates " + from + " to " + to, e);
+		}
+		for (int point = 0; point < points; point++) {
+			x[from + point] = interleaved[2 * point];
+			y[from + point] = interleaved[2 * point + 1];
+		}
+	}
+}
@@ -1,6 +1,7 @@
 package de.briemla.matsim.generator;
 
 import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
@@ -11,24 +12,23 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.Random;
-import java.util.stream.Collectors;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
-import org.matsim.api.core.v01.Coord;
 import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
 import org.matsim.api.core.v01.network.Node;
 import org.matsim.api.core.v01.population.Person;
 import org.matsim.api.core.v01.population.Population;
-import org.matsim.core.utils.geometry.CoordImpl;
+import org.matsim.api.core.v01.population.PopulationFactory;
 import org.matsim.core.utils.geometry.CoordinateTransformation;
 
-import de.micromata.opengis.kml.v_2_2_0.Boundary;
-import de.micromata.opengis.kml.v_2_2_0.Coordinate;
-import de.micromata.opengis.kml.v_2_2_0.Geometry;
-import de.micromata.opengis.kml.v_2_2_0.LinearRing;
-import de.micromata.opengis.kml.v_2_2_0.Placemark;
-import de.micromata.opengis.kml.v_2_2_0.Polygon;
+import de.briemla.matsim.instrumentation.PhaseTimer;
 
 public class City {
 
@@ -37,79 +37,156 @@ public class City {
 	private static final String SEPARATOR = ";";
 	private static final double METER_TO_KILOMETER = 0.001;
 	private final List<District> districts;
-	private final CoordinateTransformation coordinateTransformation;
+	private final BulkCoordinateTransformation coordinateTransformation;
 	private final Statistic statistic;
-	private List<District> availableWorkDistricts;
-	private List<District> availableHomeDistricts;
+	private final AvailableDistricts availableDistricts;
+	private DistrictIndex districtIndex;
+	private LinkIndex linkIndex;
+	private int inhabitants;
+	private boolean districtsRanked;
 
 	public City(Statistic statistic, CoordinateTransformation coordinateTransformation) {
+		this(statistic, new BulkCoordinateTransformation(coordinateTransformation));
+	}
+
+	public City(Statistic statistic, BulkCoordinateTransformation coordinateTransformation) {
 		this.statistic = statistic;
 		this.coordinateTransformation = coordinateTransformation;
 		districts = new ArrayList<>();
-		availableWorkDistricts = new ArrayList<>();
-		availableHomeDistricts = new ArrayList<>();
+		availableDistricts = new AvailableDistricts();
+		inhabitants = 0;
 	}
 
-	public void addDistricts(List<Placemark> placemarks) {
-		placemarks.forEach(this::addDistrict);
+	/**
+	 * Add a {@link District} with the given border. The border is given in the
+	 * coordinate system of the kml file and is transformed like all other
+	 * coordinates of the {@link City}.
+	 *
+	 * @param name
+	 *            name of the {@link District} as used by the {@link Statistic}
+	 * @param longitudes
+	 *            longitudes of the border
+	 * @param latitudes
+	 *            latitudes of the border
+	 */
+	public void addDistrict(String name, double[] longitudes, double[] latitudes) {
+		double[] x = longitudes.clone();
+		double[] y = latitudes.clone();
+		coordinateTransformation.transform(x, y);
+		addProjectedDistrict(name, x, y);
 	}
 
-	private void addDistrict(Placemark placemark) {
-		Geometry geometry = placemark.getGeometry();
-		if (geometry instanceof Polygon) {
-			String name = placemark.getName();
-			add(name, coordinates((Polygon) geometry));
-		}
+	/**
+	 * Add all {@link District}s and transform their borders at once, which is
+	 * faster than adding them one by one for many {@link District}s.
+	 *
+	 * @param borders
+	 *            borders in the coordinate system of the kml file
+	 */
+	void addDistricts(DistrictBorders borders) {
+		borders.transform(coordinateTransformation);
+		borders.forEach(this::addProjectedDistrict);
 	}
 
-	private void add(String name, List<Coordinate> coordinates) {
-		Census census = statistic.findCensus(name);
-		District district = new District(name, census);
-		coordinates.forEach(coordinate -> district.add(transformed(coordinate)));
+	/**
+	 * Add a {@link District} whose border is already given in the coordinate
+	 * system of the {@link City}, e.g. read from a {@link DistrictCache}.
+	 *
+	 * @param name
+	 *            name of the {@link District} as used by the {@link Statistic}
+	 * @param x
+	 *            projected x coordinates of the border
+	 * @param y
+	 *            projected y coordinates of the border
+	 */
+	public void addProjectedDistrict(String name, double[] x, double[] y) {
+		District district = new District(name, statistic.findCensus(name));
+		for (int corner = 0; corner < x.length; corner++) {
+			district.add(x[corner], y[corner]);
+		}
 		add(district);
 	}
 
-	private void add(District district) {
+	void add(District district) {
 		districts.add(district);
-		if (district.hasNonWorkingInhabitants()) {
-			availableHomeDistricts.add(district);
-		}
-		if (district.hasFreeWorkplace()) {
-			availableWorkDistricts.add(district);
+		districtsRanked = false;
+		districtIndex = null;
+		inhabitants += district.getInhabitants();
+		district.setListener(availableDistricts);
+		availableDistricts.add(district);
+	}
+
+	/**
+	 * Rank the nearest {@link District}s once for every {@link District}, so
+	 * selecting a work {@link District} does not need to sort the
+	 * {@link District}s again. All rankings refer to the same unmodifiable
+	 * view of {@link #districts}. Equal distances are ordered like
+	 * {@link #districts} to keep the ranking reproducible.
+	 */
+	private void rankDistrictsByDistance() {
+		List<District> rankedDistricts = Collections.unmodifiableList(districts);
+		for (District district : districts) {
+			district.rankDistricts(rankedDistricts);
 		}
+		districtsRanked = true;
 	}
 
-	private Coord transformed(Coordinate coordinate) {
-		return coordinateTransformation.transform(new CoordImpl(coordinate.getLongitude(), coordinate.getLatitude()));
+	/**
+	 * Adds each {@link Node} to the first district which contains this
+	 * {@link Node}. The {@link District}s are looked up in parallel, but the
+	 * {@link Node}s are added in the order of the given {@link Map}.
+	 *
+	 * @param nodes
+	 *            {@link Node}s to be added
+	 */
+	public void addNodes(Map<Id<Node>, ? extends Node> nodes) {
+		DistrictIndex index = districtIndex();
+		Node[] nodesToAdd = nodes.values().toArray(new Node[nodes.size()]);
+		District[] containingDistricts = new District[nodesToAdd.length];
+		IntStream.range(0, nodesToAdd.length).parallel()
+				.forEach(node -> containingDistricts[node] = index.find(nodesToAdd[node].getCoord()));
+		for (int node = 0; node < nodesToAdd.length; node++) {
+			if (containingDistricts[node] != null) {
+				containingDistricts[node].assign(nodesToAdd[node]);
+			}
+		}
 	}
 
-	private List<Coordinate> coordinates(Polygon geometry) {
-		Boundary outerBoundaryIs = geometry.getOuterBoundaryIs();
-		LinearRing linearRing = outerBoundaryIs.getLinearRing();
-		return linearRing.getCoordinates();
+	/**
+	 * Place all activities created afterwards on the nearest {@link Link} of
+	 * their {@link Node}, so the simulation does not need to match them to
+	 * {@link Link}s on startup.
+	 *
+	 * @param network
+	 *            {@link Network} containing the {@link Link}s
+	 */
+	public void snapActivitiesTo(Network network) {
+		linkIndex = LinkIndex.of(network);
 	}
 
-	public void addNodes(Map<Id<Node>, ? extends Node> nodes) {
-		nodes.values().stream().forEach(node -> add(node));
+	public Boolean isInside(Node node) {
+		return districtIndex().find(node.getCoord()) != null;
 	}
 
 	/**
-	 * Adds the {@link Node} to the first district which contains this
-	 * {@link Node}
+	 * The index is built by {@link #addNodes(Map)} at the latest, so it is
+	 * available before {@link #isInside(Node)} is used from several threads.
 	 *
-	 * @param node
-	 *            {@link Node} to be added
+	 * @return spatial index over all {@link District}s
 	 */
-	private void add(Node node) {
-		for (District district : districts) {
-			if (district.add(node)) {
-				break;
-			}
+	private DistrictIndex districtIndex() {
+		if (districtIndex == null) {
+			districtIndex = new DistrictIndex(districts);
 		}
+		return districtIndex;
 	}
 
-	public Boolean isInside(Node node) {
-		return districts.stream().anyMatch(district -> district.isInside(node.getCoord()));
+	/**
+	 * @return bounding box of all {@link District}s in the coordinate system
+	 *         of the {@link City}
+	 */
+	public Rectangle2D getBounds() {
+		return districtIndex().getBounds();
 	}
 
 	public List<District> getDistricts() {
@@ -124,41 +201,132 @@ public class City {
 		return nodes.stream();
 	}
 
-	public District getRandomAvailableHomeDistrict() {
-		int districtIndex = new Random().nextInt(availableHomeDistricts.size());
-		return availableHomeDistricts.get(districtIndex);
+	public District getRandomAvailableHomeDistrict(SplittableRandom random) {
+		return availableDistricts.randomHomeDistrict(random);
 	}
 
 	public int getInhabitants() {
-		return districts.stream().collect(Collectors.summingInt(District::getInhabitants));
+		return inhabitants;
 	}
 
 	public List<District> getAvailableWorkDistricts() {
-		return availableWorkDistricts;
+		return availableDistricts.workDistricts();
 	}
 
-	public void cleanUpAvailableDistricts() {
-		cleanUpWorkDistricts();
-		availableHomeDistricts = availableHomeDistricts.stream().filter(District::hasNonWorkingInhabitants)
-				.collect(Collectors.toList());
+	/**
+	 * Create all inhabitants of the {@link City} and add them to the
+	 * {@link Population}.
+	 *
+	 * @param population
+	 *            {@link Population} element to add {@link Person}s to
+	 * @param seed
+	 *            seed for all random decisions, e.g. the global random seed of
+	 *            the config
+	 * @param threads
+	 *            number of threads used to create the plans
+	 * @see #createPlanTable(long, int)
+	 */
+	public void createPopulation(Population population, long seed, int threads) {
+		createPopulation(population.getFactory(), population::addPerson, seed, threads);
 	}
 
-	private void cleanUpWorkDistricts() {
-		availableWorkDistricts = availableWorkDistricts.stream().filter(District::hasFreeWorkplace)
-				.collect(Collectors.toList());
+	/**
+	 * Create all inhabitants of the {@link City} and pass them to the consumer
+	 * one after another, e.g. to a streaming writer. Only the
+	 * {@link PlanTable} and a single {@link Person} are held in memory.
+	 *
+	 * @param factory
+	 *            {@link PopulationFactory} to create {@link Person}s with
+	 * @param consumer
+	 *            receives all {@link Person}s in the order of
+	 *            {@link #districts}
+	 * @param seed
+	 *            seed for all random decisions, e.g. the global random seed of
+	 *            the config
+	 * @param threads
+	 *            number of threads used to create the plans
+	 * @see #createPlanTable(long, int)
+	 */
+	public void createPopulation(PopulationFactory factory, Consumer<Person> consumer, long seed, int threads) {
+		createPlanTable(seed, threads).forEachPerson(factory, consumer);
 	}
 
 	/**
-	 * Create all inhabitants of the {@link City}
+	 * Create the plans of all inhabitants of the {@link City}. Workplaces are
+	 * assigned sequentially, because all inhabitants compete for the same
+	 * workplaces. Afterwards each {@link District} writes the plans of its
+	 * inhabitants in parallel with its own {@link SplittableRandom}. All random
+	 * streams are derived from the given seed in a fixed order, so the plans
+	 * do not depend on the number of threads.
 	 *
-	 * @param population
-	 *            {@link Population} element to add {@link Person}s to
+	 * @param seed
+	 *            seed for all random decisions, e.g. the global random seed of
+	 *            the config
+	 * @param threads
+	 *            number of threads used to create the plans
+	 * @return plans of all inhabitants grouped by home {@link District}
 	 */
-	public void createPopulation(Population population) {
-		for (int inhabitant = 0; inhabitant < getInhabitants(); inhabitant++) {
-			getRandomAvailableHomeDistrict().createPerson(population, districts);
-			cleanUpAvailableDistricts();
+	public PlanTable createPlanTable(long seed, int threads) {
+		if (!districtsRanked) {
+			rankDistrictsByDistance();
+		}
+		NodeCoordinates nodes = nodeIndex();
+		SplittableRandom random = new SplittableRandom(seed);
+		assignWorkplaces(random.split());
+		List<SplittableRandom> districtRandoms = new ArrayList<>(districts.size());
+		for (int district = 0; district < districts.size(); district++) {
+			districtRandoms.add(random.split());
 		}
+		String[] districtNames = new String[districts.size()];
+		int[] districtOffsets = new int[districts.size() + 1];
+		for (int district = 0; district < districts.size(); district++) {
+			districtNames[district] = districts.get(district).getName();
+			districtOffsets[district + 1] = districtOffsets[district]
+					+ districts.get(district).getWorkingInhabitants();
+		}
+		PlanTable table = new PlanTable(nodes, districtNames, districtOffsets);
+		ForkJoinPool pool = new ForkJoinPool(threads, PhaseTimer.forkJoinThreadFactory(), null, false);
+		try {
+			pool.submit(() -> IntStream.range(0, districts.size()).parallel().forEach(index -> districts.get(index)
+					.createPlans(table, districtOffsets[index], districtRandoms.get(index)))).get();
+		} catch (InterruptedException | ExecutionException e) {
+			throw new RuntimeException("Could not create population", e);
+		} finally {
+			pool.shutdown();
+		}
+		return table;
+	}
+
+	/**
+	 * Assign a workplace to every inhabitant. {@link District}s leave the
+	 * available {@link District}s on their own via {@link DistrictListener},
+	 * so each inhabitant takes constant time apart from sampling the work
+	 * {@link District}.
+	 */
+	private void assignWorkplaces(SplittableRandom random) {
+		while (availableDistricts.hasHomeDistricts()) {
+			getRandomAvailableHomeDistrict(random).assignWorkplace(random);
+		}
+	}
+
+	/**
+	 * Number all {@link Node}s of all {@link District}s in the order of
+	 * {@link #districts}. Each {@link District} remembers the index of its
+	 * first {@link Node} and prepares the sampling of its {@link Node}s.
+	 *
+	 * @return coordinates of the {@link Node}s of all {@link District}s and
+	 *         their nearest {@link Link}s, if {@link Link}s are known
+	 */
+	private NodeCoordinates nodeIndex() {
+		List<Node> nodes = new ArrayList<>();
+		for (District district : districts) {
+			district.prepareSampling(nodes.size());
+			nodes.addAll(district.getNodes());
+		}
+		if (linkIndex != null) {
+			return NodeCoordinates.of(nodes).withNearestLinks(linkIndex);
+		}
+		return NodeCoordinates.of(nodes);
 	}
 
 	public void writeMatricesTo(File outputDirectory) {
@@ -168,14 +336,14 @@ public class City {
 
 	private void printDistanceMatrix(File outputDirectory) {
 		NumberFormat toDecimal = NumberFormat.getNumberInstance(Locale.GERMAN);
+		List<District> districtsByName = districtsByName();
 		try (BufferedWriter output = new BufferedWriter(new FileWriter(new File(outputDirectory, DISTANCE_CSV)))) {
-			districts.sort((district1, district2) -> district1.getName().compareTo(district2.getName()));
-			printDistrictNamesTo(output);
+			printDistrictNamesTo(output, districtsByName);
 			output.newLine();
-			for (District from : districts) {
+			for (District from : districtsByName) {
 				Point2D fromCenter = from.getCenter();
 				output.write(from.getName());
-				for (District to : districts) {
+				for (District to : districtsByName) {
 					Point2D toCenter = to.getCenter();
 					double distance = fromCenter.distance(toCenter) * METER_TO_KILOMETER;
 					output.write(SEPARATOR + toDecimal.format(distance));
@@ -187,7 +355,19 @@ public class City {
 		}
 	}
 
-	private void printDistrictNamesTo(BufferedWriter output) {
+	/**
+	 * Sort a copy of {@link #districts}, because their order defines the
+	 * random streams used to create the population.
+	 *
+	 * @return {@link District}s sorted by name
+	 */
+	private List<District> districtsByName() {
+		List<District> districtsByName = new ArrayList<>(districts);
+		districtsByName.sort((district1, district2) -> district1.getName().compareTo(district2.getName()));
+		return districtsByName;
+	}
+
+	private static void printDistrictNamesTo(BufferedWriter output, List<District> districts) {
 		districts.stream().forEach(district -> {
 			try {
 				output.write(SEPARATOR + district.getName());
@@ -198,13 +378,13 @@ public class City {
 	}
 
 	private void printWorkerMatrix(File outputDirectory) {
+		List<District> districtsByName = districtsByName();
 		try (BufferedWriter output = new BufferedWriter(new FileWriter(new File(outputDirectory, WORKER_CSV)))) {
-			districts.sort((district1, district2) -> district1.getName().compareTo(district2.getName()));
-			printDistrictNamesTo(output);
+			printDistrictNamesTo(output, districtsByName);
 			output.write(SEPARATOR + "Gesamt");
 			output.newLine();
-			for (District from : districts) {
-				from.printWorkerTo(output, districts);
+			for (District from : districtsByName) {
+				from.printWorkerTo(output, districtsByName);
 			}
 		} catch (IOException e) {
 			e.printStackTrace();
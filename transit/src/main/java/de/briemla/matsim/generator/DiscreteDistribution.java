@@ -0,0 +1,59 @@
+package de.briemla.matsim.generator;
+
+import java.util.SplittableRandom;
+
+/**
+ * Samples indices according to a fixed set of weights. The source of
+ * randomness is passed on each call, so one instance can be shared between
+ * threads while every thread draws a reproducible sequence from its own
+ * {@link SplittableRandom}.
+ *
+ * @author lars
+ *
+ */
+class DiscreteDistribution {
+
+	private final double[] cumulativeWeights;
+
+	DiscreteDistribution(double[] weights) {
+		cumulativeWeights = new double[weights.length];
+		double sum = 0.0;
+		for (int index = 0; index < weights.length; index++) {
+			if (weights[index] < 0.0) {
+				throw new IllegalArgumentException("Negative weight at index " + index + ": " + weights[index]);
+			}
+			sum += weights[index];
+			cumulativeWeights[index] = sum;
+		}
+		if (sum <= 0.0) {
+			throw new IllegalArgumentException("At least one weight must be positive");
+		}
+	}
+
+	/**
+	 * Draw an index. The probability of each index is proportional to its
+	 * weight.
+	 *
+	 * @param random
+	 *            source of randomness
+	 * @return sampled index
+	 */
+	int sample(SplittableRandom random) {
+		double value = random.nextDouble() * cumulativeWeights[cumulativeWeights.length - 1];
+		int low = 0;
+		int high = cumulativeWeights.length - 1;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (cumulativeWeights[middle] > value) {
+				high = middle;
+			} else {
+				low = middle + 1;
+			}
+		}
+		return low;
+	}
+
+	int size() {
+		return cumulativeWeights.length;
+	}
+}
@@ -1,91 +1,110 @@
 package de.briemla.matsim.generator;
 
-import java.awt.geom.Path2D;
-import java.awt.geom.Path2D.Double;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.io.BufferedWriter;
 import java.io.IOException;
-import java.time.Duration;
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Random;
-import java.util.stream.IntStream;
+import java.util.SplittableRandom;
 import java.util.stream.Stream;
 
-import org.apache.commons.math3.distribution.EnumeratedIntegerDistribution;
 import org.matsim.api.core.v01.Coord;
-import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
 import org.matsim.api.core.v01.network.Node;
-import org.matsim.api.core.v01.population.Activity;
-import org.matsim.api.core.v01.population.Person;
-import org.matsim.api.core.v01.population.Plan;
-import org.matsim.api.core.v01.population.Population;
-import org.matsim.api.core.v01.population.PopulationFactory;
 
 public class District {
 
 	private static final String SEPARATOR = ";";
 
-	private final class DistanceComparator implements Comparator<District> {
-		private final District homeDistrict;
-
-		public DistanceComparator(District district) {
-			homeDistrict = district;
-		}
-
-		@Override
-		public int compare(District district1, District district2) {
-			Point2D homeCenter = homeDistrict.getCenter();
-			Point2D district1Center = district1.getCenter();
-			Point2D district2Center = district2.getCenter();
-			java.lang.Double distanceToDistrict1 = homeCenter.distance(district1Center);
-			java.lang.Double distanceToDistrict2 = homeCenter.distance(district2Center);
-			return distanceToDistrict1.compareTo(distanceToDistrict2);
-		}
-	}
-
 	private static final int MINUTES_OF_PAUSE = 30;
 	private static final int HOURS_OF_WORK = 8;
 	private static final int MINUTES_TO_WORK = 30;
 	private static final int MINUTES_IN_HOUR = 60;
-	private static final int[] HOME_LEAVE_HOURS = IntStream.range(0, 24).toArray();
+	private static final int SECONDS_PER_MINUTE = 60;
 	private static final double[] HOME_LEAVE_TIME_PROBABILITIES = new double[] { 0.0, 0.005, 0.005, 0.005, 0.015,
 		0.075, 0.235, 0.305, 0.12, 0.04, 0.03, 0.01, 0.03, 0.05, 0.02, 0.01, 0.005, 0.01, 0.005, 0.005, 0.01,
 		0.005, 0.0, 0.005 };
 
-	private static final int[] HOME_WORK_DISTANCES = IntStream.range(0, 27).toArray();
 	private static final double[] HOME_WORK_DISTANCE_SCORE = new double[] { 5, 23, 35, 38, 43, 45.5, 45, 42.5, 38,
 		34.5, 26.5, 21.5, 19, 16, 13, 10, 7.5, 5.5, 4, 3, 2, 1.5, 1, 0.5, 0.35, 0.2, 0.1 };
-
-	private final Double border;
+	/**
+	 * {@link #HOME_WORK_DISTANCE_SCORE} scaled to integers to sample them
+	 * without rounding errors
+	 */
+	private static final int SCORE_SCALE = 100;
+	private static final DiscreteDistribution HOME_LEAVE_TIME_DISTRIBUTION = new DiscreteDistribution(
+			HOME_LEAVE_TIME_PROBABILITIES);
+	private static final int INITIAL_BORDER_CAPACITY = 16;
+
+	private double[] borderX;
+	private double[] borderY;
+	private int borderSize;
+	private double minX = java.lang.Double.POSITIVE_INFINITY;
+	private double minY = java.lang.Double.POSITIVE_INFINITY;
+	private double maxX = java.lang.Double.NEGATIVE_INFINITY;
+	private double maxY = java.lang.Double.NEGATIVE_INFINITY;
 	private final List<Node> nodes;
+	private int firstNodeIndex = 0;
+	private AliasTable nodeSampler;
 	private final String name;
 	private final Census census;
 	private int workingInhabitants = 0;
 	private int workers = 0;
-	private final EnumeratedIntegerDistribution homeLeaveTimeDistribution;
-	private final EnumeratedIntegerDistribution homeWorkDistanceScores;
-	private final Map<District, Integer> districtToWorker;
-	private final DistanceComparator distanceComparator;
+	private final List<District> workDistricts;
+	private List<District> cityDistricts;
+	private int[] districtsByDistance;
+	private int[] workersByDistance;
+	private FenwickTree workDistanceClasses;
+	private int nearestFreeDistanceClass;
+	private final Map<District, Integer> reachableFrom;
+	private DistrictListener listener;
 
 	public District(String name, Census census) {
 		this.name = name;
 		this.census = census;
-		border = new Path2D.Double(Path2D.WIND_EVEN_ODD);
+		borderX = new double[INITIAL_BORDER_CAPACITY];
+		borderY = new double[INITIAL_BORDER_CAPACITY];
+		borderSize = 0;
 		nodes = new ArrayList<>();
-		homeLeaveTimeDistribution = new EnumeratedIntegerDistribution(HOME_LEAVE_HOURS, HOME_LEAVE_TIME_PROBABILITIES);
-		homeWorkDistanceScores = new EnumeratedIntegerDistribution(HOME_WORK_DISTANCES, HOME_WORK_DISTANCE_SCORE);
-		districtToWorker = new HashMap<>();
-		distanceComparator = new DistanceComparator(this);
+		workDistricts = new ArrayList<>(census.getInhabitants());
+		cityDistricts = Collections.emptyList();
+		districtsByDistance = new int[0];
+		workersByDistance = new int[0];
+		workDistanceClasses = new FenwickTree(new long[0]);
+		reachableFrom = new LinkedHashMap<>();
+		listener = DistrictListener.NONE;
+	}
+
+	/**
+	 * Set the {@link DistrictListener} to notify when all inhabitants are
+	 * working or all workplaces are taken.
+	 *
+	 * @param listener
+	 */
+	void setListener(DistrictListener listener) {
+		this.listener = listener;
 	}
 
+	/**
+	 * @return center of the bounding box of the border
+	 */
 	public Point2D getCenter() {
-		Rectangle2D boundingBox = border.getBounds2D();
-		return new Point2D.Double(boundingBox.getCenterX(), boundingBox.getCenterY());
+		return new Point2D.Double(getCenterX(), getCenterY());
+	}
+
+	double getCenterX() {
+		return (minX + maxX) / 2.0;
+	}
+
+	double getCenterY() {
+		return (minY + maxY) / 2.0;
 	}
 
 	/**
@@ -96,7 +115,61 @@ public class District {
 	 * @return
 	 */
 	public Boolean isInside(Coord coordinate) {
-		return border.contains(pointFrom(coordinate));
+		return isInside(coordinate.getX(), coordinate.getY());
+	}
+
+	/**
+	 * Test if the given coordinates are inside this {@link District} by
+	 * counting the crossings of a ray in positive x direction with the border.
+	 * Each line counts for the half open y range from its lower to its upper
+	 * end and only if the point lies strictly left of it. This treats points on
+	 * the border exactly like {@link java.awt.geom.Path2D#contains(double, double)}
+	 * with {@link java.awt.geom.Path2D#WIND_EVEN_ODD}, which has been used
+	 * before.
+	 *
+	 * @param x
+	 * @param y
+	 * @return <code>true</code> if the point lies inside, <code>false</code>
+	 *         otherwise
+	 */
+	boolean isInside(double x, double y) {
+		if (borderSize < 2 || x < minX || x >= maxX || y < minY || y >= maxY) {
+			return false;
+		}
+		boolean inside = false;
+		double x0 = borderX[borderSize - 1];
+		double y0 = borderY[borderSize - 1];
+		for (int corner = 0; corner < borderSize; corner++) {
+			double x1 = borderX[corner];
+			double y1 = borderY[corner];
+			if ((y < y0 || y < y1) && (y >= y0 || y >= y1) && (x < x0 || x < x1)) {
+				if ((x < x0 && x < x1) || x < x0 + (y - y0) * (x1 - x0) / (y1 - y0)) {
+					inside = !inside;
+				}
+			}
+			x0 = x1;
+			y0 = y1;
+		}
+		return inside;
+	}
+
+	Rectangle2D getBounds() {
+		if (borderSize == 0) {
+			return new Rectangle2D.Double();
+		}
+		return new Rectangle2D.Double(minX, minY, maxX - minX, maxY - minY);
+	}
+
+	int borderSize() {
+		return borderSize;
+	}
+
+	double borderX(int corner) {
+		return borderX[corner];
+	}
+
+	double borderY(int corner) {
+		return borderY[corner];
 	}
 
 	/**
@@ -108,11 +181,29 @@ public class District {
 		if (coord == null) {
 			return;
 		}
-		if (border.getCurrentPoint() == null) {
-			border.moveTo(coord.getX(), coord.getY());
-			return;
+		add(coord.getX(), coord.getY());
+	}
+
+	/**
+	 * Add a corner of the border to this district. The bounding box is updated
+	 * on the fly, so neither the center nor the containment test need to
+	 * visit the border again.
+	 *
+	 * @param x
+	 * @param y
+	 */
+	void add(double x, double y) {
+		if (borderSize == borderX.length) {
+			borderX = Arrays.copyOf(borderX, borderSize * 2);
+			borderY = Arrays.copyOf(borderY, borderSize * 2);
 		}
-		border.lineTo(coord.getX(), coord.getY());
+		borderX[borderSize] = x;
+		borderY[borderSize] = y;
+		borderSize++;
+		minX = Math.min(minX, x);
+		minY = Math.min(minY, y);
+		maxX = Math.max(maxX, x);
+		maxY = Math.max(maxY, y);
 	}
 
 	/**
@@ -132,15 +223,13 @@ public class District {
 	}
 
 	/**
-	 * Convert matsim {@link Coord} to {@link Point2D}
+	 * Add this {@link Node} to the district without checking the border.
 	 *
-	 * @param coordinate
-	 *            coordinate of matsim {@link Node}
-	 * @return {@link Point2D} representing the coordinates of a matsim
-	 *         {@link Node}
+	 * @param node
+	 *            {@link Node} known to lie inside this district
 	 */
-	private static Point2D pointFrom(Coord coordinate) {
-		return new Point2D.Double(coordinate.getX(), coordinate.getY());
+	void assign(Node node) {
+		nodes.add(node);
 	}
 
 	@Override
@@ -156,6 +245,76 @@ public class District {
 		return nodes.stream();
 	}
 
+	/**
+	 * Rank the {@link District}s of the city from nearest to farthest. The
+	 * position in this order is the distance class used to select the work
+	 * {@link District}. Only distance classes with a free workplace can be
+	 * selected. The ranking stores indices into the given list and only covers
+	 * the distance profile, so memory grows linearly with the number of
+	 * {@link District}s. Each {@link District} inside the distance profile
+	 * remembers its distance class, so it can remove itself as soon as its last
+	 * workplace is taken.
+	 *
+	 * @param districts
+	 *            all {@link District}s of the city, which must not change
+	 *            afterwards. Equal distances are ordered like this list.
+	 */
+	void rankDistricts(List<District> districts) {
+		for (int rank : districtsByDistance) {
+			cityDistricts.get(rank).reachableFrom.remove(this);
+		}
+		cityDistricts = districts;
+		districtsByDistance = DistrictRanking.nearest(distancesTo(districts), HOME_WORK_DISTANCE_SCORE.length);
+		workersByDistance = new int[districtsByDistance.length];
+		long[] weights = new long[districtsByDistance.length];
+		for (int distanceClass = 0; distanceClass < weights.length; distanceClass++) {
+			District district = districtByDistance(distanceClass);
+			district.reachableFrom.put(this, distanceClass);
+			if (district.hasFreeWorkplace()) {
+				weights[distanceClass] = Math.round(HOME_WORK_DISTANCE_SCORE[distanceClass] * SCORE_SCALE);
+			}
+		}
+		workDistanceClasses = new FenwickTree(weights);
+		nearestFreeDistanceClass = 0;
+	}
+
+	/**
+	 * Extend the ranking to all {@link District}s of the city. This is only
+	 * needed once every {@link District} inside the distance profile is full.
+	 * The first distance classes stay the same, because equal distances are
+	 * always ordered by their index.
+	 */
+	private void rankAllDistricts() {
+		districtsByDistance = DistrictRanking.nearest(distancesTo(cityDistricts), cityDistricts.size());
+		workersByDistance = Arrays.copyOf(workersByDistance, districtsByDistance.length);
+	}
+
+	private double[] distancesTo(List<District> districts) {
+		double centerX = getCenterX();
+		double centerY = getCenterY();
+		double[] distances = new double[districts.size()];
+		for (int index = 0; index < distances.length; index++) {
+			District other = districts.get(index);
+			distances[index] = Math.hypot(other.getCenterX() - centerX, other.getCenterY() - centerY);
+		}
+		return distances;
+	}
+
+	private District districtByDistance(int distanceClass) {
+		return cityDistricts.get(districtsByDistance[distanceClass]);
+	}
+
+	/**
+	 * @return ranked {@link District}s ordered from nearest to farthest
+	 */
+	List<District> getDistrictsByDistance() {
+		List<District> districts = new ArrayList<>(districtsByDistance.length);
+		for (int distanceClass = 0; distanceClass < districtsByDistance.length; distanceClass++) {
+			districts.add(districtByDistance(distanceClass));
+		}
+		return districts;
+	}
+
 	public int getInhabitants() {
 		return census.getInhabitants();
 	}
@@ -168,156 +327,209 @@ public class District {
 		return workers < census.getWorkplaces();
 	}
 
-	public void createPerson(Population population, List<District> districts) {
+	/**
+	 * Assign a workplace to the next inhabitant of this {@link District}. The
+	 * workplace is reserved immediately, so the assignment must happen in a
+	 * single thread. The plans are created later on by
+	 * {@link #createPlans(PlanTable, int, SplittableRandom)}.
+	 *
+	 * @param random
+	 *            source of randomness for the work location
+	 */
+	public void assignWorkplace(SplittableRandom random) {
 		if (!hasNonWorkingInhabitants()) {
 			return;
 		}
-		District workDistrict = findWorkDistrict(districts);
-		createPerson(this, workDistrict, population);
+		int distanceClass = findWorkDistanceClass(random);
+		District workDistrict = districtByDistance(distanceClass);
+		workersByDistance[distanceClass]++;
+		workDistrict.increaseNumberOfWorkers();
+		workDistricts.add(workDistrict);
+		workingInhabitants++;
+		if (!hasNonWorkingInhabitants()) {
+			listener.allInhabitantsWorking(this);
+		}
 	}
 
 	/**
-	 * Randomly select one {@link District}. All {@link District}s must have at
-	 * least one workplace left. Otherwise {@link IllegalArgumentException} will
-	 * be thrown
+	 * Write the plan of each inhabitant which has already been assigned to a
+	 * workplace into the {@link PlanTable}. This method only reads the state
+	 * of other {@link District}s, so {@link District}s can create their plans
+	 * in parallel as long as each uses its own {@link SplittableRandom}.
 	 *
-	 * @param districts
-	 *            {@link List} containing {@link District}s with workplaces
-	 * @return selected {@link District}
-	 * @throws IllegalArgumentException
-	 *             when selected district does not have a workplace left.
+	 * @param table
+	 *            {@link PlanTable} to write the plans to
+	 * @param firstRow
+	 *            row of the first inhabitant of this {@link District}
+	 * @param random
+	 *            source of randomness for this {@link District}
 	 */
-	private District findWorkDistrict(List<District> districts) {
-		districts.sort(distanceComparator);
-		int districtIndex = homeWorkDistanceScores.sample();
-		District district = districts.get(districtIndex);
-		while (!district.hasFreeWorkplace()) {
-			districtIndex = homeWorkDistanceScores.sample();
-			district = districts.get(districtIndex);
+	void createPlans(PlanTable table, int firstRow, SplittableRandom random) {
+		for (int inhabitant = 0; inhabitant < workDistricts.size(); inhabitant++) {
+			createPlan(table, firstRow + inhabitant, workDistricts.get(inhabitant), random);
 		}
-		return district;
 	}
 
-	private void registerNewWorkerIn(District district) {
-		if (!districtToWorker.containsKey(district)) {
-			districtToWorker.put(district, new Integer(0));
+	/**
+	 * Randomly select one {@link District} with a free workplace. The
+	 * probability of a {@link District} depends on its distance class, which
+	 * is a direct lookup into the ranking set by {@link #rankDistricts(List)}.
+	 * Full {@link District}s are not part of the distribution anymore, so no
+	 * retries are necessary. If every {@link District} inside the distance
+	 * profile is full, the ranking is extended to the whole city and the
+	 * nearest {@link District} with a free workplace is selected. Full
+	 * {@link District}s never get a free workplace again, so the search
+	 * continues where the previous one stopped and visits each
+	 * {@link District} at most once per home {@link District}.
+	 *
+	 * @param random
+	 *            source of randomness
+	 * @return distance class of the selected {@link District}
+	 * @throws IllegalStateException
+	 *             when no {@link District} has a free workplace left.
+	 */
+	private int findWorkDistanceClass(SplittableRandom random) {
+		if (workDistanceClasses.total() > 0) {
+			return workDistanceClasses.sample(random);
 		}
-		Integer workers = districtToWorker.get(district);
-		workers++;
-		districtToWorker.put(district, workers);
+		if (districtsByDistance.length < cityDistricts.size()) {
+			rankAllDistricts();
+		}
+		while (nearestFreeDistanceClass < districtsByDistance.length) {
+			if (districtByDistance(nearestFreeDistanceClass).hasFreeWorkplace()) {
+				return nearestFreeDistanceClass;
+			}
+			nearestFreeDistanceClass++;
+		}
+		throw new IllegalStateException("No free workplace left for inhabitants of " + name);
 	}
 
 	/**
-	 * Create a new {@link Person} if there has no {@link Person} been created
-	 * for the current {@link Node}
+	 * Create a plan for an inhabitant of this {@link District}. The plan
+	 * starts at home, goes to work and returns home. If work ends after
+	 * midnight, the plan starts and ends at work instead. Each activity takes
+	 * place at a random {@link Node} of its {@link District}.
 	 *
-	 * @param homeDistrict
-	 *            {@link District} where each person works
+	 * @param table
+	 *            {@link PlanTable} to write the plan to
+	 * @param row
+	 *            row of the inhabitant
 	 * @param workDistrict
-	 * @param population
+	 *            {@link District} where the inhabitant works
+	 * @param random
+	 *            source of randomness
 	 */
-	private void createPerson(District homeDistrict, District workDistrict, Population population) {
-		PopulationFactory factory = population.getFactory();
-		Person person = factory.createPerson(nextPersonId());
-		population.addPerson(person);
-		registerNewWorkerIn(workDistrict);
+	private void createPlan(PlanTable table, int row, District workDistrict, SplittableRandom random) {
+		int homeLeaveTime = homeLeaveTime(random);
+		int workLeaveTime = workLeaveTime(homeLeaveTime, random);
+		if (workLeaveTime >= PlanTable.SECONDS_PER_DAY) {
+			int workNode = workDistrict.randomNode(random);
+			int homeNode = randomNode(random);
+			int lastNode = workDistrict.randomNode(random);
+			table.set(row, homeNode, workNode, lastNode, homeLeaveTime, workLeaveTime, PlanTable.CAR);
+			return;
+		}
+		int homeNode = randomNode(random);
+		int workNode = workDistrict.randomNode(random);
+		int lastNode = randomNode(random);
+		table.set(row, homeNode, workNode, lastNode, homeLeaveTime, workLeaveTime, PlanTable.CAR);
+	}
 
-		Plan plan = createPlanFrom(homeDistrict, workDistrict, factory);
-		person.addPlan(plan);
+	private void increaseNumberOfWorkers() {
+		workers++;
+		if (!hasFreeWorkplace()) {
+			reachableFrom.forEach((home, distanceClass) -> home.workDistanceClasses.set(distanceClass, 0));
+			listener.allWorkplacesTaken(this);
+		}
 	}
 
 	/**
-	 * Convert {@link Node} id to {@link Person} id.
-	 *
-	 * @return new id for a {@link Person}
+	 * @return index of a random {@link Node} of this {@link District} in the
+	 *         node index of the {@link City}
 	 */
-	private Id<Person> nextPersonId() {
-		return Id.createPersonId(name + workingInhabitants++);
+	private int randomNode(SplittableRandom random) {
+		return firstNodeIndex + nodeSampler.sample(random);
 	}
 
 	/**
-	 * Create a plan for the person. Start at node coordinates and travel to
-	 * center of map. Assuming that node coordinates are already in correct
-	 * coordinate system
+	 * Set the index of the first {@link Node} of this {@link District} in the
+	 * node index of the {@link City} and build the sampler of activity
+	 * locations. The other {@link Node}s follow in the order of
+	 * {@link #getNodes()}. A {@link Node} is drawn with a probability
+	 * proportional to the capacity of its attached {@link Link}s, so busy
+	 * roads get more activities than side streets. Without any capacity all
+	 * {@link Node}s are equally likely.
 	 *
-	 * @param workDistrict
-	 * @param workDistrict
-	 * @param populationFactory
-	 *
-	 * @return new plan which starts at node, travels to center of map and
-	 *         travels back to node.
+	 * @param firstNodeIndex
+	 * @throws IllegalStateException
+	 *             when the {@link District} has inhabitants or workplaces,
+	 *             but no {@link Node}s to place them at
 	 */
-	private Plan createPlanFrom(District homeDistrict, District workDistrict, PopulationFactory populationFactory) {
-		Plan plan = populationFactory.createPlan();
-		Duration homeLeaveTime = homeLeaveTime();
-		Duration workLeaveTime = workLeaveTime(homeLeaveTime);
-
-		if (workLeaveTime.toDays() > 0) {
-			Duration dailyWorkLeaveTime = workLeaveTime.minusDays(1);
-			Activity workActivity = populationFactory.createActivityFromCoord("work", coordinate(workDistrict));
-			workActivity.setEndTime(dailyWorkLeaveTime.getSeconds());
-			workDistrict.increaseNumberOfWorkers();
-			plan.addActivity(workActivity);
-			plan.addLeg(populationFactory.createLeg("car"));
-
-			Activity homeMorning = populationFactory.createActivityFromCoord("home", coordinate(homeDistrict));
-			homeMorning.setEndTime(homeLeaveTime.getSeconds());
-			plan.addActivity(homeMorning);
-			plan.addLeg(populationFactory.createLeg("car"));
-
-			Activity homeEvening = populationFactory.createActivityFromCoord("work", coordinate(workDistrict));
-			plan.addActivity(homeEvening);
-			return plan;
+	void prepareSampling(int firstNodeIndex) {
+		this.firstNodeIndex = firstNodeIndex;
+		if (nodes.isEmpty()) {
+			nodeSampler = null;
+			if (census.getInhabitants() > 0 || census.getWorkplaces() > 0) {
+				throw new IllegalStateException("District " + name + " has " + census.getInhabitants()
+						+ " inhabitants and " + census.getWorkplaces() + " workplaces, but no nodes");
+			}
+			return;
 		}
+		nodeSampler = new AliasTable(nodeWeights());
+	}
 
-		Activity homeMorning = populationFactory.createActivityFromCoord("home", coordinate(homeDistrict));
-		homeMorning.setEndTime(homeLeaveTime.getSeconds());
-		plan.addActivity(homeMorning);
-		plan.addLeg(populationFactory.createLeg("car"));
-
-		Activity workActivity = populationFactory.createActivityFromCoord("work", coordinate(workDistrict));
-		workActivity.setEndTime(workLeaveTime.getSeconds());
-		workDistrict.increaseNumberOfWorkers();
-		plan.addActivity(workActivity);
-		plan.addLeg(populationFactory.createLeg("car"));
-
-		Activity homeEvening = populationFactory.createActivityFromCoord("home", coordinate(homeDistrict));
-		plan.addActivity(homeEvening);
-		return plan;
+	private double[] nodeWeights() {
+		double[] weights = new double[nodes.size()];
+		double sum = 0.0;
+		for (int node = 0; node < weights.length; node++) {
+			weights[node] = capacity(nodes.get(node).getInLinks().values())
+					+ capacity(nodes.get(node).getOutLinks().values());
+			sum += weights[node];
+		}
+		if (sum > 0.0) {
+			return weights;
+		}
+		Arrays.fill(weights, 1.0);
+		return weights;
 	}
 
-	private void increaseNumberOfWorkers() {
-		workers++;
+	private static double capacity(Collection<? extends Link> links) {
+		double capacity = 0.0;
+		for (Link link : links) {
+			capacity += link.getCapacity();
+		}
+		return capacity;
 	}
 
-	private static Coord coordinate(District workDistrict) {
-		List<Node> nodes = workDistrict.getNodes();
-		int nodeIndex = (int) (Math.random() * nodes.size());
-		return nodes.get(nodeIndex).getCoord();
+	/**
+	 * @return number of inhabitants which have been assigned to a workplace
+	 */
+	int getWorkingInhabitants() {
+		return workingInhabitants;
 	}
 
-	private Duration workLeaveTime(Duration homeLeaveTime) {
-		return randomizeInNextHour(homeLeaveTime.plusMinutes(MINUTES_TO_WORK).plusHours(HOURS_OF_WORK)
-				.plusMinutes(MINUTES_OF_PAUSE));
+	private static int workLeaveTime(int homeLeaveTime, SplittableRandom random) {
+		return randomizeInNextHour(homeLeaveTime + (MINUTES_TO_WORK + HOURS_OF_WORK * MINUTES_IN_HOUR
+				+ MINUTES_OF_PAUSE) * SECONDS_PER_MINUTE, random);
 	}
 
-	private Duration homeLeaveTime() {
-		int leaveHour = homeLeaveTimeDistribution.sample();
-		return randomizeInNextHour(Duration.ofHours(leaveHour));
+	private static int homeLeaveTime(SplittableRandom random) {
+		int leaveHour = HOME_LEAVE_TIME_DISTRIBUTION.sample(random);
+		return randomizeInNextHour(leaveHour * MINUTES_IN_HOUR * SECONDS_PER_MINUTE, random);
 	}
 
 	/**
-	 * Return a new {@link Duration} within the next hour based on the given
-	 * {@link Duration}.
+	 * Return a new time within the next hour based on the given time.
 	 *
 	 * @param leaveTime
-	 *            start hour to add a random amount of time within an hour
-	 * @return new {@link Duration} which is within an hour after the given
-	 *         {@link Duration}
+	 *            start second to add a random amount of time within an hour
+	 * @param random
+	 *            source of randomness
+	 * @return new second which is within an hour after the given second
 	 */
-	private static Duration randomizeInNextHour(Duration leaveTime) {
-		int leaveMinute = new Random().nextInt(MINUTES_IN_HOUR);
-		return leaveTime.plusMinutes(leaveMinute);
+	private static int randomizeInNextHour(int leaveTime, SplittableRandom random) {
+		int leaveMinute = random.nextInt(MINUTES_IN_HOUR);
+		return leaveTime + leaveMinute * SECONDS_PER_MINUTE;
 	}
 
 	public String getName() {
@@ -325,13 +537,13 @@ public class District {
 	}
 
 	public void printWorkerTo(BufferedWriter output, List<District> districtOrder) throws IOException {
+		Map<District, Integer> districtToWorker = new HashMap<>();
+		for (int distanceClass = 0; distanceClass < workersByDistance.length; distanceClass++) {
+			districtToWorker.put(districtByDistance(distanceClass), workersByDistance[distanceClass]);
+		}
 		output.write(getName());
 		for (District to : districtOrder) {
-			if (!districtToWorker.containsKey(to)) {
-				output.write(SEPARATOR + "0");
-				continue;
-			}
-			output.write(SEPARATOR + districtToWorker.get(to));
+			output.write(SEPARATOR + districtToWorker.getOrDefault(to, 0));
 		}
 		output.write(SEPARATOR + getInhabitants());
 		output.newLine();
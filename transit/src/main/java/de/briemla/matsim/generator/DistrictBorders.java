@@ -0,0 +1,76 @@
+package de.briemla.matsim.generator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import de.briemla.matsim.generator.KmlDistrictReader.DistrictHandler;
+
+/**
+ * Borders of several {@link District}s stored in two shared coordinate
+ * arrays, so all of them can be projected with a single call of
+ * {@link BulkCoordinateTransformation#transform(double[], double[])}.
+ *
+ * @author lars
+ *
+ */
+class DistrictBorders implements DistrictHandler {
+
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private final List<String> names;
+	private int[] offsets;
+	private double[] x;
+	private double[] y;
+	private int size;
+
+	DistrictBorders() {
+		names = new ArrayList<>();
+		offsets = new int[] { 0 };
+		x = new double[INITIAL_CAPACITY];
+		y = new double[INITIAL_CAPACITY];
+		size = 0;
+	}
+
+	@Override
+	public void district(String name, double[] borderX, double[] borderY) {
+		if (size + borderX.length > x.length) {
+			int capacity = Math.max(2 * x.length, size + borderX.length);
+			x = Arrays.copyOf(x, capacity);
+			y = Arrays.copyOf(y, capacity);
+		}
+		System.arraycopy(borderX, 0, x, size, borderX.length);
+		System.arraycopy(borderY, 0, y, size, borderY.length);
+		size += borderX.length;
+		names.add(name);
+		offsets = Arrays.copyOf(offsets, names.size() + 1);
+		offsets[names.size()] = size;
+	}
+
+	/**
+	 * Transform the borders of all {@link District}s in place.
+	 *
+	 * @param transformation
+	 *            transformation into the coordinate system of the
+	 *            {@link City}
+	 */
+	void transform(BulkCoordinateTransformation transformation) {
+		x = Arrays.copyOf(x, size);
+		y = Arrays.copyOf(y, size);
+		transformation.transform(x, y);
+	}
+
+	/**
+	 * Pass all borders to the handler in the order they were added.
+	 *
+	 * @param handler
+	 *            receives name and border of each {@link District}
+	 */
+	void forEach(DistrictHandler handler) {
+		for (int district = 0; district < names.size(); district++) {
+			int from = offsets[district];
+			int to = offsets[district + 1];
+			handler.district(names.get(district), Arrays.copyOfRange(x, from, to), Arrays.copyOfRange(y, from, to));
+		}
+	}
+}
@@ -0,0 +1,216 @@
+package de.briemla.matsim.generator;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Binary cache of the projected borders of all {@link District}s read from a
+ * kml file. The cache is stored next to the kml file and is only used if
+ * checksum and size of the kml file and the coordinate system of the
+ * borders match the ones it was written for. Otherwise the kml file has to
+ * be read and projected again.
+ * <p>
+ * Layout of the file, all numbers in big endian:
+ *
+ * <pre>
+ * int    magic number
+ * int    version
+ * long   crc32 of the kml file
+ * long   size of the kml file
+ * int    length of the coordinate system name, followed by its UTF-8 bytes
+ * int    number of districts
+ * per district:
+ *   int      length of the name, followed by its UTF-8 bytes
+ *   int      number of corners
+ *   double[] x coordinates of the corners
+ *   double[] y coordinates of the corners
+ * </pre>
+ *
+ * @author lars
+ *
+ */
+class DistrictCache {
+
+	private static final int MAGIC = 0x44495354;
+	private static final int VERSION = 1;
+	private static final String SUFFIX = ".districts";
+
+	private final File kml;
+	private final File cache;
+	private final String coordinateSystem;
+
+	/**
+	 * @param kml
+	 *            kml file containing the {@link District}s
+	 * @param coordinateSystem
+	 *            name of the coordinate system the borders are projected to
+	 */
+	DistrictCache(File kml, String coordinateSystem) {
+		this.kml = kml;
+		this.cache = new File(kml.getPath() + SUFFIX);
+		this.coordinateSystem = coordinateSystem;
+	}
+
+	/**
+	 * Add all cached {@link District}s to the {@link City}. Nothing is added
+	 * if the cache is missing, outdated or broken.
+	 *
+	 * @param city
+	 *            {@link City} to add the {@link District}s to
+	 * @return <code>true</code> if the {@link District}s were added from the
+	 *         cache, <code>false</code> if the kml file has to be read
+	 */
+	boolean loadInto(City city) {
+		List<CachedDistrict> districts = read();
+		if (districts == null) {
+			return false;
+		}
+		districts.forEach(district -> city.addProjectedDistrict(district.name, district.x, district.y));
+		return true;
+	}
+
+	private List<CachedDistrict> read() {
+		if (!cache.isFile()) {
+			return null;
+		}
+		try (FileChannel channel = FileChannel.open(cache.toPath(), StandardOpenOption.READ)) {
+			ByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+			if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION || buffer.getLong() != checksum()
+					|| buffer.getLong() != kml.length() || !coordinateSystem.equals(readString(buffer))) {
+				return null;
+			}
+			return readDistricts(buffer);
+		} catch (IOException | RuntimeException e) {
+			System.out.println("Ignoring unreadable district cache " + cache + ": " + e);
+			return null;
+		}
+	}
+
+	/**
+	 * Read all {@link District}s before any of them is added to the
+	 * {@link City}, so a truncated file does not leave a partial
+	 * {@link City} behind. Every count is checked against the remaining
+	 * bytes before anything is allocated, so a corrupt count cannot exhaust
+	 * the memory.
+	 */
+	private static List<CachedDistrict> readDistricts(ByteBuffer buffer) {
+		int size = readCount(buffer, 2 * Integer.BYTES);
+		List<CachedDistrict> districts = new ArrayList<>(size);
+		for (int district = 0; district < size; district++) {
+			String name = readString(buffer);
+			int corners = readCount(buffer, 2 * Double.BYTES);
+			double[] x = new double[corners];
+			double[] y = new double[corners];
+			DoubleBuffer coordinates = buffer.asDoubleBuffer();
+			coordinates.get(x);
+			coordinates.get(y);
+			buffer.position(buffer.position() + 2 * corners * Double.BYTES);
+			districts.add(new CachedDistrict(name, x, y));
+		}
+		return districts;
+	}
+
+	private static String readString(ByteBuffer buffer) {
+		byte[] bytes = new byte[readCount(buffer, 1)];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Read the number of the following elements.
+	 *
+	 * @param buffer
+	 *            buffer positioned at the count
+	 * @param bytesPerElement
+	 *            minimum number of bytes of each element
+	 * @return number of elements
+	 * @throws IllegalArgumentException
+	 *             when the count is negative or the remaining bytes cannot
+	 *             hold that many elements
+	 */
+	private static int readCount(ByteBuffer buffer, int bytesPerElement) {
+		int count = buffer.getInt();
+		if (count < 0 || count > buffer.remaining() / bytesPerElement) {
+			throw new IllegalArgumentException(
+					"Count " + count + " exceeds the remaining " + buffer.remaining() + " bytes");
+		}
+		return count;
+	}
+
+	/**
+	 * Store the borders of the {@link District}s for the next run. A failure
+	 * to write the cache is reported, but does not stop the caller, because
+	 * the {@link District}s are already available.
+	 *
+	 * @param districts
+	 *            {@link District}s read from the kml file
+	 */
+	void write(List<District> districts) {
+		File temporary = new File(cache.getPath() + ".tmp");
+		try {
+			try (DataOutputStream output = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(temporary)))) {
+				output.writeInt(MAGIC);
+				output.writeInt(VERSION);
+				output.writeLong(checksum());
+				output.writeLong(kml.length());
+				writeString(output, coordinateSystem);
+				output.writeInt(districts.size());
+				for (District district : districts) {
+					writeString(output, district.getName());
+					output.writeInt(district.borderSize());
+					for (int corner = 0; corner < district.borderSize(); corner++) {
+						output.writeDouble(district.borderX(corner));
+					}
+					for (int corner = 0; corner < district.borderSize(); corner++) {
+						output.writeDouble(district.borderY(corner));
+					}
+				}
+			}
+			Files.move(temporary.toPath(), cache.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private static void writeString(DataOutputStream output, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		output.writeInt(bytes.length);
+		output.write(bytes);
+	}
+
+	private long checksum() throws IOException {
+		try (FileChannel channel = FileChannel.open(kml.toPath(), StandardOpenOption.READ)) {
+			CRC32 crc = new CRC32();
+			crc.update(channel.map(MapMode.READ_ONLY, 0, channel.size()));
+			return crc.getValue();
+		}
+	}
+
+	private static class CachedDistrict {
+
+		private final String name;
+		private final double[] x;
+		private final double[] y;
+
+		CachedDistrict(String name, double[] x, double[] y) {
+			this.name = name;
+			this.x = x;
+			this.y = y;
+		}
+	}
+}
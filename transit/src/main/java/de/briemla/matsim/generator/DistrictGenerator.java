@@ -1,23 +1,13 @@
 package de.briemla.matsim.generator;
 
 import java.io.File;
-import java.util.List;
-import java.util.Map;
-import java.util.stream.Collectors;
 
-import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.network.Network;
 import org.matsim.api.core.v01.network.Node;
 import org.matsim.api.core.v01.population.Person;
 import org.matsim.api.core.v01.population.Population;
-import org.matsim.core.utils.geometry.CoordinateTransformation;
 import org.matsim.core.utils.geometry.transformations.TransformationFactory;
 
-import de.micromata.opengis.kml.v_2_2_0.Document;
-import de.micromata.opengis.kml.v_2_2_0.Folder;
-import de.micromata.opengis.kml.v_2_2_0.Kml;
-import de.micromata.opengis.kml.v_2_2_0.Placemark;
-
 /**
  * Create a {@link Population} where a {@link Person} is added at each
  * {@link Node}. The plan for each person contains the home {@link Node} as
@@ -27,22 +17,38 @@ import de.micromata.opengis.kml.v_2_2_0.Placemark;
  *
  */
 public class DistrictGenerator {
-	private static final String KML_FILE = "./input/doc.kml";
+	/**
+	 * Placemark of the outer border of the whole county, which is no district
+	 * on its own.
+	 */
+	private static final String COUNTY_BORDER = "Landkreisgrenze";
 
 	/*
 	 * We enter coordinates in the WGS84 reference system, but we want them to
 	 * appear in the population file projected to UTM33N, because we also
 	 * generated the network that way.
 	 */
-	private static final CoordinateTransformation COORDINATE_TRANSFORMATION = TransformationFactory
-			.getCoordinateTransformation(TransformationFactory.WGS84, TransformationFactory.WGS84_UTM33N);
+	private static final BulkCoordinateTransformation COORDINATE_TRANSFORMATION = BulkCoordinateTransformation
+			.between(TransformationFactory.WGS84, TransformationFactory.WGS84_UTM33N);
+	private static final String PROJECTION = TransformationFactory.WGS84 + " -> " + TransformationFactory.WGS84_UTM33N;
 
 	private final Network network;
 	private final Statistic statistic;
+	private final File kml;
 
-	public DistrictGenerator(Network network, Statistic statistic) {
+	/**
+	 * @param network
+	 *            {@link Network} whose {@link Node}s are grouped into
+	 *            {@link District}s
+	 * @param statistic
+	 *            provides information about inhabitants and work places
+	 * @param kml
+	 *            kml file containing the borders of the {@link District}s
+	 */
+	public DistrictGenerator(Network network, Statistic statistic, File kml) {
 		this.network = network;
 		this.statistic = statistic;
+		this.kml = kml;
 	}
 
 	/**
@@ -52,46 +58,38 @@ public class DistrictGenerator {
 	 *         {@link District}s
 	 */
 	public City createCity() {
-		Folder folder = getFolderFromKml();
-		List<Placemark> placemarks = folder.getFeature().stream().map((feature) -> (Placemark) feature)
-				.filter(placemark -> !"Landkreisgrenze".equals(placemark.getName())).collect(Collectors.toList());
-		return moveNodesIntoDistricts(network.getNodes(), placemarks);
-	}
-
-	private Folder getFolderFromKml() {
-		Kml kml = Kml.unmarshal(new File(KML_FILE));
-		if (kml.getFeature() instanceof Document) {
-			Document document = (Document) kml.getFeature();
-			if (document.getFeature().isEmpty()) {
-				throw new RuntimeException("Empty document!");
-			}
-			if (document.getFeature().get(0) instanceof Folder) {
-				return (Folder) document.getFeature().get(0);
-			}
-			throw new RuntimeException("No folder found inside kml: " + KML_FILE);
-		}
-		throw new RuntimeException("No document found inside kml: " + KML_FILE);
+		City karlsruhe = loadDistricts(statistic, kml);
+		karlsruhe.addNodes(network.getNodes());
+		return karlsruhe;
 	}
 
 	/**
-	 * Create a person at each {@link Node}
+	 * Create the {@link District}s from the {@link DistrictCache} of the kml
+	 * file, if it is up to date. Otherwise read and project the kml file and
+	 * update the cache. The {@link District}s do not contain any {@link Node}
+	 * s, which is enough to decide whether a {@link Node} lies inside the
+	 * {@link City}.
 	 *
-	 * @param nodes
-	 *            nodes to be grouped into districts
-	 * @param placemarks
-	 *            coordinates of districts
-	 * @return generated {@link City} where {@link Node}s are inside their
-	 *         {@link District}s
+	 * @param statistic
+	 *            provides information about inhabitants and work places
+	 * @param kml
+	 *            kml file containing the borders of the {@link District}s
+	 * @return {@link City} without {@link Node}s
 	 */
-	private City moveNodesIntoDistricts(Map<Id<Node>, ? extends Node> nodes, List<Placemark> placemarks) {
-		City karlsruhe = createDistrictsFrom(placemarks);
-		karlsruhe.addNodes(nodes);
-		return karlsruhe;
-	}
-
-	private City createDistrictsFrom(List<Placemark> placemarks) {
+	public static City loadDistricts(Statistic statistic, File kml) {
 		City karlsruhe = new City(statistic, COORDINATE_TRANSFORMATION);
-		karlsruhe.addDistricts(placemarks);
+		DistrictCache cache = new DistrictCache(kml, PROJECTION);
+		if (cache.loadInto(karlsruhe)) {
+			return karlsruhe;
+		}
+		DistrictBorders borders = new DistrictBorders();
+		new KmlDistrictReader(kml).read((name, longitudes, latitudes) -> {
+			if (!COUNTY_BORDER.equals(name)) {
+				borders.district(name, longitudes, latitudes);
+			}
+		});
+		karlsruhe.addDistricts(borders);
+		cache.write(karlsruhe.getDistricts());
 		return karlsruhe;
 	}
 
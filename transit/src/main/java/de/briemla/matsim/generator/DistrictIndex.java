@@ -0,0 +1,218 @@
+package de.briemla.matsim.generator;
+
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+import java.util.List;
+
+import org.matsim.api.core.v01.Coord;
+
+/**
+ * Uniform grid over the borders of all {@link District}s of a {@link City}.
+ * Each cell knows the {@link District}s whose border passes through the cell
+ * and the {@link District} covering the whole cell, if any. Points in a
+ * covered cell are assigned without any polygon test, points in other cells
+ * are only tested against the {@link District}s touching their cell.
+ * <p>
+ * The result is the same as testing all {@link District}s in order and
+ * taking the first one containing the point. A cell is marked as covered by
+ * a {@link District} if its own border does not touch the cell and the
+ * center of the cell lies inside. Without a crossing border every point of
+ * the cell has the same containment result for that {@link District}, so
+ * it contains the whole cell. For the same reason a {@link District} which
+ * neither touches nor covers a cell contains no point of it and can be left
+ * out. The entries of a cell are kept in the order of the
+ * {@link District}s, so the lookup visits the remaining candidates in the
+ * same order as the linear search and may stop at the first covering
+ * {@link District}. Points on a border always fall into a cell touched by
+ * that border and get the exact polygon test.
+ *
+ * @author lars
+ *
+ */
+class DistrictIndex {
+
+	private static final int CELLS_PER_BORDER_POINT = 4;
+
+	private final District[] districts;
+	private final double minX;
+	private final double minY;
+	private final double maxX;
+	private final double maxY;
+	private final double cellWidth;
+	private final double cellHeight;
+	private final int columns;
+	private final int rows;
+	/**
+	 * Per cell the indices of relevant {@link District}s in order. A negative
+	 * entry <code>~index</code> marks a {@link District} covering the whole
+	 * cell, a positive entry a {@link District} whose border touches the cell.
+	 */
+	private final int[][] cells;
+
+	DistrictIndex(List<District> districts) {
+		this.districts = districts.toArray(new District[districts.size()]);
+		Rectangle2D bounds = bounds(this.districts);
+		int borderPoints = Arrays.stream(this.districts).mapToInt(District::borderSize).sum();
+		double cellCount = Math.max(1, borderPoints * CELLS_PER_BORDER_POINT);
+		double cellSize = Math.sqrt(bounds.getWidth() * bounds.getHeight() / cellCount);
+		if (!(cellSize > 0.0)) {
+			cellSize = Math.max(Math.max(bounds.getWidth(), bounds.getHeight()), 1.0);
+		}
+		minX = bounds.getMinX();
+		minY = bounds.getMinY();
+		maxX = bounds.getMaxX();
+		maxY = bounds.getMaxY();
+		columns = Math.max(1, (int) Math.ceil(bounds.getWidth() / cellSize));
+		rows = Math.max(1, (int) Math.ceil(bounds.getHeight() / cellSize));
+		cellWidth = Math.max(bounds.getWidth() / columns, Double.MIN_NORMAL);
+		cellHeight = Math.max(bounds.getHeight() / rows, Double.MIN_NORMAL);
+		cells = new int[columns * rows][];
+		int[] borderMarks = new int[cells.length];
+		for (int index = 0; index < this.districts.length; index++) {
+			addToCells(index, borderMarks);
+		}
+	}
+
+	private static Rectangle2D bounds(District[] districts) {
+		Rectangle2D bounds = null;
+		for (District district : districts) {
+			if (district.borderSize() == 0) {
+				continue;
+			}
+			Rectangle2D districtBounds = district.getBounds();
+			if (bounds == null) {
+				bounds = districtBounds;
+			} else {
+				bounds = bounds.createUnion(districtBounds);
+			}
+		}
+		if (bounds == null) {
+			return new Rectangle2D.Double();
+		}
+		return bounds;
+	}
+
+	/**
+	 * Mark all cells touched by the border of the {@link District} and all
+	 * cells completely covered by the {@link District}.
+	 *
+	 * @param index
+	 *            index of the {@link District}
+	 * @param borderMarks
+	 *            per cell the last {@link District} index + 1 whose border
+	 *            touches the cell
+	 */
+	private void addToCells(int index, int[] borderMarks) {
+		District district = districts[index];
+		int corners = district.borderSize();
+		if (corners == 0) {
+			return;
+		}
+		int mark = index + 1;
+		for (int corner = 0, previous = corners - 1; corner < corners; previous = corner++) {
+			markBorder(district.borderX(previous), district.borderY(previous), district.borderX(corner),
+					district.borderY(corner), borderMarks, mark);
+		}
+		Rectangle2D bounds = district.getBounds();
+		int fromColumn = column(bounds.getMinX());
+		int toColumn = column(bounds.getMaxX());
+		int fromRow = row(bounds.getMinY());
+		int toRow = row(bounds.getMaxY());
+		for (int column = fromColumn; column <= toColumn; column++) {
+			for (int row = fromRow; row <= toRow; row++) {
+				int cell = cell(column, row);
+				if (borderMarks[cell] == mark) {
+					add(cell, index);
+					continue;
+				}
+				double centerX = minX + (column + 0.5) * cellWidth;
+				double centerY = minY + (row + 0.5) * cellHeight;
+				if (district.isInside(centerX, centerY)) {
+					add(cell, ~index);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Mark every cell overlapping the bounding box of the line as border cell.
+	 * This marks more cells than necessary for diagonal lines, but never
+	 * misses a cell containing a point of the line.
+	 */
+	private void markBorder(double fromX, double fromY, double toX, double toY, int[] borderMarks, int mark) {
+		int fromColumn = column(Math.min(fromX, toX));
+		int toColumn = column(Math.max(fromX, toX));
+		int fromRow = row(Math.min(fromY, toY));
+		int toRow = row(Math.max(fromY, toY));
+		for (int column = fromColumn; column <= toColumn; column++) {
+			for (int row = fromRow; row <= toRow; row++) {
+				borderMarks[cell(column, row)] = mark;
+			}
+		}
+	}
+
+	private void add(int cell, int entry) {
+		int[] entries = cells[cell];
+		if (entries == null) {
+			cells[cell] = new int[] { entry };
+			return;
+		}
+		int[] extended = Arrays.copyOf(entries, entries.length + 1);
+		extended[entries.length] = entry;
+		cells[cell] = extended;
+	}
+
+	private int column(double x) {
+		return clamp((int) Math.floor((x - minX) / cellWidth), columns);
+	}
+
+	private int row(double y) {
+		return clamp((int) Math.floor((y - minY) / cellHeight), rows);
+	}
+
+	private static int clamp(int value, int size) {
+		return Math.max(0, Math.min(size - 1, value));
+	}
+
+	private int cell(int column, int row) {
+		return row * columns + column;
+	}
+
+	/**
+	 * @return bounding box of all {@link District}s
+	 */
+	Rectangle2D getBounds() {
+		return new Rectangle2D.Double(minX, minY, maxX - minX, maxY - minY);
+	}
+
+	/**
+	 * Find the first {@link District} containing the given {@link Coord}.
+	 *
+	 * @param coordinate
+	 * @return first {@link District} containing the {@link Coord} or
+	 *         <code>null</code> if it lies outside all {@link District}s
+	 */
+	District find(Coord coordinate) {
+		return find(coordinate.getX(), coordinate.getY());
+	}
+
+	District find(double x, double y) {
+		if (!(x >= minX && x < maxX && y >= minY && y < maxY)) {
+			return null;
+		}
+		int[] entries = cells[cell(column(x), row(y))];
+		if (entries == null) {
+			return null;
+		}
+		for (int entry : entries) {
+			if (entry < 0) {
+				return districts[~entry];
+			}
+			District district = districts[entry];
+			if (district.isInside(x, y)) {
+				return district;
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,40 @@
+package de.briemla.matsim.generator;
+
+/**
+ * Gets notified when a {@link District} runs out of inhabitants without
+ * workplace or out of free workplaces.
+ *
+ * @author lars
+ *
+ */
+interface DistrictListener {
+
+	DistrictListener NONE = new DistrictListener() {
+
+		@Override
+		public void allInhabitantsWorking(District district) {
+		}
+
+		@Override
+		public void allWorkplacesTaken(District district) {
+		}
+	};
+
+	/**
+	 * Called once after the last inhabitant of the {@link District} got a
+	 * workplace.
+	 *
+	 * @param district
+	 *            {@link District} without non working inhabitants
+	 */
+	void allInhabitantsWorking(District district);
+
+	/**
+	 * Called once after the last free workplace of the {@link District} has
+	 * been taken.
+	 *
+	 * @param district
+	 *            {@link District} without free workplaces
+	 */
+	void allWorkplacesTaken(District district);
+}
@@ -0,0 +1,96 @@
+package de.briemla.matsim.generator;
+
+/**
+ * Selects the indices of the smallest distances without boxing them. Equal
+ * distances are ordered by their index, so a ranking is reproducible and a
+ * shorter ranking is always a prefix of a longer one.
+ *
+ * @author lars
+ *
+ */
+final class DistrictRanking {
+
+	private DistrictRanking() {
+	}
+
+	/**
+	 * Rank the indices of the given distances from nearest to farthest and keep
+	 * only the nearest ones. Takes O(n log count) with a bounded heap of the
+	 * nearest indices seen so far.
+	 *
+	 * @param distances
+	 *            distance of each index
+	 * @param count
+	 *            maximum number of indices to return
+	 * @return indices of the nearest distances, ordered by distance and index
+	 */
+	static int[] nearest(double[] distances, int count) {
+		int size = Math.max(0, Math.min(count, distances.length));
+		int[] heap = new int[size];
+		for (int index = 0; index < distances.length; index++) {
+			if (index < size) {
+				heap[index] = index;
+				siftUp(heap, index, distances);
+			} else if (size > 0 && isNearer(index, heap[0], distances)) {
+				heap[0] = index;
+				siftDown(heap, 0, size, distances);
+			}
+		}
+		for (int end = size - 1; end > 0; end--) {
+			swap(heap, 0, end);
+			siftDown(heap, 0, end, distances);
+		}
+		return heap;
+	}
+
+	private static boolean isNearer(int first, int second, double[] distances) {
+		int comparison = Double.compare(distances[first], distances[second]);
+		return comparison < 0 || (comparison == 0 && first < second);
+	}
+
+	/**
+	 * Restore the heap with the farthest index at the root after a new index
+	 * has been appended at the given position.
+	 */
+	private static void siftUp(int[] heap, int position, double[] distances) {
+		int child = position;
+		while (child > 0) {
+			int parent = (child - 1) / 2;
+			if (!isNearer(heap[parent], heap[child], distances)) {
+				return;
+			}
+			swap(heap, parent, child);
+			child = parent;
+		}
+	}
+
+	/**
+	 * Restore the heap with the farthest index at the root after the index at
+	 * the given position has been replaced by a nearer one.
+	 */
+	private static void siftDown(int[] heap, int position, int size, double[] distances) {
+		int parent = position;
+		while (true) {
+			int farthest = parent;
+			int left = 2 * parent + 1;
+			int right = left + 1;
+			if (left < size && isNearer(heap[farthest], heap[left], distances)) {
+				farthest = left;
+			}
+			if (right < size && isNearer(heap[farthest], heap[right], distances)) {
+				farthest = right;
+			}
+			if (farthest == parent) {
+				return;
+			}
+			swap(heap, parent, farthest);
+			parent = farthest;
+		}
+	}
+
+	private static void swap(int[] heap, int first, int second) {
+		int index = heap[first];
+		heap[first] = heap[second];
+		heap[second] = index;
+	}
+}
@@ -0,0 +1,95 @@
+package de.briemla.matsim.generator;
+
+import java.util.SplittableRandom;
+
+/**
+ * Binary indexed tree over integer weights. Changing a weight and drawing an
+ * index proportional to the weights both take O(log n). Weights are integers,
+ * so removing an index by setting its weight to zero leaves no rounding error
+ * behind and the index will never be drawn again.
+ *
+ * @author lars
+ *
+ */
+class FenwickTree {
+
+	private final long[] tree;
+	private final long[] weights;
+	private final int highestStep;
+
+	FenwickTree(long[] weights) {
+		this.weights = weights.clone();
+		tree = new long[weights.length + 1];
+		for (int index = 0; index < weights.length; index++) {
+			if (weights[index] < 0) {
+				throw new IllegalArgumentException("Negative weight at index " + index + ": " + weights[index]);
+			}
+			int position = index + 1;
+			tree[position] += weights[index];
+			int parent = position + (position & -position);
+			if (parent < tree.length) {
+				tree[parent] += tree[position];
+			}
+		}
+		highestStep = Integer.highestOneBit(Math.max(1, weights.length));
+	}
+
+	int size() {
+		return weights.length;
+	}
+
+	long weight(int index) {
+		return weights[index];
+	}
+
+	long total() {
+		long sum = 0;
+		for (int position = weights.length; position > 0; position -= position & -position) {
+			sum += tree[position];
+		}
+		return sum;
+	}
+
+	void set(int index, long weight) {
+		if (weight < 0) {
+			throw new IllegalArgumentException("Negative weight at index " + index + ": " + weight);
+		}
+		long difference = weight - weights[index];
+		weights[index] = weight;
+		for (int position = index + 1; position < tree.length; position += position & -position) {
+			tree[position] += difference;
+		}
+	}
+
+	/**
+	 * Find the index whose cumulative weight range contains the given value.
+	 *
+	 * @param value
+	 *            value between 0 (inclusive) and {@link #total()} (exclusive)
+	 * @return smallest index whose cumulative weight is greater than value
+	 */
+	int find(long value) {
+		int position = 0;
+		long remaining = value;
+		for (int step = highestStep; step > 0; step >>= 1) {
+			int next = position + step;
+			if (next < tree.length && tree[next] <= remaining) {
+				position = next;
+				remaining -= tree[next];
+			}
+		}
+		return position;
+	}
+
+	/**
+	 * Draw an index proportional to its weight. At least one weight must be
+	 * positive.
+	 *
+	 * @param random
+	 *            source of randomness
+	 * @return sampled index
+	 */
+	int sample(SplittableRandom random) {
+		return find(random.nextLong(total()));
+	}
+}
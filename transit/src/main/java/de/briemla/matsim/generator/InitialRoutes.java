@@ -0,0 +1,246 @@
+package de.briemla.matsim.generator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.core.population.routes.NetworkRoute;
+import org.matsim.core.population.routes.RouteUtils;
+
+import de.briemla.matsim.converter.CompactNetwork;
+import de.briemla.matsim.instrumentation.PhaseTimer;
+
+/**
+ * Car routes of all legs of a {@link PlanTable} with the least free speed
+ * travel time. Many inhabitants travel between the same {@link Link}s, so
+ * every pair of nodes is routed only once and its path is shared by all legs
+ * between them. All pairs starting at the same node are answered by a single
+ * {@link ShortestPathTree}, the origins are processed in parallel.
+ * <p>
+ * Paths are stored as {@link Link} indices, {@link NetworkRoute}s are only
+ * created on demand by {@link #route(int, int)}. Legs whose activities have
+ * no {@link Link} or whose destination is unreachable get no route, so the
+ * simulation routes them as before.
+ *
+ * @author lars
+ *
+ */
+class InitialRoutes {
+
+	static final int LEGS_PER_PLAN = 2;
+	private static final int UNROUTED = -1;
+
+	private final Network network;
+	private final CompactNetwork compact;
+	private final double[] travelTime;
+	private final int[] startLink;
+	private final int[] endLink;
+	private final int[] pair;
+	private final int[][] paths;
+	private final int origins;
+
+	private InitialRoutes(Network network, CompactNetwork compact, double[] travelTime, int[] startLink,
+			int[] endLink, int[] pair, int[][] paths, int origins) {
+		this.network = network;
+		this.compact = compact;
+		this.travelTime = travelTime;
+		this.startLink = startLink;
+		this.endLink = endLink;
+		this.pair = pair;
+		this.paths = paths;
+		this.origins = origins;
+	}
+
+	/**
+	 * Route all car legs of the {@link PlanTable}. The result does not
+	 * depend on the number of threads.
+	 *
+	 * @param table
+	 *            plans whose activities have been placed on {@link Link}s
+	 * @param network
+	 *            {@link Network} containing these {@link Link}s
+	 * @param threads
+	 *            number of threads searching paths
+	 * @return routes of all legs
+	 */
+	static InitialRoutes compute(PlanTable table, Network network, int threads) {
+		CompactNetwork compact = CompactNetwork.of(network);
+		double[] travelTime = new double[compact.linkCount()];
+		Map<Id<Link>, Integer> linkIndex = new HashMap<>(2 * compact.linkCount());
+		for (int link = 0; link < compact.linkCount(); link++) {
+			Link matsimLink = compact.link(link);
+			travelTime[link] = matsimLink.getFreespeed() > 0.0 ? matsimLink.getLength() / matsimLink.getFreespeed()
+					: Double.POSITIVE_INFINITY;
+			linkIndex.put(matsimLink.getId(), link);
+		}
+		int legs = LEGS_PER_PLAN * table.size();
+		int[] startLink = new int[legs];
+		int[] endLink = new int[legs];
+		long[] keys = new long[legs];
+		int keyCount = 0;
+		long nodes = compact.nodeCount();
+		for (int row = 0; row < table.size(); row++) {
+			for (int leg = 0; leg < LEGS_PER_PLAN; leg++) {
+				int index = LEGS_PER_PLAN * row + leg;
+				startLink[index] = link(linkIndex, table.activityLink(row, leg));
+				endLink[index] = link(linkIndex, table.activityLink(row, leg + 1));
+				if (table.mode(row) != PlanTable.CAR || startLink[index] == UNROUTED
+						|| endLink[index] == UNROUTED) {
+					startLink[index] = UNROUTED;
+					keys[index] = UNROUTED;
+					continue;
+				}
+				if (startLink[index] == endLink[index]) {
+					keys[index] = UNROUTED;
+					continue;
+				}
+				keys[index] = compact.toNode(startLink[index]) * nodes + compact.fromNode(endLink[index]);
+				keyCount++;
+			}
+		}
+		long[] uniqueKeys = unique(keys, keyCount);
+		int[] pair = new int[legs];
+		for (int leg = 0; leg < legs; leg++) {
+			pair[leg] = keys[leg] == UNROUTED ? UNROUTED : Arrays.binarySearch(uniqueKeys, keys[leg]);
+		}
+		int[] originStart = originStart(uniqueKeys, nodes);
+		int[][] paths = new int[uniqueKeys.length][];
+		ThreadLocal<ShortestPathTree> trees = ThreadLocal.withInitial(() -> new ShortestPathTree(compact, travelTime));
+		ForkJoinPool pool = new ForkJoinPool(threads, PhaseTimer.forkJoinThreadFactory(), null, false);
+		try {
+			pool.submit(() -> IntStream.range(0, originStart.length - 1).parallel()
+					.forEach(origin -> search(trees.get(), uniqueKeys, nodes, originStart[origin],
+							originStart[origin + 1], paths))).get();
+		} catch (InterruptedException | ExecutionException e) {
+			throw new RuntimeException("Could not route population", e);
+		} finally {
+			pool.shutdown();
+		}
+		return new InitialRoutes(network, compact, travelTime, startLink, endLink, pair, paths,
+				originStart.length - 1);
+	}
+
+	private static int link(Map<Id<Link>, Integer> linkIndex, Id<Link> link) {
+		if (link == null) {
+			return UNROUTED;
+		}
+		Integer index = linkIndex.get(link);
+		return index == null ? UNROUTED : index;
+	}
+
+	private static long[] unique(long[] keys, int keyCount) {
+		long[] sorted = new long[keyCount];
+		int size = 0;
+		for (long key : keys) {
+			if (key != UNROUTED) {
+				sorted[size++] = key;
+			}
+		}
+		Arrays.sort(sorted);
+		int unique = 0;
+		for (int index = 0; index < sorted.length; index++) {
+			if (unique == 0 || sorted[unique - 1] != sorted[index]) {
+				sorted[unique++] = sorted[index];
+			}
+		}
+		return Arrays.copyOf(sorted, unique);
+	}
+
+	/**
+	 * The keys are sorted by origin first, so the pairs of each origin form a
+	 * consecutive range.
+	 *
+	 * @return first pair of each origin followed by the number of pairs
+	 */
+	private static int[] originStart(long[] uniqueKeys, long nodes) {
+		List<Integer> starts = new ArrayList<>();
+		for (int index = 0; index < uniqueKeys.length; index++) {
+			if (index == 0 || uniqueKeys[index] / nodes != uniqueKeys[index - 1] / nodes) {
+				starts.add(index);
+			}
+		}
+		starts.add(uniqueKeys.length);
+		return starts.stream().mapToInt(Integer::intValue).toArray();
+	}
+
+	private static void search(ShortestPathTree tree, long[] uniqueKeys, long nodes, int from, int to,
+			int[][] paths) {
+		int origin = (int) (uniqueKeys[from] / nodes);
+		int[] destinations = new int[to - from];
+		for (int index = from; index < to; index++) {
+			destinations[index - from] = (int) (uniqueKeys[index] % nodes);
+		}
+		tree.search(origin, destinations);
+		for (int index = from; index < to; index++) {
+			paths[index] = tree.path(destinations[index - from]);
+		}
+	}
+
+	/**
+	 * @return number of distinct node pairs which have been routed
+	 */
+	int pairs() {
+		return paths.length;
+	}
+
+	/**
+	 * @return number of distinct origin nodes, each needing one search
+	 */
+	int origins() {
+		return origins;
+	}
+
+	/**
+	 * Create the route of a leg. The route starts on the {@link Link} of the
+	 * previous activity and ends on the {@link Link} of the next one. Travel
+	 * time and distance include the end {@link Link}, but not the start
+	 * {@link Link}.
+	 *
+	 * @param row
+	 *            row of the inhabitant in the {@link PlanTable}
+	 * @param leg
+	 *            number of the leg inside the plan
+	 * @return new route or <code>null</code> if the leg could not be routed
+	 */
+	NetworkRoute route(int row, int leg) {
+		int index = LEGS_PER_PLAN * row + leg;
+		if (startLink[index] == UNROUTED) {
+			return null;
+		}
+		List<Id<Link>> links = new ArrayList<>();
+		links.add(compact.link(startLink[index]).getId());
+		if (startLink[index] == endLink[index]) {
+			NetworkRoute route = RouteUtils.createNetworkRoute(links, network);
+			route.setTravelTime(0.0);
+			route.setDistance(0.0);
+			return route;
+		}
+		int[] path = paths[pair[index]];
+		if (path == null) {
+			return null;
+		}
+		double time = travelTime[endLink[index]];
+		if (Double.isInfinite(time)) {
+			return null;
+		}
+		double distance = compact.link(endLink[index]).getLength();
+		for (int link : path) {
+			links.add(compact.link(link).getId());
+			time += travelTime[link];
+			distance += compact.link(link).getLength();
+		}
+		links.add(compact.link(endLink[index]).getId());
+		NetworkRoute route = RouteUtils.createNetworkRoute(links, network);
+		route.setTravelTime(time);
+		route.setDistance(distance);
+		return route;
+	}
+}
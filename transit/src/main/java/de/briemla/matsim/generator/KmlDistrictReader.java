@@ -0,0 +1,206 @@
+package de.briemla.matsim.generator;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Reads the outer borders of {@link District}s from a kml file. The file is
+ * streamed and only the name and the outer boundary coordinates of each
+ * Placemark with a Polygon geometry are read. Styles, icons and all other
+ * elements are skipped without building any objects for them.
+ *
+ * @author lars
+ *
+ */
+public class KmlDistrictReader {
+
+	/**
+	 * Receives each district border as soon as its Placemark has been read.
+	 */
+	@FunctionalInterface
+	public interface DistrictHandler {
+
+		/**
+		 * @param name
+		 *            name of the Placemark
+		 * @param longitudes
+		 *            longitudes of the outer border in WGS84
+		 * @param latitudes
+		 *            latitudes of the outer border in WGS84
+		 */
+		void district(String name, double[] longitudes, double[] latitudes);
+	}
+
+	private static final String PLACEMARK = "Placemark";
+	private static final String NAME = "name";
+	private static final String POLYGON = "Polygon";
+	private static final String OUTER_BOUNDARY = "outerBoundaryIs";
+	private static final String COORDINATES = "coordinates";
+	private static final int INITIAL_CAPACITY = 64;
+
+	private final File kml;
+
+	public KmlDistrictReader(File kml) {
+		this.kml = kml;
+	}
+
+	/**
+	 * Read all Placemarks with a Polygon geometry and pass them to the
+	 * handler in the order of the file.
+	 *
+	 * @param handler
+	 *            receives name and outer border of each Placemark
+	 */
+	public void read(DistrictHandler handler) {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		try (InputStream input = new BufferedInputStream(new FileInputStream(kml))) {
+			XMLStreamReader reader = factory.createXMLStreamReader(input);
+			try {
+				readPlacemarks(reader, handler);
+			} finally {
+				reader.close();
+			}
+		} catch (IOException | XMLStreamException e) {
+			throw new RuntimeException("Could not read districts from kml: " + kml, e);
+		}
+	}
+
+	private static void readPlacemarks(XMLStreamReader reader, DistrictHandler handler) throws XMLStreamException {
+		while (reader.hasNext()) {
+			if (reader.next() == XMLStreamConstants.START_ELEMENT && PLACEMARK.equals(reader.getLocalName())) {
+				readPlacemark(reader, handler);
+			}
+		}
+	}
+
+	/**
+	 * Read a single Placemark. Only name and geometry on the first level of
+	 * the Placemark are considered, so Polygons nested in a MultiGeometry are
+	 * ignored.
+	 */
+	private static void readPlacemark(XMLStreamReader reader, DistrictHandler handler) throws XMLStreamException {
+		String name = null;
+		Border border = null;
+		int depth = 1;
+		while (depth > 0) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+				continue;
+			}
+			if (event != XMLStreamConstants.START_ELEMENT) {
+				continue;
+			}
+			String element = reader.getLocalName();
+			if (depth == 1 && NAME.equals(element)) {
+				name = reader.getElementText();
+				continue;
+			}
+			if (depth == 1 && POLYGON.equals(element)) {
+				border = readOuterBoundary(reader);
+				continue;
+			}
+			depth++;
+		}
+		if (border != null) {
+			handler.district(name, border.longitudes(), border.latitudes());
+		}
+	}
+
+	private static Border readOuterBoundary(XMLStreamReader reader) throws XMLStreamException {
+		Border border = new Border();
+		int depth = 1;
+		boolean outerBoundary = false;
+		while (depth > 0) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.END_ELEMENT) {
+				if (OUTER_BOUNDARY.equals(reader.getLocalName())) {
+					outerBoundary = false;
+				}
+				depth--;
+				continue;
+			}
+			if (event != XMLStreamConstants.START_ELEMENT) {
+				continue;
+			}
+			String element = reader.getLocalName();
+			if (outerBoundary && COORDINATES.equals(element)) {
+				border.parse(reader.getElementText());
+				continue;
+			}
+			if (OUTER_BOUNDARY.equals(element)) {
+				outerBoundary = true;
+			}
+			depth++;
+		}
+		return border;
+	}
+
+	/**
+	 * Coordinates of a kml LinearRing. Each tuple is written as
+	 * <code>longitude,latitude[,altitude]</code> and tuples are separated by
+	 * whitespace.
+	 */
+	private static class Border {
+
+		private double[] longitudes = new double[INITIAL_CAPACITY];
+		private double[] latitudes = new double[INITIAL_CAPACITY];
+		private int size = 0;
+
+		void parse(String coordinates) {
+			int length = coordinates.length();
+			int position = 0;
+			while (position < length) {
+				while (position < length && Character.isWhitespace(coordinates.charAt(position))) {
+					position++;
+				}
+				int start = position;
+				while (position < length && !Character.isWhitespace(coordinates.charAt(position))) {
+					position++;
+				}
+				if (position > start) {
+					parseTuple(coordinates, start, position);
+				}
+			}
+		}
+
+		private void parseTuple(String coordinates, int start, int end) {
+			int firstComma = coordinates.indexOf(',', start);
+			if (firstComma < 0 || firstComma >= end) {
+				throw new IllegalArgumentException("Invalid coordinate: " + coordinates.substring(start, end));
+			}
+			int secondComma = coordinates.indexOf(',', firstComma + 1);
+			int latitudeEnd = secondComma < 0 || secondComma > end ? end : secondComma;
+			add(Double.parseDouble(coordinates.substring(start, firstComma)),
+					Double.parseDouble(coordinates.substring(firstComma + 1, latitudeEnd)));
+		}
+
+		private void add(double longitude, double latitude) {
+			if (size == longitudes.length) {
+				longitudes = Arrays.copyOf(longitudes, size * 2);
+				latitudes = Arrays.copyOf(latitudes, size * 2);
+			}
+			longitudes[size] = longitude;
+			latitudes[size] = latitude;
+			size++;
+		}
+
+		double[] longitudes() {
+			return Arrays.copyOf(longitudes, size);
+		}
+
+		double[] latitudes() {
+			return Arrays.copyOf(latitudes, size);
+		}
+	}
+}
@@ -0,0 +1,212 @@
+package de.briemla.matsim.generator;
+
+import java.util.Collection;
+import java.util.function.IntConsumer;
+
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+
+/**
+ * Uniform grid over the straight line segments of all {@link Link}s of a
+ * {@link Network} to find the nearest {@link Link} of a point. Each cell
+ * lists the {@link Link}s whose bounding box overlaps the cell. A lookup
+ * searches rings of cells around the point until no unvisited cell can
+ * contain a nearer {@link Link}.
+ * <p>
+ * Distances are measured from the point to the segment between the
+ * coordinates of the from and to node. {@link Link}s at the same distance
+ * are ordered by their index in the given {@link Collection}, so the result
+ * does not depend on the grid. The index is immutable and can be queried
+ * from several threads.
+ *
+ * @author lars
+ *
+ */
+class LinkIndex {
+
+	private static final int CELLS_PER_LINK = 1;
+
+	private final Id<Link>[] ids;
+	private final double[] fromX;
+	private final double[] fromY;
+	private final double[] toX;
+	private final double[] toY;
+	private final double minX;
+	private final double minY;
+	private final double cellSize;
+	private final int columns;
+	private final int rows;
+	/**
+	 * Links of cell <code>c</code> are stored in {@link #cellLinks} from
+	 * <code>cellStart[c]</code> to <code>cellStart[c + 1]</code>.
+	 */
+	private final int[] cellStart;
+	private final int[] cellLinks;
+
+	@SuppressWarnings("unchecked")
+	private LinkIndex(Collection<? extends Link> links) {
+		int size = links.size();
+		ids = new Id[size];
+		fromX = new double[size];
+		fromY = new double[size];
+		toX = new double[size];
+		toY = new double[size];
+		double minX = Double.POSITIVE_INFINITY;
+		double minY = Double.POSITIVE_INFINITY;
+		double maxX = Double.NEGATIVE_INFINITY;
+		double maxY = Double.NEGATIVE_INFINITY;
+		int index = 0;
+		for (Link link : links) {
+			Coord from = link.getFromNode().getCoord();
+			Coord to = link.getToNode().getCoord();
+			ids[index] = link.getId();
+			fromX[index] = from.getX();
+			fromY[index] = from.getY();
+			toX[index] = to.getX();
+			toY[index] = to.getY();
+			minX = Math.min(minX, Math.min(fromX[index], toX[index]));
+			minY = Math.min(minY, Math.min(fromY[index], toY[index]));
+			maxX = Math.max(maxX, Math.max(fromX[index], toX[index]));
+			maxY = Math.max(maxY, Math.max(fromY[index], toY[index]));
+			index++;
+		}
+		if (size == 0) {
+			minX = minY = maxX = maxY = 0.0;
+		}
+		double width = maxX - minX;
+		double height = maxY - minY;
+		int cells = Math.max(1, size * CELLS_PER_LINK);
+		// Thin networks would otherwise get far more cells than links
+		double cellSize = Math.max(Math.sqrt(width * height / cells), Math.max(width, height) / cells);
+		if (!(cellSize > 0.0)) {
+			cellSize = 1.0;
+		}
+		this.minX = minX;
+		this.minY = minY;
+		this.cellSize = cellSize;
+		columns = Math.max(1, (int) Math.ceil(width / cellSize));
+		rows = Math.max(1, (int) Math.ceil(height / cellSize));
+		cellStart = new int[columns * rows + 1];
+		for (int link = 0; link < size; link++) {
+			forEachCell(link, cell -> cellStart[cell + 1]++);
+		}
+		for (int cell = 0; cell < columns * rows; cell++) {
+			cellStart[cell + 1] += cellStart[cell];
+		}
+		cellLinks = new int[cellStart[columns * rows]];
+		int[] next = new int[columns * rows];
+		for (int link = 0; link < size; link++) {
+			int current = link;
+			forEachCell(link, cell -> cellLinks[cellStart[cell] + next[cell]++] = current);
+		}
+	}
+
+	/**
+	 * @param network
+	 *            {@link Network} whose {@link Link}s are indexed in iteration
+	 *            order
+	 * @return index over all {@link Link}s of the {@link Network}
+	 */
+	static LinkIndex of(Network network) {
+		return of(network.getLinks().values());
+	}
+
+	static LinkIndex of(Collection<? extends Link> links) {
+		return new LinkIndex(links);
+	}
+
+	private void forEachCell(int link, IntConsumer consumer) {
+		int firstColumn = column(Math.min(fromX[link], toX[link]));
+		int lastColumn = column(Math.max(fromX[link], toX[link]));
+		int firstRow = row(Math.min(fromY[link], toY[link]));
+		int lastRow = row(Math.max(fromY[link], toY[link]));
+		for (int row = firstRow; row <= lastRow; row++) {
+			for (int column = firstColumn; column <= lastColumn; column++) {
+				consumer.accept(row * columns + column);
+			}
+		}
+	}
+
+	private int column(double x) {
+		return Math.min(columns - 1, Math.max(0, (int) Math.floor((x - minX) / cellSize)));
+	}
+
+	private int row(double y) {
+		return Math.min(rows - 1, Math.max(0, (int) Math.floor((y - minY) / cellSize)));
+	}
+
+	int size() {
+		return ids.length;
+	}
+
+	Id<Link> id(int link) {
+		return ids[link];
+	}
+
+	/**
+	 * Cells outside of the rings searched so far are at least the number of
+	 * searched rings times the cell size away from the point, even if the
+	 * point lies outside of the grid. The search stops as soon as the best
+	 * {@link Link} is strictly nearer, so no tie can be missed.
+	 *
+	 * @return index of the nearest {@link Link} or <code>-1</code> if there
+	 *         are no {@link Link}s
+	 */
+	int nearest(double x, double y) {
+		if (ids.length == 0) {
+			return -1;
+		}
+		int centerColumn = column(x);
+		int centerRow = row(y);
+		int maxRing = Math.max(columns, rows);
+		int best = -1;
+		double bestDistance = Double.POSITIVE_INFINITY;
+		for (int ring = 0; ring <= maxRing; ring++) {
+			for (int row = centerRow - ring; row <= centerRow + ring; row++) {
+				if (row < 0 || row >= rows) {
+					continue;
+				}
+				boolean edgeRow = row == centerRow - ring || row == centerRow + ring;
+				int step = edgeRow ? 1 : 2 * ring;
+				for (int column = centerColumn - ring; column <= centerColumn + ring; column += Math.max(1, step)) {
+					if (column < 0 || column >= columns) {
+						continue;
+					}
+					int cell = row * columns + column;
+					for (int entry = cellStart[cell]; entry < cellStart[cell + 1]; entry++) {
+						int link = cellLinks[entry];
+						double distance = squaredDistance(link, x, y);
+						if (distance < bestDistance || (distance == bestDistance && link < best)) {
+							bestDistance = distance;
+							best = link;
+						}
+					}
+				}
+			}
+			double searched = ring * cellSize;
+			if (best >= 0 && bestDistance < searched * searched) {
+				return best;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * @return squared distance between the point and the segment of the
+	 *         {@link Link}
+	 */
+	private double squaredDistance(int link, double x, double y) {
+		double dx = toX[link] - fromX[link];
+		double dy = toY[link] - fromY[link];
+		double lengthSquared = dx * dx + dy * dy;
+		double t = 0.0;
+		if (lengthSquared > 0.0) {
+			t = Math.max(0.0, Math.min(1.0, ((x - fromX[link]) * dx + (y - fromY[link]) * dy) / lengthSquared));
+		}
+		double nearestX = fromX[link] + t * dx - x;
+		double nearestY = fromY[link] + t * dy - y;
+		return nearestX * nearestX + nearestY * nearestY;
+	}
+}
@@ -0,0 +1,424 @@
+package de.briemla.matsim.generator;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.NetworkFactory;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.config.Config;
+import org.matsim.core.network.LinkImpl;
+import org.matsim.core.network.MatsimNetworkReader;
+import org.matsim.core.network.NetworkImpl;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.core.utils.geometry.CoordImpl;
+
+/**
+ * Binary copy of a {@link Network} stored next to its network file. All ids,
+ * modes, types and original ids are stored once in a string table and
+ * referenced by their index. {@link Node}s and {@link Link}s are stored
+ * column by column, so the columns can be copied from the memory mapped file
+ * in bulk. The snapshot is only used if checksum and size of the network
+ * file match the ones it was written for. Otherwise the network file has to
+ * be parsed again.
+ * <p>
+ * Layout of the file, all numbers in big endian:
+ *
+ * <pre>
+ * int    magic number
+ * int    version
+ * long   crc32 of the network file
+ * long   size of the network file
+ * double capacity period
+ * double effective lane width
+ * int    number of strings, each as int length followed by its UTF-8 bytes
+ * int    number of nodes
+ * int[]    string of the id per node
+ * double[] x coordinate per node
+ * double[] y coordinate per node
+ * int    number of links
+ * int[]    string of the id per link
+ * int[]    from node per link
+ * int[]    to node per link
+ * double[] length per link
+ * double[] free speed per link
+ * double[] capacity per link
+ * double[] number of lanes per link
+ * int[]    string of the comma separated allowed modes per link
+ * int[]    string of the original id per link or -1
+ * int[]    string of the type per link or -1
+ * </pre>
+ *
+ * @author lars
+ *
+ */
+public class NetworkSnapshot {
+
+	private static final int MAGIC = 0x4e455457;
+	private static final int VERSION = 1;
+	private static final String SUFFIX = ".snapshot";
+	private static final int NO_STRING = -1;
+	private static final String MODE_SEPARATOR = ",";
+	/**
+	 * Files larger than this are checksummed in several mapped regions.
+	 */
+	private static final long MAX_MAPPED_REGION = Integer.MAX_VALUE;
+
+	private final File networkFile;
+	private final File snapshot;
+
+	/**
+	 * @param networkFile
+	 *            network file the snapshot belongs to
+	 */
+	public NetworkSnapshot(File networkFile) {
+		this.networkFile = networkFile;
+		this.snapshot = new File(networkFile.getPath() + SUFFIX);
+	}
+
+	/**
+	 * Load the {@link Scenario} of the {@link Config}. If there is an up to
+	 * date snapshot of the network file, the {@link Network} is read from the
+	 * snapshot and only the rest of the {@link Scenario} is parsed. The
+	 * {@link Network} is loaded first like by {@link ScenarioUtils}, because
+	 * the rest of the {@link Scenario}, e.g. routes of the population, refers
+	 * to its {@link Link}s.
+	 *
+	 * @param config
+	 *            {@link Config} of the {@link Scenario}
+	 * @return loaded {@link Scenario}
+	 */
+	public static Scenario loadScenario(Config config) {
+		String networkFile = config.network().getInputFile();
+		if (networkFile == null) {
+			return ScenarioUtils.loadScenario(config);
+		}
+		Columns columns = new NetworkSnapshot(new File(networkFile)).read();
+		if (columns == null) {
+			return ScenarioUtils.loadScenario(config);
+		}
+		Scenario scenario = ScenarioUtils.createScenario(config);
+		columns.addTo(scenario.getNetwork());
+		config.network().setInputFile(null);
+		try {
+			ScenarioUtils.loadScenario(scenario);
+			return scenario;
+		} finally {
+			config.network().setInputFile(networkFile);
+		}
+	}
+
+	/**
+	 * Load the {@link Network} of the network file into the empty
+	 * {@link Network} of the {@link Scenario}, from the snapshot if it is up
+	 * to date.
+	 *
+	 * @param scenario
+	 *            {@link Scenario} with an empty {@link Network}
+	 * @param networkFile
+	 *            network file to load
+	 */
+	public static void loadNetwork(Scenario scenario, String networkFile) {
+		if (!new NetworkSnapshot(new File(networkFile)).loadInto(scenario.getNetwork())) {
+			new MatsimNetworkReader(scenario).readFile(networkFile);
+		}
+	}
+
+	/**
+	 * Add all {@link Node}s and {@link Link}s of the snapshot to the
+	 * {@link Network}. Nothing is added if the snapshot is missing, outdated
+	 * or broken.
+	 *
+	 * @param network
+	 *            empty {@link Network}
+	 * @return <code>true</code> if the {@link Network} was loaded from the
+	 *         snapshot, <code>false</code> if the network file has to be read
+	 */
+	public boolean loadInto(Network network) {
+		Columns columns = read();
+		if (columns == null) {
+			return false;
+		}
+		columns.addTo(network);
+		return true;
+	}
+
+	/**
+	 * Read all columns before the first {@link Node} is created, so a
+	 * truncated snapshot does not leave a partial {@link Network} behind.
+	 *
+	 * @return content of the snapshot or <code>null</code> if the snapshot
+	 *         can not be used
+	 */
+	private Columns read() {
+		if (!snapshot.isFile() || !networkFile.isFile()) {
+			return null;
+		}
+		try (FileChannel channel = FileChannel.open(snapshot.toPath(), StandardOpenOption.READ)) {
+			ByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+			if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION || buffer.getLong() != checksum()
+					|| buffer.getLong() != networkFile.length()) {
+				return null;
+			}
+			return new Columns(buffer);
+		} catch (IOException | RuntimeException e) {
+			System.out.println("Ignoring unreadable network snapshot " + snapshot + ": " + e);
+			return null;
+		}
+	}
+
+	private static Set<String> modeSet(String modes) {
+		if (modes.isEmpty()) {
+			return Collections.emptySet();
+		}
+		return Collections.unmodifiableSet(new HashSet<>(Arrays.asList(modes.split(MODE_SEPARATOR))));
+	}
+
+	private static int[] readInts(ByteBuffer buffer, int size) {
+		int[] values = new int[size];
+		buffer.asIntBuffer().get(values);
+		buffer.position(buffer.position() + size * Integer.BYTES);
+		return values;
+	}
+
+	private static double[] readDoubles(ByteBuffer buffer, int size) {
+		double[] values = new double[size];
+		buffer.asDoubleBuffer().get(values);
+		buffer.position(buffer.position() + size * Double.BYTES);
+		return values;
+	}
+
+	/**
+	 * Store the {@link Network} for the next run. It has to be the content of
+	 * the network file, which therefore has to be written first. A failure to
+	 * write the snapshot is reported, but does not stop the caller, because
+	 * the network file is still available.
+	 *
+	 * @param network
+	 *            {@link Network} written to the network file
+	 */
+	public void write(Network network) {
+		File temporary = new File(snapshot.getPath() + ".tmp");
+		try {
+			Node[] nodes = network.getNodes().values().toArray(new Node[network.getNodes().size()]);
+			Link[] links = network.getLinks().values().toArray(new Link[network.getLinks().size()]);
+			Map<Id<Node>, Integer> nodeIndex = new HashMap<>(2 * nodes.length);
+			for (int node = 0; node < nodes.length; node++) {
+				nodeIndex.put(nodes[node].getId(), node);
+			}
+			StringTable strings = new StringTable();
+			int[] nodeIds = new int[nodes.length];
+			for (int node = 0; node < nodes.length; node++) {
+				nodeIds[node] = strings.index(nodes[node].getId().toString());
+			}
+			int[] linkIds = new int[links.length];
+			int[] modes = new int[links.length];
+			int[] origIds = new int[links.length];
+			int[] types = new int[links.length];
+			for (int link = 0; link < links.length; link++) {
+				linkIds[link] = strings.index(links[link].getId().toString());
+				modes[link] = strings.index(String.join(MODE_SEPARATOR, new TreeSet<>(links[link].getAllowedModes())));
+				origIds[link] = NO_STRING;
+				types[link] = NO_STRING;
+				if (links[link] instanceof LinkImpl) {
+					origIds[link] = strings.index(((LinkImpl) links[link]).getOrigId());
+					types[link] = strings.index(((LinkImpl) links[link]).getType());
+				}
+			}
+
+			try (DataOutputStream output = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(temporary)))) {
+				output.writeInt(MAGIC);
+				output.writeInt(VERSION);
+				output.writeLong(checksum());
+				output.writeLong(networkFile.length());
+				output.writeDouble(network.getCapacityPeriod());
+				output.writeDouble(network.getEffectiveLaneWidth());
+				strings.write(output);
+				output.writeInt(nodes.length);
+				writeInts(output, nodeIds);
+				for (Node node : nodes) {
+					output.writeDouble(node.getCoord().getX());
+				}
+				for (Node node : nodes) {
+					output.writeDouble(node.getCoord().getY());
+				}
+				output.writeInt(links.length);
+				writeInts(output, linkIds);
+				for (Link link : links) {
+					output.writeInt(nodeIndex.get(link.getFromNode().getId()));
+				}
+				for (Link link : links) {
+					output.writeInt(nodeIndex.get(link.getToNode().getId()));
+				}
+				for (Link link : links) {
+					output.writeDouble(link.getLength());
+				}
+				for (Link link : links) {
+					output.writeDouble(link.getFreespeed());
+				}
+				for (Link link : links) {
+					output.writeDouble(link.getCapacity());
+				}
+				for (Link link : links) {
+					output.writeDouble(link.getNumberOfLanes());
+				}
+				writeInts(output, modes);
+				writeInts(output, origIds);
+				writeInts(output, types);
+			}
+			Files.move(temporary.toPath(), snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private static void writeInts(DataOutputStream output, int[] values) throws IOException {
+		for (int value : values) {
+			output.writeInt(value);
+		}
+	}
+
+	private long checksum() throws IOException {
+		try (FileChannel channel = FileChannel.open(networkFile.toPath(), StandardOpenOption.READ)) {
+			CRC32 crc = new CRC32();
+			long size = channel.size();
+			for (long position = 0; position < size; position += MAX_MAPPED_REGION) {
+				crc.update(channel.map(MapMode.READ_ONLY, position, Math.min(MAX_MAPPED_REGION, size - position)));
+			}
+			return crc.getValue();
+		}
+	}
+
+	/**
+	 * Content of a snapshot as read from the file.
+	 */
+	private static class Columns {
+
+		private final double capacityPeriod;
+		private final double effectiveLaneWidth;
+		private final String[] strings;
+		private final int[] nodeId;
+		private final double[] x;
+		private final double[] y;
+		private final int[] linkId;
+		private final int[] fromNode;
+		private final int[] toNode;
+		private final double[] length;
+		private final double[] freespeed;
+		private final double[] capacity;
+		private final double[] lanes;
+		private final int[] modes;
+		private final int[] origId;
+		private final int[] type;
+
+		Columns(ByteBuffer buffer) {
+			capacityPeriod = buffer.getDouble();
+			effectiveLaneWidth = buffer.getDouble();
+			strings = new String[buffer.getInt()];
+			for (int string = 0; string < strings.length; string++) {
+				byte[] bytes = new byte[buffer.getInt()];
+				buffer.get(bytes);
+				strings[string] = new String(bytes, StandardCharsets.UTF_8);
+			}
+			int nodes = buffer.getInt();
+			nodeId = readInts(buffer, nodes);
+			x = readDoubles(buffer, nodes);
+			y = readDoubles(buffer, nodes);
+			int links = buffer.getInt();
+			linkId = readInts(buffer, links);
+			fromNode = readInts(buffer, links);
+			toNode = readInts(buffer, links);
+			length = readDoubles(buffer, links);
+			freespeed = readDoubles(buffer, links);
+			capacity = readDoubles(buffer, links);
+			lanes = readDoubles(buffer, links);
+			modes = readInts(buffer, links);
+			origId = readInts(buffer, links);
+			type = readInts(buffer, links);
+		}
+
+		void addTo(Network network) {
+			if (!network.getNodes().isEmpty() || !network.getLinks().isEmpty()) {
+				throw new IllegalArgumentException("Network snapshot can only be loaded into an empty network");
+			}
+			if (network instanceof NetworkImpl) {
+				((NetworkImpl) network).setCapacityPeriod(capacityPeriod);
+				((NetworkImpl) network).setEffectiveLaneWidth(effectiveLaneWidth);
+			}
+			NetworkFactory factory = network.getFactory();
+			Node[] nodes = new Node[nodeId.length];
+			for (int node = 0; node < nodes.length; node++) {
+				nodes[node] = factory.createNode(Id.createNodeId(strings[nodeId[node]]),
+						new CoordImpl(x[node], y[node]));
+				network.addNode(nodes[node]);
+			}
+			Map<Integer, Set<String>> modeSets = new HashMap<>();
+			for (int link = 0; link < linkId.length; link++) {
+				Link created = factory.createLink(Id.createLinkId(strings[linkId[link]]), nodes[fromNode[link]],
+						nodes[toNode[link]]);
+				created.setLength(length[link]);
+				created.setFreespeed(freespeed[link]);
+				created.setCapacity(capacity[link]);
+				created.setNumberOfLanes(lanes[link]);
+				created.setAllowedModes(modeSets.computeIfAbsent(modes[link], string -> modeSet(strings[string])));
+				if (created instanceof LinkImpl) {
+					((LinkImpl) created).setOrigId(string(origId[link]));
+					((LinkImpl) created).setType(string(type[link]));
+				}
+				network.addLink(created);
+			}
+		}
+
+		private String string(int index) {
+			return index == NO_STRING ? null : strings[index];
+		}
+	}
+
+	/**
+	 * Interns strings in the order they are first used.
+	 */
+	private static class StringTable {
+
+		private final Map<String, Integer> indices = new HashMap<>();
+
+		int index(String value) {
+			if (value == null) {
+				return NO_STRING;
+			}
+			return indices.computeIfAbsent(value, key -> indices.size());
+		}
+
+		void write(DataOutputStream output) throws IOException {
+			String[] strings = new String[indices.size()];
+			indices.forEach((value, index) -> strings[index] = value);
+			output.writeInt(strings.length);
+			for (String value : strings) {
+				byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+				output.writeInt(bytes.length);
+				output.write(bytes);
+			}
+		}
+	}
+}
@@ -0,0 +1,141 @@
+package de.briemla.matsim.generator;
+
+import java.util.Collection;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.PopulationFactory;
+import org.matsim.core.population.ActivityImpl;
+import org.matsim.core.utils.geometry.CoordImpl;
+
+/**
+ * Ids and coordinates of {@link Node}s copied once into primitive arrays.
+ * {@link Node}s are addressed by their index, so a random {@link Node} is
+ * drawn in constant time without copying the {@link Node}s of the network.
+ * Optionally each {@link Node} knows its nearest {@link Link}, so
+ * activities are created with their {@link Link} and need no matching when
+ * the simulation starts. The index is immutable and can be read from several
+ * threads.
+ *
+ * @author lars
+ *
+ */
+class NodeCoordinates {
+
+	private final String[] ids;
+	private final double[] x;
+	private final double[] y;
+	private final Id<Link>[] links;
+
+	private NodeCoordinates(String[] ids, double[] x, double[] y, Id<Link>[] links) {
+		this.ids = ids;
+		this.x = x;
+		this.y = y;
+		this.links = links;
+	}
+
+	/**
+	 * @param nodes
+	 *            {@link Node}s to index in iteration order
+	 * @return index of the given {@link Node}s
+	 */
+	static NodeCoordinates of(Collection<? extends Node> nodes) {
+		String[] ids = new String[nodes.size()];
+		double[] x = new double[nodes.size()];
+		double[] y = new double[nodes.size()];
+		int index = 0;
+		for (Node node : nodes) {
+			ids[index] = node.getId().toString();
+			x[index] = node.getCoord().getX();
+			y[index] = node.getCoord().getY();
+			index++;
+		}
+		return new NodeCoordinates(ids, x, y, null);
+	}
+
+	/**
+	 * Look up the nearest {@link Link} of every {@link Node} in parallel.
+	 *
+	 * @param index
+	 *            {@link Link}s of the network
+	 * @return copy of this index, which knows the nearest {@link Link} of each
+	 *         {@link Node}
+	 */
+	@SuppressWarnings("unchecked")
+	NodeCoordinates withNearestLinks(LinkIndex index) {
+		Id<Link>[] nearest = new Id[ids.length];
+		if (index.size() > 0) {
+			IntStream.range(0, ids.length).parallel()
+					.forEach(node -> nearest[node] = index.id(index.nearest(x[node], y[node])));
+		}
+		return new NodeCoordinates(ids, x, y, nearest);
+	}
+
+	int size() {
+		return ids.length;
+	}
+
+	String id(int node) {
+		return ids[node];
+	}
+
+	double x(int node) {
+		return x[node];
+	}
+
+	double y(int node) {
+		return y[node];
+	}
+
+	/**
+	 * @return new {@link Coord} of the {@link Node} at the given index
+	 */
+	Coord coord(int node) {
+		return new CoordImpl(x[node], y[node]);
+	}
+
+	/**
+	 * @return nearest {@link Link} of the {@link Node} at the given index or
+	 *         <code>null</code> if it is unknown
+	 */
+	Id<Link> link(int node) {
+		return links == null ? null : links[node];
+	}
+
+	/**
+	 * Create an {@link Activity} at the {@link Node} with the given index. The
+	 * {@link Activity} is placed on the nearest {@link Link}, if it is known.
+	 *
+	 * @param factory
+	 *            {@link PopulationFactory} to create the {@link Activity}
+	 *            with
+	 * @param type
+	 *            type of the {@link Activity}
+	 * @param node
+	 *            index of the {@link Node}
+	 * @return new {@link Activity} without times
+	 */
+	Activity activity(PopulationFactory factory, String type, int node) {
+		Activity activity = factory.createActivityFromCoord(type, coord(node));
+		Id<Link> link = link(node);
+		if (link != null) {
+			((ActivityImpl) activity).setLinkId(link);
+		}
+		return activity;
+	}
+
+	/**
+	 * @return index of a uniformly distributed random {@link Node}
+	 */
+	int randomNode(SplittableRandom random) {
+		if (ids.length == 0) {
+			throw new IllegalStateException("Can not draw a node from an empty index");
+		}
+		return random.nextInt(ids.length);
+	}
+}
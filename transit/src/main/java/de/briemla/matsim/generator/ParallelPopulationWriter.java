@@ -0,0 +1,293 @@
+package de.briemla.matsim.generator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntFunction;
+import java.util.zip.GZIPOutputStream;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.PlanElement;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.api.core.v01.population.PopulationFactory;
+import org.matsim.api.core.v01.population.Route;
+import org.matsim.core.population.routes.NetworkRoute;
+import org.matsim.core.utils.misc.Time;
+
+import de.briemla.matsim.instrumentation.PhaseTimer;
+
+/**
+ * Writes {@link Person}s as MATSim plans in format v5 with several threads.
+ * The {@link Person}s are split into chunks, each chunk is serialized on its
+ * own and, if the file name ends with <code>.gz</code>, compressed as a
+ * separate gzip member. Concatenated gzip members form a valid gzip file, so
+ * the result can be read by MATSim and any other gzip reader. The chunks are
+ * written in order through a {@link FileChannel}, and only a limited number
+ * of chunks is kept in memory at any time.
+ *
+ * @author lars
+ *
+ */
+public class ParallelPopulationWriter {
+
+	private static final int PERSONS_PER_CHUNK = 1024;
+	private static final int CHUNKS_PER_THREAD = 2;
+	private static final String GZIP_SUFFIX = ".gz";
+	private static final String HEADER = "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n"
+			+ "<!DOCTYPE population SYSTEM \"http://www.matsim.org/files/dtd/population_v5.dtd\">\n\n"
+			+ "<population>\n\n";
+	private static final String SEPARATOR = "<!-- ====================================================================== -->\n\n";
+	private static final String FOOTER = "</population>\n";
+
+	private final int threads;
+
+	/**
+	 * @param threads
+	 *            number of threads serializing and compressing chunks
+	 */
+	public ParallelPopulationWriter(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("At least one thread is required, but got " + threads);
+		}
+		this.threads = threads;
+	}
+
+	/**
+	 * Write all {@link Person}s of the {@link Population}.
+	 *
+	 * @param population
+	 *            {@link Population} to write
+	 * @param file
+	 *            output file, compressed if it ends with <code>.gz</code>
+	 */
+	public void write(Population population, Path file) {
+		Person[] persons = population.getPersons().values().toArray(new Person[population.getPersons().size()]);
+		write(persons.length, person -> persons[person], file);
+	}
+
+	/**
+	 * Write all inhabitants of the {@link PlanTable}. The {@link Person}s are
+	 * created while their chunk is serialized and discarded afterwards.
+	 *
+	 * @param table
+	 *            plans to write
+	 * @param factory
+	 *            {@link PopulationFactory} to create {@link Person}s with
+	 * @param file
+	 *            output file, compressed if it ends with <code>.gz</code>
+	 */
+	public void write(PlanTable table, PopulationFactory factory, Path file) {
+		write(table.size(), row -> table.person(row, factory), file);
+	}
+
+	/**
+	 * Write the given number of {@link Person}s in the order of their index.
+	 *
+	 * @param size
+	 *            number of {@link Person}s
+	 * @param persons
+	 *            provides the {@link Person} for an index, is called from
+	 *            several threads
+	 * @param file
+	 *            output file, compressed if it ends with <code>.gz</code>
+	 */
+	public void write(int size, IntFunction<Person> persons, Path file) {
+		boolean compress = file.getFileName().toString().endsWith(GZIP_SUFFIX);
+		int window = CHUNKS_PER_THREAD * threads;
+		ExecutorService executor = Executors.newFixedThreadPool(threads, PhaseTimer.threadFactory());
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			writeFully(channel, encode(HEADER, compress));
+			Deque<Future<byte[]>> chunks = new ArrayDeque<>(window);
+			for (int from = 0; from < size; from += PERSONS_PER_CHUNK) {
+				if (chunks.size() == window) {
+					writeFully(channel, chunks.removeFirst().get());
+				}
+				int chunkStart = from;
+				int chunkEnd = Math.min(size, from + PERSONS_PER_CHUNK);
+				chunks.addLast(executor.submit(() -> serialize(persons, chunkStart, chunkEnd, compress)));
+			}
+			while (!chunks.isEmpty()) {
+				writeFully(channel, chunks.removeFirst().get());
+			}
+			writeFully(channel, encode(FOOTER, compress));
+		} catch (IOException | InterruptedException | ExecutionException e) {
+			throw new RuntimeException("Could not write population to " + file, e);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static void writeFully(FileChannel channel, byte[] bytes) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	private static byte[] encode(String text, boolean compress) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(text.length());
+		try (Writer output = writer(bytes, compress)) {
+			output.write(text);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static byte[] serialize(IntFunction<Person> persons, int from, int to, boolean compress)
+			throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024 * (to - from));
+		try (Writer output = writer(bytes, compress)) {
+			StringBuilder xml = new StringBuilder(1024);
+			for (int person = from; person < to; person++) {
+				xml.setLength(0);
+				appendPerson(xml, persons.apply(person));
+				output.append(xml);
+			}
+		}
+		return bytes.toByteArray();
+	}
+
+	private static Writer writer(OutputStream bytes, boolean compress) throws IOException {
+		OutputStream output = compress ? new GZIPOutputStream(bytes) : bytes;
+		return new OutputStreamWriter(output, StandardCharsets.UTF_8);
+	}
+
+	private static void appendPerson(StringBuilder xml, Person person) {
+		xml.append("\t<person id=\"");
+		appendEscaped(xml, person.getId().toString());
+		xml.append("\">\n");
+		for (Plan plan : person.getPlans()) {
+			appendPlan(xml, plan, plan == person.getSelectedPlan());
+		}
+		xml.append("\t</person>\n\n").append(SEPARATOR);
+	}
+
+	private static void appendPlan(StringBuilder xml, Plan plan, boolean selected) {
+		xml.append("\t\t<plan");
+		if (plan.getScore() != null) {
+			xml.append(" score=\"").append(plan.getScore()).append('"');
+		}
+		xml.append(" selected=\"").append(selected ? "yes" : "no").append("\">\n");
+		for (PlanElement element : plan.getPlanElements()) {
+			if (element instanceof Activity) {
+				appendActivity(xml, (Activity) element);
+			} else if (element instanceof Leg) {
+				appendLeg(xml, (Leg) element);
+			}
+		}
+		xml.append("\t\t</plan>\n\n");
+	}
+
+	private static void appendActivity(StringBuilder xml, Activity activity) {
+		xml.append("\t\t\t<act type=\"");
+		appendEscaped(xml, activity.getType());
+		xml.append('"');
+		if (activity.getLinkId() != null) {
+			xml.append(" link=\"");
+			appendEscaped(xml, activity.getLinkId().toString());
+			xml.append('"');
+		}
+		if (activity.getCoord() != null) {
+			xml.append(" x=\"").append(activity.getCoord().getX()).append("\" y=\"")
+					.append(activity.getCoord().getY()).append('"');
+		}
+		appendTime(xml, "start_time", activity.getStartTime());
+		appendTime(xml, "max_dur", activity.getMaximumDuration());
+		appendTime(xml, "end_time", activity.getEndTime());
+		xml.append(" >\n\t\t\t</act>\n");
+	}
+
+	private static void appendLeg(StringBuilder xml, Leg leg) {
+		xml.append("\t\t\t<leg mode=\"");
+		appendEscaped(xml, leg.getMode());
+		xml.append('"');
+		appendTime(xml, "dep_time", leg.getDepartureTime());
+		appendTime(xml, "trav_time", leg.getTravelTime());
+		xml.append(">\n");
+		if (leg.getRoute() != null) {
+			appendRoute(xml, leg.getRoute());
+		}
+		xml.append("\t\t\t</leg>\n");
+	}
+
+	/**
+	 * Write the {@link Link}s of a {@link NetworkRoute} separated by spaces
+	 * from start to end {@link Link}. A route staying on its start
+	 * {@link Link} lists this {@link Link} only once.
+	 */
+	private static void appendRoute(StringBuilder xml, Route route) {
+		if (!(route instanceof NetworkRoute)) {
+			throw new IllegalArgumentException("Only network routes are supported, but got "
+					+ route.getClass().getName());
+		}
+		NetworkRoute networkRoute = (NetworkRoute) route;
+		xml.append("\t\t\t\t<route type=\"links\" start_link=\"");
+		appendEscaped(xml, networkRoute.getStartLinkId().toString());
+		xml.append("\" end_link=\"");
+		appendEscaped(xml, networkRoute.getEndLinkId().toString());
+		xml.append('"');
+		appendTime(xml, "trav_time", networkRoute.getTravelTime());
+		if (!Double.isNaN(networkRoute.getDistance())) {
+			xml.append(" distance=\"").append(networkRoute.getDistance()).append('"');
+		}
+		xml.append('>');
+		appendEscaped(xml, networkRoute.getStartLinkId().toString());
+		for (Id<Link> link : networkRoute.getLinkIds()) {
+			xml.append(' ');
+			appendEscaped(xml, link.toString());
+		}
+		if (!networkRoute.getEndLinkId().equals(networkRoute.getStartLinkId())
+				|| !networkRoute.getLinkIds().isEmpty()) {
+			xml.append(' ');
+			appendEscaped(xml, networkRoute.getEndLinkId().toString());
+		}
+		xml.append("</route>\n");
+	}
+
+	private static void appendTime(StringBuilder xml, String attribute, double time) {
+		if (time == Time.UNDEFINED_TIME) {
+			return;
+		}
+		xml.append(' ').append(attribute).append("=\"").append(Time.writeTime(time)).append('"');
+	}
+
+	private static void appendEscaped(StringBuilder xml, String value) {
+		for (int index = 0; index < value.length(); index++) {
+			char character = value.charAt(index);
+			switch (character) {
+			case '&':
+				xml.append("&amp;");
+				break;
+			case '<':
+				xml.append("&lt;");
+				break;
+			case '>':
+				xml.append("&gt;");
+				break;
+			case '"':
+				xml.append("&quot;");
+				break;
+			default:
+				xml.append(character);
+			}
+		}
+	}
+}
@@ -0,0 +1,239 @@
+package de.briemla.matsim.generator;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.PopulationFactory;
+import org.matsim.core.population.routes.NetworkRoute;
+
+/**
+ * Plans of all inhabitants of a {@link City} stored column by column in
+ * primitive arrays. Each row describes one inhabitant with the indices of
+ * its activity {@link Node}s, its leave times in seconds and its mode, which
+ * takes 21 bytes per inhabitant. {@link Person}s and {@link Plan}s are only
+ * created on demand by {@link #person(int, PopulationFactory)}.
+ * <p>
+ * Rows are grouped by home {@link District} in the order of the
+ * {@link City}. Each {@link District} writes only its own rows, so
+ * {@link District}s can fill the table in parallel.
+ *
+ * @author lars
+ *
+ */
+public class PlanTable {
+
+	static final byte CAR = 0;
+	static final int SECONDS_PER_DAY = 24 * 60 * 60;
+	private static final String[] MODES = new String[] { "car" };
+	private static final String HOME = "home";
+	private static final String WORK = "work";
+
+	private final NodeCoordinates nodes;
+	private final String[] districtNames;
+	private final int[] districtOffsets;
+	private final int[] homeNode;
+	private final int[] workNode;
+	private final int[] lastNode;
+	private final int[] homeLeaveTime;
+	private final int[] workLeaveTime;
+	private final byte[] mode;
+	private InitialRoutes routes;
+
+	/**
+	 * @param nodes
+	 *            all {@link Node}s of the {@link City}, rows refer to them by
+	 *            their index
+	 * @param districtNames
+	 *            names of the home {@link District}s
+	 * @param districtOffsets
+	 *            first row of each home {@link District} followed by the
+	 *            number of rows
+	 */
+	PlanTable(NodeCoordinates nodes, String[] districtNames, int[] districtOffsets) {
+		if (districtOffsets.length != districtNames.length + 1) {
+			throw new IllegalArgumentException("Expected " + (districtNames.length + 1) + " district offsets, but got "
+					+ districtOffsets.length);
+		}
+		this.nodes = nodes;
+		this.districtNames = districtNames;
+		this.districtOffsets = districtOffsets;
+		int size = districtOffsets[districtNames.length];
+		homeNode = new int[size];
+		workNode = new int[size];
+		lastNode = new int[size];
+		homeLeaveTime = new int[size];
+		workLeaveTime = new int[size];
+		mode = new byte[size];
+	}
+
+	public int size() {
+		return homeNode.length;
+	}
+
+	/**
+	 * Store the plan of an inhabitant. A work leave time of at least
+	 * {@link #SECONDS_PER_DAY} means the inhabitant works over night, so the
+	 * plan starts and ends at work.
+	 *
+	 * @param row
+	 *            row of the inhabitant
+	 * @param home
+	 *            index of the home {@link Node}
+	 * @param work
+	 *            index of the work {@link Node}
+	 * @param last
+	 *            index of the {@link Node} of the last activity, which is at
+	 *            home or, for night workers, at work
+	 * @param homeLeave
+	 *            second of the day the inhabitant leaves home
+	 * @param workLeave
+	 *            second the inhabitant leaves work, counted from the start of
+	 *            the day the inhabitant leaves home
+	 * @param legMode
+	 *            index of the mode of all legs
+	 */
+	void set(int row, int home, int work, int last, int homeLeave, int workLeave, byte legMode) {
+		homeNode[row] = home;
+		workNode[row] = work;
+		lastNode[row] = last;
+		homeLeaveTime[row] = homeLeave;
+		workLeaveTime[row] = workLeave;
+		mode[row] = legMode;
+	}
+
+	/**
+	 * Attach routes to the legs of all {@link Person}s created afterwards.
+	 *
+	 * @param routes
+	 *            routes of the legs of this table
+	 */
+	void setRoutes(InitialRoutes routes) {
+		this.routes = routes;
+	}
+
+	byte mode(int row) {
+		return mode[row];
+	}
+
+	/**
+	 * @param row
+	 *            row of the inhabitant
+	 * @param activity
+	 *            number of the activity inside the plan
+	 * @return {@link Link} of the activity or <code>null</code> if the
+	 *         activities are not placed on {@link Link}s
+	 */
+	Id<Link> activityLink(int row, int activity) {
+		return nodes.link(activityNode(row, activity));
+	}
+
+	private int activityNode(int row, int activity) {
+		boolean nightShift = workLeaveTime[row] >= SECONDS_PER_DAY;
+		switch (activity) {
+		case 0:
+			return nightShift ? workNode[row] : homeNode[row];
+		case 1:
+			return nightShift ? homeNode[row] : workNode[row];
+		case 2:
+			return lastNode[row];
+		default:
+			throw new IndexOutOfBoundsException("Plans have three activities, but got activity " + activity);
+		}
+	}
+
+	/**
+	 * Create the {@link Person} of all rows and pass them to the consumer in
+	 * order. Only one {@link Person} is created at a time.
+	 *
+	 * @param factory
+	 *            {@link PopulationFactory} to create {@link Person}s and
+	 *            {@link Plan}s with
+	 * @param consumer
+	 *            receives all {@link Person}s
+	 */
+	public void forEachPerson(PopulationFactory factory, Consumer<Person> consumer) {
+		for (int district = 0; district < districtNames.length; district++) {
+			for (int row = districtOffsets[district]; row < districtOffsets[district + 1]; row++) {
+				consumer.accept(createPerson(district, row, factory));
+			}
+		}
+	}
+
+	/**
+	 * Create the {@link Person} of a single row.
+	 *
+	 * @param row
+	 *            row of the inhabitant
+	 * @param factory
+	 *            {@link PopulationFactory} to create {@link Person}s and
+	 *            {@link Plan}s with
+	 * @return new {@link Person} with a single {@link Plan}
+	 */
+	public Person person(int row, PopulationFactory factory) {
+		if (row < 0 || row >= size()) {
+			throw new IndexOutOfBoundsException("Row " + row + " outside of table with " + size() + " rows");
+		}
+		int district = Arrays.binarySearch(districtOffsets, row);
+		if (district < 0) {
+			district = -district - 2;
+		}
+		while (districtOffsets[district + 1] == row) {
+			district++;
+		}
+		return createPerson(district, row, factory);
+	}
+
+	/**
+	 * The id is derived from the name of the home {@link District} and the
+	 * number of the inhabitant inside this {@link District}.
+	 */
+	private Person createPerson(int district, int row, PopulationFactory factory) {
+		Id<Person> id = Id.createPersonId(districtNames[district] + (row - districtOffsets[district]));
+		Person person = factory.createPerson(id);
+		person.addPlan(createPlan(row, factory));
+		return person;
+	}
+
+	private Plan createPlan(int row, PopulationFactory factory) {
+		Plan plan = factory.createPlan();
+		String legMode = MODES[mode[row]];
+		if (workLeaveTime[row] >= SECONDS_PER_DAY) {
+			plan.addActivity(activity(factory, WORK, workNode[row], workLeaveTime[row] - SECONDS_PER_DAY));
+			plan.addLeg(leg(factory, legMode, row, 0));
+			plan.addActivity(activity(factory, HOME, homeNode[row], homeLeaveTime[row]));
+			plan.addLeg(leg(factory, legMode, row, 1));
+			plan.addActivity(nodes.activity(factory, WORK, lastNode[row]));
+			return plan;
+		}
+		plan.addActivity(activity(factory, HOME, homeNode[row], homeLeaveTime[row]));
+		plan.addLeg(leg(factory, legMode, row, 0));
+		plan.addActivity(activity(factory, WORK, workNode[row], workLeaveTime[row]));
+		plan.addLeg(leg(factory, legMode, row, 1));
+		plan.addActivity(nodes.activity(factory, HOME, lastNode[row]));
+		return plan;
+	}
+
+	private Leg leg(PopulationFactory factory, String legMode, int row, int leg) {
+		Leg created = factory.createLeg(legMode);
+		if (routes != null) {
+			NetworkRoute route = routes.route(row, leg);
+			if (route != null) {
+				created.setRoute(route);
+			}
+		}
+		return created;
+	}
+
+	private Activity activity(PopulationFactory factory, String type, int node, int endTime) {
+		Activity activity = nodes.activity(factory, type, node);
+		activity.setEndTime(endTime);
+		return activity;
+	}
+}
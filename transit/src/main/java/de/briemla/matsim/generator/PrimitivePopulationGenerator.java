@@ -1,22 +1,26 @@
 package de.briemla.matsim.generator;
 
 import java.io.File;
-import java.time.Duration;
-import java.time.LocalTime;
-import java.time.format.DateTimeFormatter;
+import java.math.BigDecimal;
+import java.nio.file.Paths;
+import java.util.Arrays;
 
 import org.matsim.api.core.v01.Scenario;
 import org.matsim.api.core.v01.network.Network;
 import org.matsim.api.core.v01.network.Node;
 import org.matsim.api.core.v01.population.Person;
 import org.matsim.api.core.v01.population.Population;
-import org.matsim.api.core.v01.population.PopulationWriter;
 import org.matsim.core.api.internal.MatsimWriter;
 import org.matsim.core.config.Config;
 import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.config.ConfigWriter;
 import org.matsim.core.controler.Controler;
+import org.matsim.core.population.PopulationWriter;
 import org.matsim.core.scenario.ScenarioUtils;
 
+import de.briemla.matsim.instrumentation.PhaseTimer;
+import de.briemla.matsim.instrumentation.PhaseTimer.Phase;
+
 /**
  * Create a {@link Population} where a {@link Person} is added at each
  * {@link Node}. The plan for each person contains the home {@link Node} as
@@ -28,28 +32,202 @@ import org.matsim.core.scenario.ScenarioUtils;
 public class PrimitivePopulationGenerator {
 
 	private static final String CONFIG_FILE = "./input/config_population_karlsruhe.xml";
-	private static final String POPULATION_FILE = "./input/population.xml";
+	private static final String KML_FILE = "./input/doc.kml";
+	/**
+	 * Command line option to write the {@link Person}s while they are created
+	 * instead of keeping the whole {@link Population} in memory.
+	 */
+	private static final String STREAMING_OPTION = "--streaming";
+	/**
+	 * Command line option to serialize and compress the {@link Population}
+	 * with several threads.
+	 */
+	private static final String PARALLEL_OUTPUT_OPTION = "--parallel-output";
+	/**
+	 * Command line option to create only a sample of the inhabitants, given
+	 * as fraction or percentage, e.g. <code>--sample-rate=10%</code>.
+	 */
+	private static final String SAMPLE_RATE_OPTION = "--sample-rate=";
+	/**
+	 * Command line option to route all car legs before they are written, so
+	 * the first iteration of the simulation does not need to route them.
+	 */
+	private static final String INITIAL_ROUTES_OPTION = "--initial-routes";
+	private static final String SAMPLE_CONFIG_PREFIX = "./input/config_population_karlsruhe_";
+	private static final String SAMPLE_POPULATION_PREFIX = "./input/population_";
+	private static final String SAMPLE_SUFFIX = "pct.xml";
 
 	private final Config config;
 	private final Scenario scenario;
 	private final Network network;
 	private final Population population;
 	private final boolean clearPopulation = true;
+	private final boolean streaming;
+	private final boolean parallelOutput;
+	private final boolean initialRoutes;
+	private final PhaseTimer timer;
 
-	public PrimitivePopulationGenerator() {
+	/**
+	 * @param streaming
+	 *            <code>true</code> to write each {@link Person} as soon as it
+	 *            is created. Only the {@link Network} is loaded in this mode,
+	 *            because the existing {@link Population} is replaced anyway.
+	 * @param parallelOutput
+	 *            <code>true</code> to write the {@link Population} with the
+	 *            {@link ParallelPopulationWriter}
+	 * @param initialRoutes
+	 *            <code>true</code> to write the {@link Population} with car
+	 *            routes of the least free speed travel time
+	 * @param timer
+	 *            measures the phases of the generation
+	 */
+	public PrimitivePopulationGenerator(boolean streaming, boolean parallelOutput, boolean initialRoutes,
+			PhaseTimer timer) {
+		this.streaming = streaming;
+		this.parallelOutput = parallelOutput;
+		this.initialRoutes = initialRoutes;
+		this.timer = timer;
+		Phase load = timer.start("Load scenario");
 		config = ConfigUtils.loadConfig(CONFIG_FILE);
-		scenario = ScenarioUtils.loadScenario(config);
+		if (streaming) {
+			scenario = ScenarioUtils.createScenario(config);
+			NetworkSnapshot.loadNetwork(scenario, config.network().getInputFile());
+		} else {
+			scenario = NetworkSnapshot.loadScenario(config);
+		}
 		network = scenario.getNetwork();
 		population = scenario.getPopulation();
 		if (clearPopulation) {
 			population.getPersons().clear();
 		}
+		load.end();
+	}
+
+	/**
+	 * A sample of the population only needs a part of the road capacity to
+	 * produce the same congestion. The capacity factors of the simulation are
+	 * set to the sample rate and the {@link Config} is pointed to the
+	 * population file of this sample. The resulting {@link Config} is written
+	 * next to the original one, so later runs on the same sample can use it.
+	 * It must only be written once the population exists, otherwise it would
+	 * refer to an outdated sample.
+	 *
+	 * @param sampleRate
+	 *            fraction of the real population which has been created
+	 */
+	private void writeSampleConfig(double sampleRate) {
+		config.qsim().setFlowCapFactor(sampleRate);
+		config.qsim().setStorageCapFactor(sampleRate);
+		config.plans().setInputFile(samplePopulationFile(sampleRate));
+		new ConfigWriter(config).write(sampleConfigFile(sampleRate));
+	}
+
+	static String sampleConfigFile(double sampleRate) {
+		return SAMPLE_CONFIG_PREFIX + percent(sampleRate) + SAMPLE_SUFFIX;
+	}
+
+	/**
+	 * Each sample gets its own population file, so a sample config never
+	 * simulates a population of another sample rate.
+	 */
+	static String samplePopulationFile(double sampleRate) {
+		return SAMPLE_POPULATION_PREFIX + percent(sampleRate) + SAMPLE_SUFFIX;
+	}
+
+	private static String percent(double sampleRate) {
+		return BigDecimal.valueOf(sampleRate).movePointRight(2).stripTrailingZeros().toPlainString();
 	}
 
 	private void createSetup(Statistic statistics) {
+		String populationFile = samplePopulationFile(statistics.getSampleRate());
+		Phase split = timer.start("Split network");
 		City karlsruhe = splitNetwork(network, statistics);
-		karlsruhe.createPopulation(population);
-		savePopulation(karlsruhe);
+		split.end();
+		Phase links = timer.start("Index links");
+		karlsruhe.snapActivitiesTo(network);
+		links.end();
+		if (streaming) {
+			streamPopulation(karlsruhe, populationFile);
+		} else {
+			createPopulation(karlsruhe);
+			savePopulation(karlsruhe, populationFile);
+		}
+		writeSampleConfig(statistics.getSampleRate());
+	}
+
+	/**
+	 * Create the inhabitants of the {@link City} and write each of them to the
+	 * population file right away. The file is compressed if its name ends with
+	 * <code>.gz</code>. The worker matrices are written afterwards, because the
+	 * {@link District}s keep their counts.
+	 *
+	 * @param karlsruhe
+	 * @param populationFile
+	 *            file of the created sample
+	 */
+	private void streamPopulation(City karlsruhe, String populationFile) {
+		int threads = numberOfThreads();
+		Phase creation = timer.start("Population creation and writing with " + threads + " threads");
+		if (parallelOutput) {
+			PlanTable table = createPlanTable(karlsruhe, threads);
+			new ParallelPopulationWriter(threads).write(table, population.getFactory(), Paths.get(populationFile));
+		} else {
+			writePersonByPerson(karlsruhe, threads, populationFile);
+		}
+		creation.end();
+		karlsruhe.writeMatricesTo(new File("input"));
+	}
+
+	private void writePersonByPerson(City karlsruhe, int threads, String populationFile) {
+		PopulationWriter writer = new PopulationWriter(population, network);
+		writer.startStreaming(populationFile);
+		try {
+			createPlanTable(karlsruhe, threads).forEachPerson(population.getFactory(), writer::writePerson);
+		} finally {
+			writer.closeStreaming();
+		}
+	}
+
+	/**
+	 * Create the inhabitants of the {@link City} reproducibly from the global
+	 * random seed of the {@link Config}.
+	 *
+	 * @param karlsruhe
+	 */
+	private void createPopulation(City karlsruhe) {
+		int threads = numberOfThreads();
+		Phase creation = timer.start("Population creation with " + threads + " threads");
+		createPlanTable(karlsruhe, threads).forEachPerson(population.getFactory(), population::addPerson);
+		creation.end();
+	}
+
+	/**
+	 * Create the plans of all inhabitants and route their car legs, if
+	 * requested.
+	 *
+	 * @param karlsruhe
+	 * @param threads
+	 *            number of threads creating plans and routes
+	 * @return plans of all inhabitants
+	 */
+	private PlanTable createPlanTable(City karlsruhe, int threads) {
+		PlanTable table = karlsruhe.createPlanTable(config.global().getRandomSeed(), threads);
+		if (initialRoutes) {
+			Phase routing = timer.start("Initial routing with " + threads + " threads");
+			InitialRoutes routes = InitialRoutes.compute(table, network, threads);
+			table.setRoutes(routes);
+			routing.end();
+			System.out.println("Routed " + routes.pairs() + " node pairs from " + routes.origins() + " origins");
+		}
+		return table;
+	}
+
+	private int numberOfThreads() {
+		int threads = config.global().getNumberOfThreads();
+		if (threads > 0) {
+			return threads;
+		}
+		return Runtime.getRuntime().availableProcessors();
 	}
 
 	/**
@@ -62,20 +240,28 @@ public class PrimitivePopulationGenerator {
 	 *         {@link Node}s from the {@link Network}.
 	 */
 	private static City splitNetwork(Network network, Statistic statistic) {
-		DistrictGenerator generator = new DistrictGenerator(network, statistic);
+		DistrictGenerator generator = new DistrictGenerator(network, statistic, new File(KML_FILE));
 		return generator.createCity();
 	}
 
 	/**
-	 * Store population in {@link PrimitivePopulationGenerator#POPULATION_FILE}.
+	 * Store population in the population file of the sample.
 	 *
 	 * @param karlsruhe
+	 * @param populationFile
+	 *            file of the created sample
 	 */
-	private void savePopulation(City karlsruhe) {
-		MatsimWriter popWriter = new PopulationWriter(population, network);
-		popWriter.write(POPULATION_FILE);
+	private void savePopulation(City karlsruhe, String populationFile) {
+		Phase write = timer.start("Write population");
+		if (parallelOutput) {
+			new ParallelPopulationWriter(numberOfThreads()).write(population, Paths.get(populationFile));
+		} else {
+			MatsimWriter popWriter = new PopulationWriter(population, network);
+			popWriter.write(populationFile);
+		}
 		File inputDirectory = new File("input");
 		karlsruhe.writeMatricesTo(inputDirectory);
+		write.end();
 	}
 
 	private void startSimulation() {
@@ -84,25 +270,42 @@ public class PrimitivePopulationGenerator {
 	}
 
 	public static void main(String[] args) {
-		LocalTime start = LocalTime.now();
-		Statistic statistic = Statistic.karlsruhe();
+		PhaseTimer timer = new PhaseTimer(PrimitivePopulationGenerator.class.getSimpleName());
+		Phase overall = timer.start("Creation and simulation");
+		Phase creation = timer.start("Creation");
+		Statistic statistic = Statistic.karlsruhe(sampleRate(args));
 
-		PrimitivePopulationGenerator generator = new PrimitivePopulationGenerator();
+		boolean streaming = Arrays.asList(args).contains(STREAMING_OPTION);
+		boolean parallelOutput = Arrays.asList(args).contains(PARALLEL_OUTPUT_OPTION);
+		boolean initialRoutes = Arrays.asList(args).contains(INITIAL_ROUTES_OPTION);
+		PrimitivePopulationGenerator generator = new PrimitivePopulationGenerator(streaming, parallelOutput,
+				initialRoutes, timer);
 		generator.createSetup(statistic);
-		LocalTime afterSetup = LocalTime.now();
+		creation.end();
 
+		Phase simulation = timer.start("Simulation");
 		generator.startSimulation();
+		simulation.end();
+		overall.end();
 
-		LocalTime end = LocalTime.now();
-		Duration setup = Duration.between(start, afterSetup);
-		Duration simulation = Duration.between(afterSetup, end);
-		Duration complete = Duration.between(start, end);
+		timer.finish(System.out);
+	}
 
-		LocalTime simulationTime = LocalTime.ofSecondOfDay(simulation.getSeconds());
+	/**
+	 * @return sample rate given on the command line as fraction or percentage
+	 *         or {@link Statistic#DEFAULT_SAMPLE_RATE}
+	 */
+	static double sampleRate(String[] args) {
+		return Arrays.stream(args).filter(arg -> arg.startsWith(SAMPLE_RATE_OPTION)).findFirst()
+				.map(arg -> parseSampleRate(arg.substring(SAMPLE_RATE_OPTION.length())))
+				.orElse(Statistic.DEFAULT_SAMPLE_RATE);
+	}
 
-		System.out.println("Creation and simulation took: " + complete.getSeconds() + "s");
-		System.out.println("Creation took: " + setup.getSeconds() + "s");
-		System.out.println("Simulation took: " + simulationTime.format(DateTimeFormatter.ISO_TIME));
+	private static double parseSampleRate(String value) {
+		if (value.endsWith("%")) {
+			return Double.parseDouble(value.substring(0, value.length() - 1)) / 100.0;
+		}
+		return Double.parseDouble(value);
 	}
 
 }
@@ -0,0 +1,194 @@
+package de.briemla.matsim.generator;
+
+import java.util.Arrays;
+
+import org.matsim.api.core.v01.network.Link;
+
+import de.briemla.matsim.converter.CompactNetwork;
+
+/**
+ * Dijkstra search from a single origin node over a {@link CompactNetwork}
+ * with a fixed cost per {@link Link}. All working arrays are allocated once
+ * and reused for every origin, so each thread should own its own instance.
+ * Nodes with equal cost leave the queue in order of their index, so the tree
+ * of an origin does not depend on earlier searches.
+ *
+ * @author lars
+ *
+ */
+class ShortestPathTree {
+
+	private final CompactNetwork network;
+	private final double[] linkCost;
+	private final double[] cost;
+	private final int[] previousLink;
+	/**
+	 * Search in which the cost of a node has been set. Nodes of earlier
+	 * searches count as unreached, so the arrays need no reset.
+	 */
+	private final int[] reachedIn;
+	/**
+	 * Search in which a node has been settled. The negative search marks
+	 * destinations of the current search, which are not settled yet.
+	 */
+	private final int[] settledIn;
+	private int search;
+	private double[] queueCost;
+	private int[] queueNode;
+	private int queueSize;
+
+	/**
+	 * @param network
+	 *            topology to search
+	 * @param linkCost
+	 *            cost of each {@link Link} by index, infinite for unusable
+	 *            {@link Link}s
+	 */
+	ShortestPathTree(CompactNetwork network, double[] linkCost) {
+		this.network = network;
+		this.linkCost = linkCost;
+		cost = new double[network.nodeCount()];
+		previousLink = new int[network.nodeCount()];
+		reachedIn = new int[network.nodeCount()];
+		settledIn = new int[network.nodeCount()];
+		search = 0;
+		queueCost = new double[Math.max(16, network.nodeCount())];
+		queueNode = new int[queueCost.length];
+	}
+
+	/**
+	 * Build the tree from the origin until all destinations are settled or
+	 * no further node is reachable.
+	 *
+	 * @param origin
+	 *            index of the origin node
+	 * @param destinations
+	 *            indices of the nodes whose paths are needed
+	 */
+	void search(int origin, int[] destinations) {
+		search++;
+		queueSize = 0;
+		int open = 0;
+		for (int destination : destinations) {
+			if (settledIn[destination] != -search) {
+				settledIn[destination] = -search;
+				open++;
+			}
+		}
+		reach(origin, 0.0, -1);
+		while (queueSize > 0 && open > 0) {
+			int node = poll();
+			if (settledIn[node] == search) {
+				continue;
+			}
+			if (settledIn[node] == -search) {
+				open--;
+			}
+			settledIn[node] = search;
+			for (int position = network.outStart(node); position < network.outStart(node + 1); position++) {
+				int link = network.outLink(position);
+				int next = network.toNode(link);
+				double nextCost = cost[node] + linkCost[link];
+				if (settledIn[next] != search && nextCost < Double.POSITIVE_INFINITY
+						&& (reachedIn[next] != search || nextCost < cost[next])) {
+					reach(next, nextCost, link);
+				}
+			}
+		}
+	}
+
+	private void reach(int node, double nodeCost, int link) {
+		reachedIn[node] = search;
+		cost[node] = nodeCost;
+		previousLink[node] = link;
+		offer(node, nodeCost);
+	}
+
+	/**
+	 * @return <code>true</code> if the last search found a path to the node
+	 */
+	boolean isSettled(int node) {
+		return settledIn[node] == search;
+	}
+
+	/**
+	 * @return cost of the path to the node found by the last search
+	 */
+	double cost(int node) {
+		return cost[node];
+	}
+
+	/**
+	 * @return indices of the {@link Link}s from the origin of the last search
+	 *         to the node in driving order, or <code>null</code> if the node
+	 *         has not been reached
+	 */
+	int[] path(int node) {
+		if (!isSettled(node)) {
+			return null;
+		}
+		int length = 0;
+		for (int current = node; previousLink[current] >= 0; current = network.fromNode(previousLink[current])) {
+			length++;
+		}
+		int[] path = new int[length];
+		for (int current = node; previousLink[current] >= 0; current = network.fromNode(previousLink[current])) {
+			path[--length] = previousLink[current];
+		}
+		return path;
+	}
+
+	/**
+	 * Binary heap with duplicate entries instead of decrease key. Outdated
+	 * entries are skipped when they are polled.
+	 */
+	private void offer(int node, double nodeCost) {
+		if (queueSize == queueNode.length) {
+			queueNode = Arrays.copyOf(queueNode, 2 * queueSize);
+			queueCost = Arrays.copyOf(queueCost, 2 * queueSize);
+		}
+		int position = queueSize++;
+		while (position > 0) {
+			int parent = (position - 1) >>> 1;
+			if (!before(nodeCost, node, queueCost[parent], queueNode[parent])) {
+				break;
+			}
+			queueCost[position] = queueCost[parent];
+			queueNode[position] = queueNode[parent];
+			position = parent;
+		}
+		queueCost[position] = nodeCost;
+		queueNode[position] = node;
+	}
+
+	private int poll() {
+		int first = queueNode[0];
+		queueSize--;
+		double lastCost = queueCost[queueSize];
+		int lastNode = queueNode[queueSize];
+		int position = 0;
+		while (true) {
+			int child = 2 * position + 1;
+			if (child >= queueSize) {
+				break;
+			}
+			if (child + 1 < queueSize && before(queueCost[child + 1], queueNode[child + 1], queueCost[child],
+					queueNode[child])) {
+				child++;
+			}
+			if (!before(queueCost[child], queueNode[child], lastCost, lastNode)) {
+				break;
+			}
+			queueCost[position] = queueCost[child];
+			queueNode[position] = queueNode[child];
+			position = child;
+		}
+		queueCost[position] = lastCost;
+		queueNode[position] = lastNode;
+		return first;
+	}
+
+	private static boolean before(double cost, int node, double otherCost, int otherNode) {
+		return cost < otherCost || (cost == otherCost && node < otherNode);
+	}
+}
@@ -1,58 +1,106 @@
 package de.briemla.matsim.generator;
 
+import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.util.HashMap;
 import java.util.Map;
 
 public class Statistic {
 
-	private static final int SCALE_FACTOR = 2;
+	/**
+	 * Fraction of the real inhabitants and workplaces used, if nothing else is
+	 * requested.
+	 */
+	public static final double DEFAULT_SAMPLE_RATE = 0.5;
 
 	public static Statistic karlsruhe() {
-		Statistic karlruhe = new Statistic();
-		karlruhe.add(newCensus("Innenstadt Ost", 4692, 1457));
-		karlruhe.add(newCensus("Innenstadt West", 7608, 2187));
-		karlruhe.add(newCensus("Südstadt", 13469, 1875));
-		karlruhe.add(newCensus("Südweststadt", 13792, 1744));
-		karlruhe.add(newCensus("Weststadt", 13848, 1630));
-		karlruhe.add(newCensus("Nordweststadt", 7072, 237));
-		karlruhe.add(newCensus("Oststadt", 15254, 11489));
-		karlruhe.add(newCensus("Mühlburg", 10711, 25168));
-		karlruhe.add(newCensus("Daxlanden", 6995, 17598));
-		karlruhe.add(newCensus("Knielingen", 6319, 51442));
-		karlruhe.add(newCensus("Grünwinkel", 6525, 7716));
-		karlruhe.add(newCensus("Oberreut", 5818, 2848));
-		karlruhe.add(newCensus("Beiertheim-Bulach", 4470, 2159));
-		karlruhe.add(newCensus("Weiherfeld-Dammerstock", 3458, 106));
-		karlruhe.add(newCensus("Rüppurr", 6340, 1476));
-		karlruhe.add(newCensus("Waldstadt", 7289, 290));
-		karlruhe.add(newCensus("Rintheim", 3551, 7783));
-		karlruhe.add(newCensus("Hagsfeld", 4810, 16677));
-		karlruhe.add(newCensus("Durlach", 18716, 41673));
-		karlruhe.add(newCensus("Grötzingen", 5606, 2222));
-		karlruhe.add(newCensus("Stupferich", 1735, 1365));
-		karlruhe.add(newCensus("Hohenwettersbach", 1835, 868));
-		karlruhe.add(newCensus("Wolfartsweier", 2047, 421));
-		karlruhe.add(newCensus("Grünwettersbach", 2416, 1267));
-		karlruhe.add(newCensus("Palmbach", 1187, 289));
-		karlruhe.add(newCensus("Neureut", 11682, 14901));
-		karlruhe.add(newCensus("Nordstadt", 6506, 1553));
+		return karlsruhe(DEFAULT_SAMPLE_RATE);
+	}
+
+	/**
+	 * @param sampleRate
+	 *            fraction of the real inhabitants and workplaces of each
+	 *            {@link District}, greater than 0 and at most 1
+	 * @return census of Karlsruhe scaled down to the sample
+	 */
+	public static Statistic karlsruhe(double sampleRate) {
+		if (sampleRate <= 0.0 || sampleRate > 1.0) {
+			throw new IllegalArgumentException("Sample rate must be in (0, 1], but was " + sampleRate);
+		}
+		Statistic karlruhe = new Statistic(sampleRate);
+		karlruhe.add(karlruhe.newCensus("Innenstadt Ost", 4692, 1457));
+		karlruhe.add(karlruhe.newCensus("Innenstadt West", 7608, 2187));
+		karlruhe.add(karlruhe.newCensus("Südstadt", 13469, 1875));
+		karlruhe.add(karlruhe.newCensus("Südweststadt", 13792, 1744));
+		karlruhe.add(karlruhe.newCensus("Weststadt", 13848, 1630));
+		karlruhe.add(karlruhe.newCensus("Nordweststadt", 7072, 237));
+		karlruhe.add(karlruhe.newCensus("Oststadt", 15254, 11489));
+		karlruhe.add(karlruhe.newCensus("Mühlburg", 10711, 25168));
+		karlruhe.add(karlruhe.newCensus("Daxlanden", 6995, 17598));
+		karlruhe.add(karlruhe.newCensus("Knielingen", 6319, 51442));
+		karlruhe.add(karlruhe.newCensus("Grünwinkel", 6525, 7716));
+		karlruhe.add(karlruhe.newCensus("Oberreut", 5818, 2848));
+		karlruhe.add(karlruhe.newCensus("Beiertheim-Bulach", 4470, 2159));
+		karlruhe.add(karlruhe.newCensus("Weiherfeld-Dammerstock", 3458, 106));
+		karlruhe.add(karlruhe.newCensus("Rüppurr", 6340, 1476));
+		karlruhe.add(karlruhe.newCensus("Waldstadt", 7289, 290));
+		karlruhe.add(karlruhe.newCensus("Rintheim", 3551, 7783));
+		karlruhe.add(karlruhe.newCensus("Hagsfeld", 4810, 16677));
+		karlruhe.add(karlruhe.newCensus("Durlach", 18716, 41673));
+		karlruhe.add(karlruhe.newCensus("Grötzingen", 5606, 2222));
+		karlruhe.add(karlruhe.newCensus("Stupferich", 1735, 1365));
+		karlruhe.add(karlruhe.newCensus("Hohenwettersbach", 1835, 868));
+		karlruhe.add(karlruhe.newCensus("Wolfartsweier", 2047, 421));
+		karlruhe.add(karlruhe.newCensus("Grünwettersbach", 2416, 1267));
+		karlruhe.add(karlruhe.newCensus("Palmbach", 1187, 289));
+		karlruhe.add(karlruhe.newCensus("Neureut", 11682, 14901));
+		karlruhe.add(karlruhe.newCensus("Nordstadt", 6506, 1553));
 		return karlruhe;
 	}
 
-	private static Census newCensus(String name, int inhabitants, int workplaces) {
-		return new Census(name, inhabitants / SCALE_FACTOR, workplaces / SCALE_FACTOR);
+	private Census newCensus(String name, int inhabitants, int workplaces) {
+		return new Census(name, sample(inhabitants, sampleRate), sample(workplaces, sampleRate));
+	}
+
+	/**
+	 * Round the sampled count half up. The product is calculated in decimal,
+	 * because e.g. <code>100 * 0.29</code> is slightly below 29 as double.
+	 *
+	 * @param count
+	 *            real number of inhabitants or workplaces
+	 * @param sampleRate
+	 *            fraction of the real count
+	 * @return sampled count
+	 */
+	static int sample(int count, double sampleRate) {
+		return BigDecimal.valueOf(count).multiply(BigDecimal.valueOf(sampleRate)).setScale(0, RoundingMode.HALF_UP)
+				.intValueExact();
 	}
 
 	private final Map<String, Census> districts;
+	private final double sampleRate;
 
 	public Statistic() {
+		this(1.0);
+	}
+
+	private Statistic(double sampleRate) {
 		districts = new HashMap<String, Census>();
+		this.sampleRate = sampleRate;
 	}
 
-	private void add(Census census) {
+	void add(Census census) {
 		districts.put(census.getName(), census);
 	}
 
+	/**
+	 * @return fraction of the real population described by this
+	 *         {@link Statistic}
+	 */
+	public double getSampleRate() {
+		return sampleRate;
+	}
+
 	public Census findCensus(String districtName) {
 		if (districts.containsKey(districtName)) {
 			return districts.get(districtName);
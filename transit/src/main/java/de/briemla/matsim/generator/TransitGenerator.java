@@ -1,7 +1,7 @@
 package de.briemla.matsim.generator;
 
+import java.io.File;
 import java.time.Duration;
-import java.time.LocalTime;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -20,7 +20,6 @@ import org.matsim.core.config.ConfigUtils;
 import org.matsim.core.controler.Controler;
 import org.matsim.core.population.routes.NetworkRoute;
 import org.matsim.core.population.routes.RouteUtils;
-import org.matsim.core.scenario.ScenarioUtils;
 import org.matsim.core.utils.geometry.CoordinateTransformation;
 import org.matsim.core.utils.geometry.transformations.TransformationFactory;
 import org.matsim.pt.transitSchedule.api.Departure;
@@ -34,6 +33,9 @@ import org.matsim.pt.transitSchedule.api.TransitStopFacility;
 import org.matsim.vehicles.Vehicle;
 import org.matsim.vehicles.Vehicles;
 
+import de.briemla.matsim.instrumentation.PhaseTimer;
+import de.briemla.matsim.instrumentation.PhaseTimer.Phase;
+
 /**
  * Create a {@link Population} where a {@link Person} is added at each
  * {@link Node}. The plan for each person contains the home {@link Node} as
@@ -66,7 +68,7 @@ public class TransitGenerator {
 
 	public TransitGenerator() {
 		config = ConfigUtils.loadConfig(CONFIG_FILE);
-		scenario = ScenarioUtils.loadScenario(config);
+		scenario = NetworkSnapshot.loadScenario(config);
 		network = scenario.getNetwork();
 		transitSchedule = scenario.getTransitSchedule();
 		transitScheduleFactory = transitSchedule.getFactory();
@@ -268,6 +270,7 @@ public class TransitGenerator {
 		popWriter.writeFile(TRANSIT_SCHEDULE_FILE);
 		NetworkWriter networkWriter = new NetworkWriter(network);
 		networkWriter.write(NETWORK_FILE);
+		new NetworkSnapshot(new File(NETWORK_FILE)).write(network);
 	}
 
 	private void startSimulation() {
@@ -276,22 +279,20 @@ public class TransitGenerator {
 	}
 
 	public static void main(String[] args) {
-		LocalTime start = LocalTime.now();
+		PhaseTimer timer = new PhaseTimer(TransitGenerator.class.getSimpleName());
+		Phase overall = timer.start("Creation and simulation");
+		Phase creation = timer.start("Creation");
 
 		TransitGenerator generator = new TransitGenerator();
 		// generator.createSetup();
-		LocalTime afterSetup = LocalTime.now();
+		creation.end();
 
+		Phase simulation = timer.start("Simulation");
 		generator.startSimulation();
+		simulation.end();
+		overall.end();
 
-		LocalTime end = LocalTime.now();
-		Duration setup = Duration.between(start, afterSetup);
-		Duration simulation = Duration.between(afterSetup, end);
-		Duration complete = Duration.between(start, end);
-
-		System.out.println("Creation and simulation took: " + complete.getSeconds() + "s");
-		System.out.println("Creation took: " + setup.getSeconds() + "s");
-		System.out.println("Simulation took: " + simulation.getSeconds() + "s");
+		timer.finish(System.out);
 	}
 
 }
@@ -1,12 +1,13 @@
 package de.briemla.matsim.generator;
 
+import java.nio.file.Paths;
 import java.time.Duration;
-import java.time.LocalTime;
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.SplittableRandom;
 
-import org.matsim.api.core.v01.Coord;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.network.Link;
 import org.matsim.api.core.v01.network.Network;
 import org.matsim.api.core.v01.network.Node;
 import org.matsim.api.core.v01.population.Activity;
@@ -14,15 +15,17 @@ import org.matsim.api.core.v01.population.Person;
 import org.matsim.api.core.v01.population.Plan;
 import org.matsim.api.core.v01.population.Population;
 import org.matsim.api.core.v01.population.PopulationFactory;
-import org.matsim.api.core.v01.population.PopulationWriter;
-import org.matsim.core.api.internal.MatsimWriter;
 import org.matsim.core.config.Config;
 import org.matsim.core.config.ConfigUtils;
 import org.matsim.core.controler.Controler;
+import org.matsim.core.population.PopulationWriter;
 import org.matsim.core.scenario.ScenarioUtils;
 import org.matsim.core.utils.geometry.CoordinateTransformation;
 import org.matsim.core.utils.geometry.transformations.TransformationFactory;
 
+import de.briemla.matsim.instrumentation.PhaseTimer;
+import de.briemla.matsim.instrumentation.PhaseTimer.Phase;
+
 /**
  * Create a {@link Population} where a {@link Person} is added at each
  * {@link Node}. The plan for each person contains the home {@link Node} as
@@ -36,6 +39,12 @@ public class TransitPopulationGenerator {
 	private static final String POPULATION_FILE = "./input/population.xml";
 	private static final Duration MORNING_LEAVE_TIME = Duration.ofHours(6);
 	private static final Duration WORK_LEAVE_TIME = Duration.ofHours(16);
+	/**
+	 * Command line option to serialize and compress the {@link Population}
+	 * with several threads.
+	 */
+	private static final String PARALLEL_OUTPUT_OPTION = "--parallel-output";
+	private static final long GOLDEN_RATIO = 0x9E3779B97F4A7C15L;
 
 	/*
 	 * We enter coordinates in the WGS84 reference system, but we want them to
@@ -50,17 +59,30 @@ public class TransitPopulationGenerator {
 	private final Network network;
 	private final Population population;
 	private final PopulationFactory populationFactory;
-	private final boolean clearPopulation = true;
+	private final boolean parallelOutput;
+	private final PhaseTimer timer;
 
-	public TransitPopulationGenerator() {
+	/**
+	 * Only the {@link Network} is loaded, because the {@link Population} is
+	 * replaced anyway and written while it is created.
+	 *
+	 * @param parallelOutput
+	 *            <code>true</code> to write the {@link Population} with the
+	 *            {@link ParallelPopulationWriter}
+	 * @param timer
+	 *            measures the phases of the generation
+	 */
+	public TransitPopulationGenerator(boolean parallelOutput, PhaseTimer timer) {
+		this.parallelOutput = parallelOutput;
+		this.timer = timer;
+		Phase load = timer.start("Load network");
 		config = ConfigUtils.loadConfig(CONFIG_FILE);
-		scenario = ScenarioUtils.loadScenario(config);
+		scenario = ScenarioUtils.createScenario(config);
+		NetworkSnapshot.loadNetwork(scenario, config.network().getInputFile());
 		network = scenario.getNetwork();
 		population = scenario.getPopulation();
-		if (clearPopulation) {
-			population.getPersons().clear();
-		}
 		populationFactory = population.getFactory();
+		load.end();
 	}
 
 	private void createSetup() {
@@ -68,127 +90,156 @@ public class TransitPopulationGenerator {
 	}
 
 	/**
-	 * Create a person at each {@link Node}
+	 * Create a person at each {@link Node} and write it to
+	 * {@link TransitPopulationGenerator#POPULATION_FILE} right away. The
+	 * {@link Node}s and their nearest {@link Link}s are indexed once,
+	 * afterwards each {@link Person} is created in constant time from its
+	 * index alone, so the {@link Person}s can be created by several threads
+	 * and do not depend on their number.
 	 */
 	private void createPopulation() {
-		// network.getNodes().values().stream().forEach(this::createPerson);
-		savePopulation();
+		Phase index = timer.start("Index nodes and links");
+		NodeCoordinates nodes = NodeCoordinates.of(network.getNodes().values())
+				.withNearestLinks(LinkIndex.of(network));
+		index.end();
+		long seed = config.global().getRandomSeed();
+		int threads = numberOfThreads();
+		Phase creation = timer.start("Population creation and writing with " + threads + " threads");
+		if (parallelOutput) {
+			new ParallelPopulationWriter(threads).write(nodes.size(),
+					node -> createPerson(populationFactory, nodes, node, seed), Paths.get(POPULATION_FILE));
+		} else {
+			writePersonByPerson(nodes, seed);
+		}
+		creation.end();
 	}
 
-	private void savePopulation() {
-		MatsimWriter popWriter = new PopulationWriter(population, network);
-		popWriter.write(POPULATION_FILE);
+	private void writePersonByPerson(NodeCoordinates nodes, long seed) {
+		PopulationWriter writer = new PopulationWriter(population, network);
+		writer.startStreaming(POPULATION_FILE);
+		try {
+			for (int node = 0; node < nodes.size(); node++) {
+				writer.writePerson(createPerson(populationFactory, nodes, node, seed));
+			}
+		} finally {
+			writer.closeStreaming();
+		}
+	}
+
+	private int numberOfThreads() {
+		int threads = config.global().getNumberOfThreads();
+		if (threads > 0) {
+			return threads;
+		}
+		return Runtime.getRuntime().availableProcessors();
 	}
 
 	/**
-	 * Create a new {@link Person} if there has no {@link Person} been created
-	 * for the current {@link Node}
+	 * Create the {@link Person} living at the {@link Node} with the given
+	 * index. All random decisions are derived from the seed and the index, so
+	 * the same {@link Person} is created regardless of order and thread.
 	 *
+	 * @param factory
+	 *            {@link PopulationFactory} to create {@link Person}s and
+	 *            {@link Plan}s with
+	 * @param nodes
+	 *            index of all {@link Node}s
 	 * @param node
-	 *            to derive {@link Person} from
+	 *            index of the home {@link Node}
+	 * @param seed
+	 *            seed of the whole {@link Population}
+	 * @return new {@link Person} with the id of its home {@link Node}
 	 */
-	private void createPerson(Node node) {
-		if (population.getPersons().containsKey(idFrom(node))) {
-			return;
-		}
-		Person person = populationFactory.createPerson(idFrom(node));
-		population.addPerson(person);
-
-		Plan plan = createPlanFrom(node);
-		person.addPlan(plan);
+	static Person createPerson(PopulationFactory factory, NodeCoordinates nodes, int node, long seed) {
+		Person person = factory.createPerson(Id.createPersonId(nodes.id(node)));
+		person.addPlan(createPlan(factory, nodes, node, new SplittableRandom(personSeed(seed, node))));
+		return person;
 	}
 
 	/**
-	 * Create a plan for the person. Start at node coordinates and travel to
-	 * center of map. Assuming that node coordinates are already in correct
-	 * coordinate system
+	 * Seed of the {@link Person} at the {@link Node} with the given index.
+	 * Adjacent numbers as seeds of neighbouring {@link Person}s give
+	 * correlated streams. Only spreading the seed of the {@link Population} by
+	 * the golden ratio, which {@link SplittableRandom} adds for every value,
+	 * would let the {@link Person} of the next {@link Population} seed draw the
+	 * same values shifted by one. So the sum is mixed with the finalizer of
+	 * MurmurHash3.
 	 *
+	 * @param seed
+	 *            seed of the whole {@link Population}
 	 * @param node
-	 *            start node for plan
-	 * @return new plan which starts at node, travels to center of map and
-	 *         travels back to node.
+	 *            index of the home {@link Node}
+	 * @return seed of the {@link Person}
+	 */
+	static long personSeed(long seed, int node) {
+		long mixed = seed * GOLDEN_RATIO + node;
+		mixed = (mixed ^ (mixed >>> 33)) * 0xFF51AFD7ED558CCDL;
+		mixed = (mixed ^ (mixed >>> 33)) * 0xC4CEB9FE1A85EC53L;
+		return mixed ^ (mixed >>> 33);
+	}
+
+	/**
+	 * Create a plan for the person. Start at the home {@link Node}, travel to
+	 * a random {@link Node} to work and travel back home. Assuming that node
+	 * coordinates are already in correct coordinate system
+	 *
+	 * @param home
+	 *            index of the home {@link Node}
+	 * @return new plan which starts at home, travels to work and travels back
+	 *         home.
 	 */
-	private Plan createPlanFrom(Node node) {
-		Plan plan = populationFactory.createPlan();
-		Activity homeMorning = populationFactory.createActivityFromCoord("home", homeCoordinate());
-		homeMorning.setEndTime(morningLeaveTime());
+	private static Plan createPlan(PopulationFactory factory, NodeCoordinates nodes, int home,
+			SplittableRandom random) {
+		Plan plan = factory.createPlan();
+		Activity homeMorning = nodes.activity(factory, "home", home);
+		homeMorning.setEndTime(randomize(MORNING_LEAVE_TIME, random).getSeconds());
 		plan.addActivity(homeMorning);
-		plan.addLeg(populationFactory.createLeg("pt"));
-		Activity workActivity = populationFactory.createActivityFromCoord("work", workCoordinate());
-		workActivity.setEndTime(workLeaveTime());
+		plan.addLeg(factory.createLeg("pt"));
+		Activity workActivity = nodes.activity(factory, "work", nodes.randomNode(random));
+		workActivity.setEndTime(randomize(WORK_LEAVE_TIME, random).getSeconds());
 		plan.addActivity(workActivity);
-		plan.addLeg(populationFactory.createLeg("pt"));
-		Activity homeEvening = populationFactory.createActivityFromCoord("home", homeCoordinate());
+		plan.addLeg(factory.createLeg("pt"));
+		Activity homeEvening = nodes.activity(factory, "home", home);
 		plan.addActivity(homeEvening);
 		return plan;
 	}
 
-	private Coord homeCoordinate() {
-		ArrayList<? extends Node> nodes = new ArrayList<>(network.getNodes().values());
-		int nodeIndex = (int) (Math.random() * nodes.size());
-		return nodes.get(0).getCoord();
-	}
-
-	private Coord workCoordinate() {
-		ArrayList<? extends Node> nodes = new ArrayList<>(network.getNodes().values());
-		int nodeIndex = (int) (Math.random() * nodes.size());
-		return nodes.get(2).getCoord();
-	}
-
-	private double workLeaveTime() {
-		return randomize(WORK_LEAVE_TIME).getSeconds();
-	}
-
-	private double morningLeaveTime() {
-		return randomize(MORNING_LEAVE_TIME).getSeconds();
-	}
-
 	/**
-	 * Randomly add a time between -60 and + 60 minutes. The method will return
+	 * Randomly add a time between -30 and + 30 minutes. The method will return
 	 * a new {@link Duration} instance.
 	 *
 	 * @param time
 	 *            base {@link Duration} to add minutes to
+	 * @param random
+	 *            source of randomness
 	 * @return new instance of {@link Duration} with added minutes
 	 */
-	private static Duration randomize(Duration time) {
-		long minutes = (long) ((Math.random() * 60) - 30);
+	private static Duration randomize(Duration time, SplittableRandom random) {
+		long minutes = random.nextInt(-30, 31);
 		return time.plusMinutes(minutes);
 	}
 
-	/**
-	 * Convert {@link Node} id to {@link Person} id.
-	 *
-	 * @param node
-	 *            to take id from
-	 * @return new id for a {@link Person}
-	 */
-	private static Id<Person> idFrom(Node node) {
-		return Id.createPersonId(node.getId().toString());
-	}
-
 	private void startSimulation() {
 		Controler controler = new Controler(config);
 		controler.run();
 	}
 
 	public static void main(String[] args) {
-		LocalTime start = LocalTime.now();
+		PhaseTimer timer = new PhaseTimer(TransitPopulationGenerator.class.getSimpleName());
+		Phase overall = timer.start("Creation and simulation");
+		Phase creation = timer.start("Creation");
 
-		TransitPopulationGenerator generator = new TransitPopulationGenerator();
+		boolean parallelOutput = Arrays.asList(args).contains(PARALLEL_OUTPUT_OPTION);
+		TransitPopulationGenerator generator = new TransitPopulationGenerator(parallelOutput, timer);
 		generator.createSetup();
-		LocalTime afterSetup = LocalTime.now();
+		creation.end();
 
+		Phase simulation = timer.start("Simulation");
 		// generator.startSimulation();
+		simulation.end();
+		overall.end();
 
-		LocalTime end = LocalTime.now();
-		Duration setup = Duration.between(start, afterSetup);
-		Duration simulation = Duration.between(afterSetup, end);
-		Duration complete = Duration.between(start, end);
-
-		System.out.println("Creation and simulation took: " + complete.getSeconds() + "s");
-		System.out.println("Creation took: " + setup.getSeconds() + "s");
-		System.out.println("Simulation took: " + simulation.getSeconds() + "s");
+		timer.finish(System.out);
 	}
 
 }
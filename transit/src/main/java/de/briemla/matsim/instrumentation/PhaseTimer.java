@@ -0,0 +1,605 @@
+package de.briemla.matsim.instrumentation;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinPool.ForkJoinWorkerThreadFactory;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.ThreadFactory;
+import java.util.stream.Collectors;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import com.sun.management.GcInfo;
+
+/**
+ * Measures named phases of a program run. For each phase the wall time, the
+ * CPU time of the process, the bytes allocated by each thread, the number and
+ * duration of garbage collections and the peak heap usage are recorded. The
+ * phases are printed in a human readable form and written as a JSON report,
+ * so several runs can be compared.
+ * <p>
+ * Phases may be nested. Allocations are counted for threads which are alive
+ * when the phase ends and for threads which report their allocations before
+ * they exit. Thread pools shut down inside a phase must therefore create their
+ * threads with {@link #threadFactory()} or {@link #forkJoinThreadFactory()}.
+ * The allocations of exited threads are kept until no phase running at their
+ * exit is left, so a phase which is never ended keeps them for good.
+ * <p>
+ * Heap usage grows between two garbage collections, so the peak of a phase is
+ * the usage right before one of its collections or at its start or end. It is
+ * recorded for each phase on its own from the notifications of the garbage
+ * collectors. CPU time and allocations are reported as -1 if the JVM does not
+ * provide them.
+ *
+ * @author lars
+ *
+ */
+public class PhaseTimer {
+
+	private static final String REPORT_DIRECTORY = "reports";
+	private static final DateTimeFormatter REPORT_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+	private static final long NANOS_PER_MILLI = 1000000L;
+	private static final long UNAVAILABLE = -1;
+	private static final Set<String> HEAP_POOLS = ManagementFactory.getMemoryPoolMXBeans().stream()
+			.filter(pool -> pool.getType() == MemoryType.HEAP).map(MemoryPoolMXBean::getName)
+			.collect(Collectors.toSet());
+	/**
+	 * Allocations of the threads which reported them before they exited, in
+	 * order of their exit. Only threads exiting after the start of the oldest
+	 * running phase of any timer are kept. All static fields are guarded by
+	 * this list.
+	 */
+	private static final List<ExitedThread> EXITED_THREADS = new ArrayList<>();
+	/**
+	 * Number of exited threads dropped from the front of
+	 * {@link #EXITED_THREADS}, so positions in the list stay valid.
+	 */
+	private static long droppedExitedThreads = 0;
+	/**
+	 * Number of running phases by the position in {@link #EXITED_THREADS} at
+	 * their start.
+	 */
+	private static final TreeMap<Long, Integer> RUNNING_PHASES = new TreeMap<>();
+
+	private final String program;
+	private final LocalDateTime startTime;
+	private final List<Phase> phases;
+	private final NotificationListener collectionListener;
+	private int running;
+
+	/**
+	 * @param program
+	 *            name of the measured program, used for the report
+	 */
+	public PhaseTimer(String program) {
+		this.program = program;
+		this.startTime = LocalDateTime.now();
+		this.phases = new ArrayList<>();
+		this.collectionListener = this::collected;
+		this.running = 0;
+	}
+
+	/**
+	 * @return factory for thread pools, whose threads report their
+	 *         allocations to all phases before they exit
+	 */
+	public static ThreadFactory threadFactory() {
+		ThreadFactory threads = Executors.defaultThreadFactory();
+		return task -> threads.newThread(() -> {
+			try {
+				task.run();
+			} finally {
+				exit();
+			}
+		});
+	}
+
+	/**
+	 * @return factory for {@link ForkJoinPool}s, whose threads report their
+	 *         allocations to all phases before they exit
+	 */
+	public static ForkJoinWorkerThreadFactory forkJoinThreadFactory() {
+		return ReportingWorkerThread::new;
+	}
+
+	private static void exit() {
+		Thread thread = Thread.currentThread();
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+			return;
+		}
+		long allocated = ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(thread.getId());
+		if (allocated >= 0) {
+			synchronized (EXITED_THREADS) {
+				if (!RUNNING_PHASES.isEmpty()) {
+					EXITED_THREADS.add(new ExitedThread(thread.getId(), thread.getName(), allocated));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Register a starting phase, so the threads exiting from now on are kept
+	 * until it ends.
+	 *
+	 * @return position of the next exiting thread
+	 */
+	private static long startExitedThreads() {
+		synchronized (EXITED_THREADS) {
+			long position = droppedExitedThreads + EXITED_THREADS.size();
+			RUNNING_PHASES.merge(position, 1, Integer::sum);
+			return position;
+		}
+	}
+
+	/**
+	 * Unregister an ending phase and drop the threads which exited before the
+	 * start of all phases still running.
+	 *
+	 * @return threads exited since the start of the phase
+	 */
+	private static List<ExitedThread> endExitedThreads(long start) {
+		synchronized (EXITED_THREADS) {
+			List<ExitedThread> exited = new ArrayList<>(
+					EXITED_THREADS.subList((int) (start - droppedExitedThreads), EXITED_THREADS.size()));
+			RUNNING_PHASES.computeIfPresent(start, (position, phases) -> phases == 1 ? null : phases - 1);
+			long oldest = RUNNING_PHASES.isEmpty() ? droppedExitedThreads + EXITED_THREADS.size()
+					: RUNNING_PHASES.firstKey();
+			int unused = (int) (oldest - droppedExitedThreads);
+			EXITED_THREADS.subList(0, unused).clear();
+			droppedExitedThreads += unused;
+			return exited;
+		}
+	}
+
+	static int keptExitedThreads() {
+		synchronized (EXITED_THREADS) {
+			return EXITED_THREADS.size();
+		}
+	}
+
+	/**
+	 * Start a new phase. It ends when {@link Phase#end()} is called.
+	 *
+	 * @param name
+	 *            name of the phase
+	 * @return running phase
+	 */
+	public synchronized Phase start(String name) {
+		if (running == 0) {
+			listenToCollections();
+		}
+		running++;
+		Phase phase = new Phase(name);
+		phases.add(phase);
+		return phase;
+	}
+
+	/**
+	 * Print all ended phases with millisecond precision.
+	 *
+	 * @param output
+	 *            stream to print to
+	 */
+	public synchronized void print(PrintStream output) {
+		for (Phase phase : phases) {
+			if (phase.ended) {
+				output.println(phase.name + " took: " + phase.wallTime / NANOS_PER_MILLI + "ms (cpu "
+						+ millis(phase.cpuTime) + ", allocated " + megabytes(phase.allocatedBytes()) + ", gc "
+						+ phase.gcCount + "x " + phase.gcTime + "ms, peak heap " + megabytes(phase.peakHeap) + ")");
+			}
+		}
+	}
+
+	private static String millis(long nanos) {
+		return nanos == UNAVAILABLE ? "n/a" : nanos / NANOS_PER_MILLI + "ms";
+	}
+
+	private static String megabytes(long bytes) {
+		return bytes == UNAVAILABLE ? "n/a" : bytes / (1024 * 1024) + "MB";
+	}
+
+	/**
+	 * Print all ended phases and write the report to a new file in the
+	 * reports directory. A failure to write the report is printed, but does
+	 * not stop the program.
+	 *
+	 * @param output
+	 *            stream to print to
+	 */
+	public void finish(PrintStream output) {
+		print(output);
+		Path report = Paths.get(REPORT_DIRECTORY, program + "-" + startTime.format(REPORT_TIME) + ".json");
+		try {
+			Files.createDirectories(report.getParent());
+			writeReport(report);
+			output.println("Phase report written to " + report);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Write all ended phases as JSON.
+	 *
+	 * @param report
+	 *            file to write to
+	 * @throws IOException
+	 *             if the file can not be written
+	 */
+	public synchronized void writeReport(Path report) throws IOException {
+		try (Writer output = Files.newBufferedWriter(report, StandardCharsets.UTF_8)) {
+			output.write(toJson());
+		}
+	}
+
+	synchronized String toJson() {
+		StringBuilder json = new StringBuilder();
+		json.append("{\n  \"program\": ");
+		appendString(json, program);
+		json.append(",\n  \"start\": ");
+		appendString(json, startTime.toString());
+		json.append(",\n  \"processors\": ").append(Runtime.getRuntime().availableProcessors());
+		json.append(",\n  \"maxHeapBytes\": ").append(Runtime.getRuntime().maxMemory());
+		json.append(",\n  \"phases\": [");
+		String separator = "\n";
+		for (Phase phase : phases) {
+			if (!phase.ended) {
+				continue;
+			}
+			json.append(separator);
+			separator = ",\n";
+			phase.appendJson(json);
+		}
+		json.append("\n  ]\n}\n");
+		return json.toString();
+	}
+
+	private static void appendString(StringBuilder json, String value) {
+		json.append('"');
+		for (int index = 0; index < value.length(); index++) {
+			char character = value.charAt(index);
+			switch (character) {
+			case '"':
+				json.append("\\\"");
+				break;
+			case '\\':
+				json.append("\\\\");
+				break;
+			case '\n':
+				json.append("\\n");
+				break;
+			case '\t':
+				json.append("\\t");
+				break;
+			default:
+				if (character < 0x20) {
+					json.append(String.format("\\u%04x", (int) character));
+				} else {
+					json.append(character);
+				}
+			}
+		}
+		json.append('"');
+	}
+
+	private static long processCpuTime() {
+		OperatingSystemMXBean system = ManagementFactory.getOperatingSystemMXBean();
+		if (system instanceof com.sun.management.OperatingSystemMXBean) {
+			return ((com.sun.management.OperatingSystemMXBean) system).getProcessCpuTime();
+		}
+		return UNAVAILABLE;
+	}
+
+	/**
+	 * @return bytes allocated so far by each live thread, or an empty map if
+	 *         the JVM does not measure allocations
+	 */
+	private static Map<Long, Long> allocatedBytesPerThread() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		Map<Long, Long> allocated = new HashMap<>();
+		if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+			return allocated;
+		}
+		long[] ids = threads.getAllThreadIds();
+		long[] bytes = ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(ids);
+		for (int thread = 0; thread < ids.length; thread++) {
+			if (bytes[thread] >= 0) {
+				allocated.put(ids[thread], bytes[thread]);
+			}
+		}
+		return allocated;
+	}
+
+	private static boolean allocationsAvailable() {
+		return ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean;
+	}
+
+	private static long gcCount() {
+		long count = 0;
+		for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+			count += Math.max(0, collector.getCollectionCount());
+		}
+		return count;
+	}
+
+	private static long gcTime() {
+		long time = 0;
+		for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+			time += Math.max(0, collector.getCollectionTime());
+		}
+		return time;
+	}
+
+	private void listenToCollections() {
+		for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+			if (collector instanceof NotificationEmitter) {
+				((NotificationEmitter) collector).addNotificationListener(collectionListener, null, null);
+			}
+		}
+	}
+
+	private void stopListeningToCollections() {
+		for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+			if (collector instanceof NotificationEmitter) {
+				try {
+					((NotificationEmitter) collector).removeNotificationListener(collectionListener);
+				} catch (ListenerNotFoundException e) {
+					// Collectors added after the listener have nothing to remove
+				}
+			}
+		}
+	}
+
+	/**
+	 * Notifications are delivered asynchronously, so a collection is assigned
+	 * to the phases by its start time, even if they have already ended.
+	 */
+	private void collected(Notification notification, Object handback) {
+		if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+			return;
+		}
+		GcInfo collection = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData())
+				.getGcInfo();
+		synchronized (this) {
+			for (Phase phase : phases) {
+				phase.collected(collection);
+			}
+		}
+	}
+
+	private static long heapUsed(Map<String, MemoryUsage> pools) {
+		long used = 0;
+		for (Map.Entry<String, MemoryUsage> pool : pools.entrySet()) {
+			if (HEAP_POOLS.contains(pool.getKey())) {
+				used += pool.getValue().getUsed();
+			}
+		}
+		return used;
+	}
+
+	private static long heapUsed() {
+		return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+	}
+
+	private static long uptime() {
+		return ManagementFactory.getRuntimeMXBean().getUptime();
+	}
+
+	/**
+	 * The last collection of each collector is available synchronously, so it
+	 * is not lost if its notification arrives after the phase ended.
+	 */
+	private static List<GcInfo> lastCollections() {
+		List<GcInfo> collections = new ArrayList<>();
+		for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+			if (collector instanceof com.sun.management.GarbageCollectorMXBean) {
+				GcInfo collection = ((com.sun.management.GarbageCollectorMXBean) collector).getLastGcInfo();
+				if (collection != null) {
+					collections.add(collection);
+				}
+			}
+		}
+		return collections;
+	}
+
+	private static class ExitedThread {
+
+		private final long id;
+		private final String name;
+		private final long allocatedBytes;
+
+		private ExitedThread(long id, String name, long allocatedBytes) {
+			this.id = id;
+			this.name = name;
+			this.allocatedBytes = allocatedBytes;
+		}
+	}
+
+	private static class ReportingWorkerThread extends ForkJoinWorkerThread {
+
+		private ReportingWorkerThread(ForkJoinPool pool) {
+			super(pool);
+		}
+
+		@Override
+		protected void onTermination(Throwable exception) {
+			try {
+				exit();
+			} finally {
+				super.onTermination(exception);
+			}
+		}
+	}
+
+	/**
+	 * A measured phase. The values are available after {@link #end()}.
+	 */
+	public class Phase {
+
+		private final String name;
+		private final long startWall;
+		private final long startCpu;
+		private final Map<Long, Long> startAllocated;
+		private final long startExitedThreads;
+		private final long startUptime;
+		private final long startGcCount;
+		private final long startGcTime;
+		private final long startHeap;
+		private boolean ended;
+		private long wallTime;
+		private long cpuTime;
+		private Map<String, Long> allocatedPerThread;
+		private long gcCount;
+		private long gcTime;
+		private long endUptime;
+		private long peakHeap;
+
+		private Phase(String name) {
+			this.name = name;
+			this.startUptime = uptime();
+			this.startHeap = heapUsed();
+			this.peakHeap = startHeap;
+			this.startExitedThreads = startExitedThreads();
+			this.startAllocated = allocatedBytesPerThread();
+			this.startGcCount = PhaseTimer.gcCount();
+			this.startGcTime = PhaseTimer.gcTime();
+			this.startCpu = processCpuTime();
+			this.startWall = System.nanoTime();
+		}
+
+		/**
+		 * End the phase and record its measurements. Ending a phase twice has
+		 * no effect.
+		 */
+		public void end() {
+			long endWall = System.nanoTime();
+			long endCpu = processCpuTime();
+			synchronized (PhaseTimer.this) {
+				if (ended) {
+					return;
+				}
+				wallTime = endWall - startWall;
+				cpuTime = startCpu == UNAVAILABLE ? UNAVAILABLE : endCpu - startCpu;
+				gcCount = PhaseTimer.gcCount() - startGcCount;
+				gcTime = PhaseTimer.gcTime() - startGcTime;
+				endUptime = uptime();
+				peakHeap = Math.max(peakHeap, heapUsed());
+				lastCollections().forEach(this::collected);
+				allocatedPerThread = allocatedSinceStart();
+				ended = true;
+				running--;
+				if (running == 0) {
+					stopListeningToCollections();
+				}
+			}
+		}
+
+		private void collected(GcInfo collection) {
+			if (collection.getStartTime() >= startUptime && (!ended || collection.getStartTime() <= endUptime)) {
+				peakHeap = Math.max(peakHeap, heapUsed(collection.getMemoryUsageBeforeGc()));
+			}
+		}
+
+		/**
+		 * Allocations of threads with the same name, e.g. of a pool which is
+		 * started several times, are added up. Live threads are read before
+		 * the exited ones, so a thread exiting in between is not missed.
+		 */
+		private Map<String, Long> allocatedSinceStart() {
+			Map<Long, Long> endAllocated = allocatedBytesPerThread();
+			long[] ids = endAllocated.keySet().stream().mapToLong(Long::longValue).toArray();
+			ThreadInfo[] infos = ManagementFactory.getThreadMXBean().getThreadInfo(ids);
+			Map<Long, String> names = new HashMap<>();
+			for (int thread = 0; thread < ids.length; thread++) {
+				if (infos[thread] != null) {
+					names.put(ids[thread], infos[thread].getThreadName());
+				}
+			}
+			for (ExitedThread thread : endExitedThreads(startExitedThreads)) {
+				endAllocated.merge(thread.id, thread.allocatedBytes, Math::max);
+				names.put(thread.id, thread.name);
+			}
+			Map<String, Long> perThread = new TreeMap<>();
+			for (Map.Entry<Long, String> thread : names.entrySet()) {
+				long allocated = endAllocated.get(thread.getKey()) - startAllocated.getOrDefault(thread.getKey(), 0L);
+				if (allocated > 0) {
+					perThread.merge(thread.getValue(), allocated, Long::sum);
+				}
+			}
+			return perThread;
+		}
+
+		/**
+		 * @return bytes allocated by all threads alive at the end of the phase
+		 *         or reporting their allocations before they exited
+		 */
+		public long allocatedBytes() {
+			if (!allocationsAvailable()) {
+				return UNAVAILABLE;
+			}
+			return allocatedPerThread.values().stream().mapToLong(Long::longValue).sum();
+		}
+
+		public long getWallTime() {
+			return wallTime;
+		}
+
+		public long getPeakHeap() {
+			return peakHeap;
+		}
+
+		public long getStartHeap() {
+			return startHeap;
+		}
+
+		private void appendJson(StringBuilder json) {
+			json.append("    {\n      \"name\": ");
+			appendString(json, name);
+			json.append(",\n      \"wallNanos\": ").append(wallTime);
+			json.append(",\n      \"cpuNanos\": ").append(cpuTime);
+			json.append(",\n      \"allocatedBytes\": ").append(allocatedBytes());
+			json.append(",\n      \"allocatedBytesPerThread\": {");
+			String separator = "\n";
+			for (Map.Entry<String, Long> thread : allocatedPerThread.entrySet()) {
+				json.append(separator).append("        ");
+				separator = ",\n";
+				appendString(json, thread.getKey());
+				json.append(": ").append(thread.getValue());
+			}
+			json.append(allocatedPerThread.isEmpty() ? "}" : "\n      }");
+			json.append(",\n      \"gcCount\": ").append(gcCount);
+			json.append(",\n      \"gcMillis\": ").append(gcTime);
+			json.append(",\n      \"peakHeapBytes\": ").append(peakHeap);
+			json.append("\n    }");
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package de.briemla.matsim.converter;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.NetworkFactory;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.network.algorithms.NetworkCleaner;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.core.utils.geometry.CoordImpl;
+
+public class NetworkComponentCleanerTest {
+
+	@Test
+	public void keepsSameNodesAndLinksAsNetworkCleaner() {
+		for (long seed = 0; seed < 50; seed++) {
+			Network expected = randomNetwork(seed);
+
+			new NetworkCleaner().run(expected);
+			Network actual = new NetworkComponentCleaner().run(randomNetwork(seed));
+
+			assertThat("seed " + seed, new ArrayList<>(actual.getNodes().keySet()),
+					is(new ArrayList<>(expected.getNodes().keySet())));
+			assertThat("seed " + seed, new ArrayList<>(actual.getLinks().keySet()),
+					is(new ArrayList<>(expected.getLinks().keySet())));
+		}
+	}
+
+	@Test
+	public void keepsFirstOfEquallyBigComponents() {
+		Network network = ScenarioUtils.createScenario(ConfigUtils.createConfig()).getNetwork();
+		List<Node> nodes = addNodes(network, 5);
+		addLink(network, nodes.get(3), nodes.get(4));
+		addLink(network, nodes.get(4), nodes.get(3));
+		addLink(network, nodes.get(1), nodes.get(2));
+		addLink(network, nodes.get(2), nodes.get(1));
+		addLink(network, nodes.get(0), nodes.get(1));
+
+		Network cleaned = new NetworkComponentCleaner().run(network);
+
+		assertThat(new ArrayList<>(cleaned.getNodes().keySet()), is(ids(nodes.get(1), nodes.get(2))));
+		assertThat(cleaned.getLinks().size(), is(2));
+		assertThat(network.getNodes().size(), is(5));
+	}
+
+	private static Network randomNetwork(long seed) {
+		Random random = new Random(seed);
+		Network network = ScenarioUtils.createScenario(ConfigUtils.createConfig()).getNetwork();
+		List<Node> nodes = addNodes(network, 1 + random.nextInt(60));
+		int links = random.nextInt(2 * nodes.size());
+		for (int link = 0; link < links; link++) {
+			addLink(network, nodes.get(random.nextInt(nodes.size())), nodes.get(random.nextInt(nodes.size())));
+		}
+		return network;
+	}
+
+	private static List<Node> addNodes(Network network, int count) {
+		List<Node> nodes = new ArrayList<>();
+		for (int node = 0; node < count; node++) {
+			Node created = network.getFactory().createNode(Id.createNodeId(node), new CoordImpl(node, 0));
+			network.addNode(created);
+			nodes.add(created);
+		}
+		return nodes;
+	}
+
+	private static void addLink(Network network, Node from, Node to) {
+		NetworkFactory factory = network.getFactory();
+		Id<Link> id = Id.createLinkId(network.getLinks().size());
+		network.addLink(factory.createLink(id, from, to));
+	}
+
+	private static List<Id<Node>> ids(Node... nodes) {
+		List<Id<Node>> ids = new ArrayList<>();
+		for (Node node : nodes) {
+			ids.add(node.getId());
+		}
+		return ids;
+	}
+}
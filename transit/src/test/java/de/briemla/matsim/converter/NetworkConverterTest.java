@@ -0,0 +1,37 @@
+package de.briemla.matsim.converter;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.awt.geom.Rectangle2D;
+
+import org.junit.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.core.utils.geometry.CoordImpl;
+import org.matsim.core.utils.geometry.CoordinateTransformation;
+import org.matsim.core.utils.geometry.transformations.TransformationFactory;
+
+public class NetworkConverterTest {
+
+	/**
+	 * Bounding box of Karlsruhe in UTM33N, far west of the central meridian
+	 * of the zone.
+	 */
+	private static final Rectangle2D KARLSRUHE = new Rectangle2D.Double(8000.0, 5440800.0, 21300.0, 18500.0);
+
+	@Test
+	public void clipKeepsNodesNearEveryCorner() throws Exception {
+		Rectangle2D filter = NetworkConverter.toWgs84(KARLSRUHE);
+		CoordinateTransformation toWgs84 = TransformationFactory
+				.getCoordinateTransformation(TransformationFactory.WGS84_UTM33N, TransformationFactory.WGS84);
+
+		double[] x = new double[] { KARLSRUHE.getMinX(), KARLSRUHE.getMaxX() };
+		double[] y = new double[] { KARLSRUHE.getMinY(), KARLSRUHE.getMaxY() };
+		for (double cornerX : x) {
+			for (double cornerY : y) {
+				Coord corner = toWgs84.transform(new CoordImpl(cornerX, cornerY));
+				assertThat(filter.contains(corner.getX(), corner.getY()), is(true));
+			}
+		}
+	}
+}
@@ -0,0 +1,202 @@
+package de.briemla.matsim.converter;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.junit.Test;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.network.LinkImpl;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.core.utils.geometry.transformations.TransformationFactory;
+import org.matsim.core.utils.io.OsmNetworkReader;
+
+import de.briemla.matsim.generator.BulkCoordinateTransformation;
+
+public class OsmHighwayConverterTest {
+
+	private static final double LATITUDE = 49.0;
+	private static final double LONGITUDE = 8.4;
+	private static final double STEP = 0.001;
+
+	@Test
+	public void createsSameNetworkAsOsmNetworkReader() throws Exception {
+		Osm osm = highways();
+
+		Network expected = readXml(osm, false);
+		Network actual = convert(osm, false);
+
+		assertThat(actual.getLinks().isEmpty(), is(false));
+		assertThat(describeNodes(actual), is(describeNodes(expected)));
+		assertThat(describeLinks(actual), is(describeLinks(expected)));
+	}
+
+	@Test
+	public void appliesHierarchyLayerLikeOsmNetworkReader() throws Exception {
+		Osm osm = highways();
+
+		Network expected = readXml(osm, true);
+		Network actual = convert(osm, true);
+
+		assertThat(actual.getLinks().size() < convert(osm, false).getLinks().size(), is(true));
+		assertThat(describeNodes(actual), is(describeNodes(expected)));
+		assertThat(describeLinks(actual), is(describeLinks(expected)));
+	}
+
+	/**
+	 * Grid of nodes with one way per supported tag: dropped intermediate
+	 * nodes, oneway variants, maxspeed, lanes, a roundabout, a loop, no
+	 * access, an unparsable maxspeed and a way which is not a highway.
+	 */
+	private static Osm highways() {
+		Osm osm = new Osm();
+		for (int row = 0; row < 4; row++) {
+			for (int column = 0; column < 4; column++) {
+				osm.node(1 + 4 * row + column, LATITUDE - row * STEP, LONGITUDE + column * STEP);
+			}
+		}
+		osm.way(100, nodes(1, 2, 3), "highway", "primary");
+		osm.way(101, nodes(3, 4, 8), "highway", "residential", "oneway", "yes", "maxspeed", "50");
+		osm.way(102, nodes(8, 7), "highway", "secondary", "oneway", "-1");
+		osm.way(103, nodes(3, 7), "highway", "tertiary", "lanes", "3");
+		osm.way(104, nodes(7, 11, 10, 6, 7), "highway", "residential", "junction", "roundabout");
+		osm.way(105, nodes(6, 5, 9, 13, 14, 10, 6), "highway", "unclassified");
+		osm.way(106, nodes(8, 12), "highway", "living_street", "access", "no");
+		osm.way(107, nodes(1, 5), "highway", "footway");
+		osm.way(108, nodes(12, 16), "highway", "motorway", "maxspeed", "none");
+		osm.way(109, nodes(16, 15, 14), "highway", "trunk", "oneway", "true");
+		osm.way(110, nodes(14, 13), "highway", "trunk_link", "oneway", "no");
+		osm.way(111, nodes(1, 9), "highway", "motorway_link", "oneway", "1");
+		return osm;
+	}
+
+	private static long[] nodes(long... nodes) {
+		return nodes;
+	}
+
+	/**
+	 * Only ways of the secondary hierarchy or above in the north west part of
+	 * the grid are kept.
+	 */
+	private static double[] hierarchyLayer() {
+		return new double[] { LATITUDE + STEP / 2, LONGITUDE - STEP / 2, LATITUDE - 2.5 * STEP, LONGITUDE + 2.5 * STEP };
+	}
+
+	private static Network readXml(Osm osm, boolean clip) {
+		Network network = ScenarioUtils.createScenario(ConfigUtils.createConfig()).getNetwork();
+		OsmNetworkReader reader = new OsmNetworkReader(network, TransformationFactory
+				.getCoordinateTransformation(TransformationFactory.WGS84, TransformationFactory.WGS84_UTM33N));
+		if (clip) {
+			double[] layer = hierarchyLayer();
+			reader.setHierarchyLayer(layer[0], layer[1], layer[2], layer[3], 4);
+		}
+		reader.parse(new ByteArrayInputStream(osm.toXml().getBytes(StandardCharsets.UTF_8)));
+		return network;
+	}
+
+	private static Network convert(Osm osm, boolean clip) {
+		Network network = ScenarioUtils.createScenario(ConfigUtils.createConfig()).getNetwork();
+		OsmHighwayConverter converter = new OsmHighwayConverter(network,
+				BulkCoordinateTransformation.between(TransformationFactory.WGS84, TransformationFactory.WGS84_UTM33N));
+		if (clip) {
+			double[] layer = hierarchyLayer();
+			converter.setHierarchyLayer(layer[0], layer[1], layer[2], layer[3], 4);
+		}
+		osm.replayTo(converter);
+		converter.convert();
+		return network;
+	}
+
+	private static List<String> describeNodes(Network network) {
+		List<String> nodes = new ArrayList<>();
+		for (Node node : network.getNodes().values()) {
+			nodes.add(String.format(Locale.ROOT, "%s %.3f %.3f", node.getId(), node.getCoord().getX(),
+					node.getCoord().getY()));
+		}
+		Collections.sort(nodes);
+		return nodes;
+	}
+
+	/**
+	 * {@link Link} ids are left out, because the {@link OsmNetworkReader}
+	 * numbers them in the iteration order of a hash map.
+	 */
+	private static List<String> describeLinks(Network network) {
+		List<String> links = new ArrayList<>();
+		for (Link link : network.getLinks().values()) {
+			links.add(String.format(Locale.ROOT, "%s->%s %.3f %.3f %.1f %.1f %s", link.getFromNode().getId(),
+					link.getToNode().getId(), link.getLength(), link.getFreespeed(), link.getCapacity(),
+					link.getNumberOfLanes(), ((LinkImpl) link).getOrigId()));
+		}
+		Collections.sort(links);
+		return links;
+	}
+
+	/**
+	 * Nodes and ways which are written as OSM XML or passed to an
+	 * {@link OsmHandler} like decoded from a PBF file.
+	 */
+	private static class Osm {
+
+		private final List<long[]> nodes = new ArrayList<>();
+		private final List<Long> wayIds = new ArrayList<>();
+		private final List<long[]> wayNodes = new ArrayList<>();
+		private final List<Map<String, String>> wayTags = new ArrayList<>();
+
+		void node(long id, double latitude, double longitude) {
+			nodes.add(new long[] { id, Math.round(latitude * 1e9), Math.round(longitude * 1e9) });
+		}
+
+		void way(long id, long[] nodes, String... tags) {
+			Map<String, String> map = new LinkedHashMap<>();
+			for (int tag = 0; tag < tags.length; tag += 2) {
+				map.put(tags[tag], tags[tag + 1]);
+			}
+			wayIds.add(id);
+			wayNodes.add(nodes);
+			wayTags.add(map);
+		}
+
+		void replayTo(OsmHandler handler) {
+			for (long[] node : nodes) {
+				handler.node(node[0], node[1], node[2]);
+			}
+			for (int way = 0; way < wayIds.size(); way++) {
+				handler.way(wayIds.get(way), wayNodes.get(way), wayTags.get(way));
+			}
+		}
+
+		String toXml() {
+			StringBuilder xml = new StringBuilder("<?xml version='1.0' encoding='UTF-8'?>\n<osm version=\"0.6\">\n");
+			for (long[] node : nodes) {
+				xml.append("<node id=\"").append(node[0]).append("\" lat=\"")
+						.append(BigDecimal.valueOf(node[1], 9).toPlainString()).append("\" lon=\"")
+						.append(BigDecimal.valueOf(node[2], 9).toPlainString()).append("\"/>\n");
+			}
+			for (int way = 0; way < wayIds.size(); way++) {
+				xml.append("<way id=\"").append(wayIds.get(way)).append("\">\n");
+				for (long node : wayNodes.get(way)) {
+					xml.append("<nd ref=\"").append(node).append("\"/>\n");
+				}
+				for (Map.Entry<String, String> tag : wayTags.get(way).entrySet()) {
+					xml.append("<tag k=\"").append(tag.getKey()).append("\" v=\"").append(tag.getValue())
+							.append("\"/>\n");
+				}
+				xml.append("</way>\n");
+			}
+			return xml.append("</osm>\n").toString();
+		}
+	}
+}
@@ -0,0 +1,203 @@
+package de.briemla.matsim.converter;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+import org.junit.Test;
+
+public class OsmPbfInputStreamTest {
+
+	@Test
+	public void convertsNodesAndWaysToXml() throws Exception {
+		Path pbf = writePbf();
+
+		String xml;
+		try (InputStream input = new OsmPbfInputStream(pbf, 2)) {
+			xml = read(input);
+		}
+
+		assertThat(xml, is("<?xml version='1.0' encoding='UTF-8'?>\n"
+				+ "<osm version=\"0.6\" generator=\"OsmPbfInputStream\">\n"
+				+ "<node id=\"10\" lat=\"49.0123456\" lon=\"8.4\"/>\n"
+				+ "<node id=\"12\" lat=\"-0.0000001\" lon=\"8.40001\"/>\n"
+				+ "<way id=\"7\">\n"
+				+ "<nd ref=\"10\"/>\n"
+				+ "<nd ref=\"12\"/>\n"
+				+ "<tag k=\"highway\" v=\"primary\"/>\n"
+				+ "<tag k=\"name\" v=\"A &amp; B\"/>\n"
+				+ "</way>\n"
+				+ "</osm>\n"));
+	}
+
+	@Test
+	public void readerPassesNodesAndWaysInOrder() throws Exception {
+		Path pbf = writePbf();
+		List<String> elements = new ArrayList<>();
+
+		new OsmPbfReader(2).read(pbf, new OsmHandler() {
+
+			@Override
+			public void node(long id, long latitude, long longitude) {
+				elements.add("node " + id + " " + latitude + " " + longitude);
+			}
+
+			@Override
+			public void way(long id, long[] nodes, Map<String, String> tags) {
+				elements.add("way " + id + " " + Arrays.toString(nodes) + " " + tags);
+			}
+		});
+
+		assertThat(elements, is(Arrays.asList("node 10 49012345600 8400000000", "node 12 -100 8400010000",
+				"way 7 [10, 12] {highway=primary, name=A & B}")));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsUnsupportedFeatures() throws Exception {
+		ByteArrayOutputStream blob = new ByteArrayOutputStream();
+		writeBlob(new DataOutputStream(blob), "OSMHeader", message(4, string("HistoricalInformation")), false);
+		PbfBlockDecoder.checkHeader(fieldsOf(blob.toByteArray()));
+	}
+
+	private static Path writePbf() throws IOException {
+		Path pbf = Files.createTempFile("test", ".osm.pbf");
+		pbf.toFile().deleteOnExit();
+		try (DataOutputStream output = new DataOutputStream(Files.newOutputStream(pbf))) {
+			writeBlob(output, "OSMHeader", message(4, string("OsmSchema-V0.6"), 4, string("DenseNodes")), false);
+			writeBlob(output, "OSMData", denseNodes(), true);
+			writeBlob(output, "OSMData", way(), false);
+		}
+		return pbf;
+	}
+
+	/**
+	 * Nodes at 49.0123456/8.4 and -0.0000001/8.40001 with the default
+	 * granularity of 100 nanodegrees.
+	 */
+	private static byte[] denseNodes() throws IOException {
+		byte[] dense = message(1, packedSigned(10, 2), 8, packedSigned(490123456, -490123457), 9,
+				packedSigned(84000000, 100));
+		return message(2, message(2, dense));
+	}
+
+	private static byte[] way() throws IOException {
+		byte[] strings = message(1, string(""), 1, string("highway"), 1, string("primary"), 1, string("name"), 1,
+				string("A & B"));
+		byte[] way = concat(varintField(1, 7), message(2, packed(1, 3), 3, packed(2, 4), 8, packedSigned(10, 2)));
+		return message(1, strings, 2, message(3, way));
+	}
+
+	private static void writeBlob(DataOutputStream output, String type, byte[] content, boolean compress)
+			throws IOException {
+		byte[] blob;
+		if (compress) {
+			Deflater deflater = new Deflater();
+			deflater.setInput(content);
+			deflater.finish();
+			byte[] compressed = new byte[content.length + 64];
+			int length = deflater.deflate(compressed);
+			deflater.end();
+			byte[] data = new byte[length];
+			System.arraycopy(compressed, 0, data, 0, length);
+			blob = concat(varintField(2, content.length), message(3, data));
+		} else {
+			blob = message(1, content);
+		}
+		byte[] header = concat(message(1, string(type)), varintField(3, blob.length));
+		output.writeInt(header.length);
+		output.write(header);
+		output.write(blob);
+	}
+
+	/**
+	 * Skip the length and blob header written by
+	 * {@link #writeBlob(DataOutputStream, String, byte[], boolean)} and
+	 * return the raw blob.
+	 */
+	private static byte[] fieldsOf(byte[] file) {
+		int headerLength = ((file[0] & 0xff) << 24) | ((file[1] & 0xff) << 16) | ((file[2] & 0xff) << 8)
+				| (file[3] & 0xff);
+		int start = 4 + headerLength;
+		byte[] blob = new byte[file.length - start];
+		System.arraycopy(file, start, blob, 0, blob.length);
+		return blob;
+	}
+
+	/**
+	 * Length delimited fields given as pairs of field number and content.
+	 */
+	private static byte[] message(Object... fields) throws IOException {
+		ByteArrayOutputStream message = new ByteArrayOutputStream();
+		for (int field = 0; field < fields.length; field += 2) {
+			byte[] content = (byte[]) fields[field + 1];
+			writeVarint(message, ((Integer) fields[field] << 3) | 2);
+			writeVarint(message, content.length);
+			message.write(content);
+		}
+		return message.toByteArray();
+	}
+
+	private static byte[] varintField(int field, long value) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		writeVarint(bytes, field << 3);
+		writeVarint(bytes, value);
+		return bytes.toByteArray();
+	}
+
+	private static byte[] string(String value) {
+		return value.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static byte[] packed(long... values) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		for (long value : values) {
+			writeVarint(bytes, value);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static byte[] packedSigned(long... values) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		for (long value : values) {
+			writeVarint(bytes, (value << 1) ^ (value >> 63));
+		}
+		return bytes.toByteArray();
+	}
+
+	private static void writeVarint(ByteArrayOutputStream bytes, long value) {
+		while ((value & ~0x7fL) != 0) {
+			bytes.write((int) (value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		bytes.write((int) value);
+	}
+
+	private static byte[] concat(byte[] first, byte[] second) {
+		byte[] bytes = new byte[first.length + second.length];
+		System.arraycopy(first, 0, bytes, 0, first.length);
+		System.arraycopy(second, 0, bytes, first.length, second.length);
+		return bytes;
+	}
+
+	private static String read(InputStream input) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buffer = new byte[7];
+		int read;
+		while ((read = input.read(buffer, 0, buffer.length)) != -1) {
+			bytes.write(buffer, 0, read);
+		}
+		return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,53 @@
+package de.briemla.matsim.converter;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.NetworkFactory;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.core.utils.geometry.CoordImpl;
+
+public class SubnetworkExtractorTest {
+
+	@Test
+	public void copiesAcceptedNodesAndLinksBetweenThem() {
+		Network network = ScenarioUtils.createScenario(ConfigUtils.createConfig()).getNetwork();
+		NetworkFactory factory = network.getFactory();
+		for (int node = 0; node < 4; node++) {
+			network.addNode(factory.createNode(Id.createNodeId(node), new CoordImpl(node, 0)));
+		}
+		addLink(network, 0, 1, 10.0);
+		addLink(network, 1, 2, 20.0);
+		addLink(network, 2, 0, 30.0);
+		addLink(network, 3, 0, 40.0);
+
+		Network subnetwork = SubnetworkExtractor.extract(network, node -> node.getCoord().getX() < 3);
+
+		assertThat(new ArrayList<>(subnetwork.getNodes().keySet()),
+				is(Arrays.asList(Id.createNodeId(0), Id.createNodeId(1), Id.createNodeId(2))));
+		List<Id<Link>> links = new ArrayList<>(subnetwork.getLinks().keySet());
+		assertThat(links, is(Arrays.asList(Id.createLinkId("0_1"), Id.createLinkId("1_2"), Id.createLinkId("2_0"))));
+		Link copy = subnetwork.getLinks().get(Id.createLinkId("1_2"));
+		assertThat(copy.getLength(), is(20.0));
+		assertThat(copy.getFromNode(), is(subnetwork.getNodes().get(Id.createNodeId(1))));
+		assertThat(subnetwork.getNodes().get(Id.createNodeId(0)).getInLinks().size(), is(1));
+		assertThat(network.getNodes().size(), is(4));
+		assertThat(network.getLinks().size(), is(4));
+	}
+
+	private static void addLink(Network network, int from, int to, double length) {
+		Link link = network.getFactory().createLink(Id.createLinkId(from + "_" + to),
+				network.getNodes().get(Id.createNodeId(from)), network.getNodes().get(Id.createNodeId(to)));
+		link.setLength(length);
+		network.addLink(link);
+	}
+}
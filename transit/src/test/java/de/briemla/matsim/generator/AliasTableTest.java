@@ -0,0 +1,52 @@
+package de.briemla.matsim.generator;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.SplittableRandom;
+
+import org.junit.Test;
+
+public class AliasTableTest {
+
+	private static final int SAMPLES = 1_000_000;
+
+	@Test
+	public void samplesProportionalToWeights() throws Exception {
+		double[] weights = new double[] { 1.0, 0.0, 3.0, 0.5, 5.5 };
+		AliasTable table = new AliasTable(weights);
+		SplittableRandom random = new SplittableRandom(7);
+		int[] counts = new int[weights.length];
+
+		for (int sample = 0; sample < SAMPLES; sample++) {
+			counts[table.sample(random)]++;
+		}
+
+		assertThat(counts[1], is(0));
+		for (int index = 0; index < weights.length; index++) {
+			double expected = SAMPLES * weights[index] / 10.0;
+			assertThat("index " + index, Math.abs(counts[index] - expected) < 0.01 * SAMPLES, is(true));
+		}
+	}
+
+	@Test
+	public void sameSeedDrawsSameSequence() throws Exception {
+		AliasTable table = new AliasTable(new double[] { 2.0, 1.0, 1.0, 4.0 });
+		SplittableRandom first = new SplittableRandom(11);
+		SplittableRandom second = new SplittableRandom(11);
+
+		for (int sample = 0; sample < 1000; sample++) {
+			assertThat(table.sample(second), is(table.sample(first)));
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsZeroWeights() throws Exception {
+		new AliasTable(new double[] { 0.0, 0.0 });
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsNegativeWeight() throws Exception {
+		new AliasTable(new double[] { 1.0, -1.0 });
+	}
+}
@@ -0,0 +1,145 @@
+package de.briemla.matsim.generator;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.junit.Test;
+import org.matsim.core.utils.geometry.CoordImpl;
+
+public class AvailableDistrictsTest {
+
+	@Test
+	public void removesWorkDistrictFromMiddle() throws Exception {
+		District first = district("First", 0, 1, 1);
+		District middle = district("Middle", 1, 1, 1);
+		District last = district("Last", 2, 1, 1);
+		AvailableDistricts available = available(first, middle, last);
+
+		available.allWorkplacesTaken(middle);
+
+		assertThat(available.workDistricts(), is(Arrays.asList(first, last)));
+	}
+
+	@Test
+	public void removesWorkDistrictFromEnd() throws Exception {
+		District first = district("First", 0, 1, 1);
+		District middle = district("Middle", 1, 1, 1);
+		District last = district("Last", 2, 1, 1);
+		AvailableDistricts available = available(first, middle, last);
+
+		available.allWorkplacesTaken(last);
+
+		assertThat(available.workDistricts(), is(Arrays.asList(first, middle)));
+	}
+
+	@Test
+	public void removesAllWorkDistrictsInAnyOrder() throws Exception {
+		District first = district("First", 0, 1, 1);
+		District middle = district("Middle", 1, 1, 1);
+		District last = district("Last", 2, 1, 1);
+		AvailableDistricts available = available(first, middle, last);
+
+		available.allWorkplacesTaken(middle);
+		available.allWorkplacesTaken(middle);
+		available.allWorkplacesTaken(first);
+
+		assertThat(available.workDistricts(), is(Arrays.asList(last)));
+
+		available.allWorkplacesTaken(last);
+
+		assertThat(available.workDistricts().isEmpty(), is(true));
+	}
+
+	@Test
+	public void removedHomeDistrictIsNeverDrawn() throws Exception {
+		District first = district("First", 0, 1, 1);
+		District middle = district("Middle", 1, 1, 1);
+		District last = district("Last", 2, 1, 1);
+		AvailableDistricts available = available(first, middle, last);
+		SplittableRandom random = new SplittableRandom(4711L);
+
+		available.allInhabitantsWorking(middle);
+		for (int draw = 0; draw < 100; draw++) {
+			assertThat(available.randomHomeDistrict(random) != middle, is(true));
+		}
+		available.allInhabitantsWorking(last);
+		for (int draw = 0; draw < 100; draw++) {
+			assertThat(available.randomHomeDistrict(random), is(first));
+		}
+		available.allInhabitantsWorking(first);
+
+		assertThat(available.hasHomeDistricts(), is(false));
+	}
+
+	@Test
+	public void skipsDistrictsWithoutInhabitantsOrWorkplaces() throws Exception {
+		District home = district("Home", 0, 1, 0);
+		District work = district("Work", 1, 0, 1);
+		AvailableDistricts available = available(home, work);
+
+		assertThat(available.workDistricts(), is(Arrays.asList(work)));
+		assertThat(available.randomHomeDistrict(new SplittableRandom(4711L)), is(home));
+	}
+
+	@Test
+	public void listenersFireOncePerTransition() throws Exception {
+		District home = district("Home", 0, 2, 0);
+		District work = district("Work", 1, 0, 2);
+		List<District> districts = new ArrayList<>(Arrays.asList(home, work));
+		CountingListener listener = new CountingListener();
+		home.setListener(listener);
+		work.setListener(listener);
+		districts.forEach(district -> district.rankDistricts(districts));
+		SplittableRandom random = new SplittableRandom(4711L);
+
+		home.assignWorkplace(random);
+
+		assertThat(listener.inhabitantsWorking, is(0));
+		assertThat(listener.workplacesTaken, is(0));
+
+		home.assignWorkplace(random);
+		home.assignWorkplace(random);
+
+		assertThat(listener.inhabitantsWorking, is(1));
+		assertThat(listener.workplacesTaken, is(1));
+	}
+
+	private static AvailableDistricts available(District... districts) {
+		AvailableDistricts available = new AvailableDistricts();
+		for (District district : districts) {
+			available.add(district);
+		}
+		return available;
+	}
+
+	private static District district(String name, int position, int inhabitants, int workplaces) {
+		District district = new District(name, new Census(name, inhabitants, workplaces));
+		double x = position * 10.0;
+		district.add(new CoordImpl(x, 0.0));
+		district.add(new CoordImpl(x + 10.0, 0.0));
+		district.add(new CoordImpl(x + 10.0, 10.0));
+		district.add(new CoordImpl(x, 10.0));
+		return district;
+	}
+
+	private static class CountingListener implements DistrictListener {
+
+		private int inhabitantsWorking;
+		private int workplacesTaken;
+
+		@Override
+		public void allInhabitantsWorking(District district) {
+			inhabitantsWorking++;
+		}
+
+		@Override
+		public void allWorkplacesTaken(District district) {
+			workplacesTaken++;
+		}
+	}
+}
@@ -0,0 +1,42 @@
+package de.briemla.matsim.generator;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.core.utils.geometry.CoordImpl;
+import org.matsim.core.utils.geometry.CoordinateTransformation;
+import org.matsim.core.utils.geometry.transformations.TransformationFactory;
+
+public class BulkCoordinateTransformationTest {
+
+	private static final int POINTS = 10000;
+
+	@Test
+	public void sameAsSingleCoordinateTransformation() throws Exception {
+		Random random = new Random(5);
+		double[] x = new double[POINTS];
+		double[] y = new double[POINTS];
+		for (int point = 0; point < POINTS; point++) {
+			x[point] = 8.2 + random.nextDouble() * 0.5;
+			y[point] = 48.9 + random.nextDouble() * 0.2;
+		}
+		CoordinateTransformation single = TransformationFactory.getCoordinateTransformation(
+				TransformationFactory.WGS84, TransformationFactory.WGS84_UTM33N);
+		Coord[] expected = new Coord[POINTS];
+		for (int point = 0; point < POINTS; point++) {
+			expected[point] = single.transform(new CoordImpl(x[point], y[point]));
+		}
+
+		BulkCoordinateTransformation.between(TransformationFactory.WGS84, TransformationFactory.WGS84_UTM33N)
+				.transform(x, y);
+
+		for (int point = 0; point < POINTS; point++) {
+			assertThat(x[point], is(expected[point].getX()));
+			assertThat(y[point], is(expected[point].getY()));
+		}
+	}
+}
@@ -0,0 +1,164 @@
+package de.briemla.matsim.generator;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.NetworkFactory;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.PlanElement;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.core.utils.geometry.CoordImpl;
+import org.matsim.core.utils.geometry.transformations.IdentityTransformation;
+
+public class CityTest {
+
+	private static final int COLUMNS = 6;
+	private static final int ROWS = 5;
+	private static final double DISTRICT_SIZE = 100.0;
+	private static final long SEED = 4711L;
+
+	@Test
+	public void populationIndependentOfNumberOfThreads() throws Exception {
+		List<String> singleThreaded = describe(createPopulation(SEED, 1));
+		List<String> multiThreaded = describe(createPopulation(SEED, 4));
+
+		assertThat(multiThreaded, is(singleThreaded));
+	}
+
+	@Test
+	public void populationReproducibleWithSameSeed() throws Exception {
+		List<String> first = describe(createPopulation(SEED, 2));
+		List<String> second = describe(createPopulation(SEED, 2));
+
+		assertThat(second, is(first));
+	}
+
+	@Test
+	public void createsAllInhabitants() throws Exception {
+		Population population = createPopulation(SEED, 3);
+
+		assertThat(population.getPersons().size(), is(COLUMNS * ROWS * 20));
+	}
+
+	@Test
+	public void planTableCreatesSamePersonsByRow() throws Exception {
+		Scenario scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
+		PlanTable table = gridCity(scenario.getNetwork()).createPlanTable(SEED, 2);
+		Population streamed = ScenarioUtils.createScenario(ConfigUtils.createConfig()).getPopulation();
+		Population byRow = ScenarioUtils.createScenario(ConfigUtils.createConfig()).getPopulation();
+
+		table.forEachPerson(streamed.getFactory(), streamed::addPerson);
+		for (int row = 0; row < table.size(); row++) {
+			byRow.addPerson(table.person(row, byRow.getFactory()));
+		}
+
+		assertThat(describe(byRow), is(describe(streamed)));
+	}
+
+	@Test
+	public void ranksNearestDistrictsWithoutReorderingCity() throws Exception {
+		Scenario scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
+		City city = gridCity(scenario.getNetwork());
+		List<District> districts = new ArrayList<>(city.getDistricts());
+
+		city.createPlanTable(SEED, 1);
+
+		assertThat(city.getDistricts(), is(districts));
+		List<District> ranking = districts.get(0).getDistrictsByDistance();
+		assertThat(ranking.size(), is(27));
+		assertThat(ranking.get(0), is(districts.get(0)));
+		assertThat(ranking.get(1), is(districts.get(1)));
+		assertThat(ranking.get(2), is(districts.get(ROWS)));
+		for (int distanceClass = 1; distanceClass < ranking.size(); distanceClass++) {
+			District nearer = ranking.get(distanceClass - 1);
+			District farther = ranking.get(distanceClass);
+			double nearerDistance = districts.get(0).getCenter().distance(nearer.getCenter());
+			double fartherDistance = districts.get(0).getCenter().distance(farther.getCenter());
+			assertThat(nearerDistance <= fartherDistance, is(true));
+			if (nearerDistance == fartherDistance) {
+				assertThat(districts.indexOf(nearer) < districts.indexOf(farther), is(true));
+			}
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void districtWithInhabitantsButWithoutNodesFailsBeforePlansAreCreated() throws Exception {
+		Scenario scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
+		City city = gridCity(scenario.getNetwork());
+		String name = "Empty";
+		District empty = new District(name, new Census(name, 20, 25));
+		empty.add(coord(-2 * DISTRICT_SIZE, 0.0));
+		empty.add(coord(-DISTRICT_SIZE, 0.0));
+		empty.add(coord(-DISTRICT_SIZE, DISTRICT_SIZE));
+		city.add(empty);
+
+		city.createPlanTable(SEED, 2);
+	}
+
+	private static Population createPopulation(long seed, int threads) {
+		Scenario scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
+		City city = gridCity(scenario.getNetwork());
+		Population population = scenario.getPopulation();
+		city.createPopulation(population, seed, threads);
+		return population;
+	}
+
+	/**
+	 * Create a city of square districts where each district contains a few
+	 * nodes.
+	 */
+	private static City gridCity(Network network) {
+		City city = new City(new Statistic(), new IdentityTransformation());
+		NetworkFactory factory = network.getFactory();
+		for (int column = 0; column < COLUMNS; column++) {
+			for (int row = 0; row < ROWS; row++) {
+				String name = "District" + column + "_" + row;
+				District district = new District(name, new Census(name, 20, 25));
+				double x = column * DISTRICT_SIZE;
+				double y = row * DISTRICT_SIZE;
+				district.add(coord(x, y));
+				district.add(coord(x + DISTRICT_SIZE, y));
+				district.add(coord(x + DISTRICT_SIZE, y + DISTRICT_SIZE));
+				district.add(coord(x, y + DISTRICT_SIZE));
+				city.add(district);
+				for (int node = 1; node <= 4; node++) {
+					Coord coord = coord(x + node * 20.0, y + node * 15.0);
+					network.addNode(factory.createNode(Id.createNodeId(name + "_" + node), coord));
+				}
+			}
+		}
+		city.addNodes(network.getNodes());
+		return city;
+	}
+
+	private static List<String> describe(Population population) {
+		List<String> description = new ArrayList<>();
+		for (Person person : population.getPersons().values()) {
+			StringBuilder plan = new StringBuilder(person.getId().toString());
+			for (PlanElement element : person.getSelectedPlan().getPlanElements()) {
+				if (element instanceof Activity) {
+					Activity activity = (Activity) element;
+					plan.append(';').append(activity.getType()).append(';').append(activity.getCoord().getX())
+					.append(';').append(activity.getCoord().getY()).append(';').append(activity.getEndTime());
+				}
+			}
+			description.add(plan.toString());
+		}
+		return description;
+	}
+
+	private static Coord coord(double x, double y) {
+		return new CoordImpl(x, y);
+	}
+}
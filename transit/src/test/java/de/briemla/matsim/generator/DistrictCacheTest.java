@@ -0,0 +1,147 @@
+package de.briemla.matsim.generator;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.matsim.core.utils.geometry.transformations.IdentityTransformation;
+
+public class DistrictCacheTest {
+
+	private static final String COORDINATE_SYSTEM = "EPSG:32632";
+	private static final String FIRST = "Innenstadt";
+	private static final String SECOND = "Südstadt";
+
+	@Test
+	public void loadsSameDistrictsAsWritten() throws Exception {
+		File kml = temporaryKml("<kml/>");
+		City written = cityWithDistricts();
+		new DistrictCache(kml, COORDINATE_SYSTEM).write(written.getDistricts());
+
+		City loaded = emptyCity();
+		boolean fromCache = new DistrictCache(kml, COORDINATE_SYSTEM).loadInto(loaded);
+
+		assertThat(fromCache, is(true));
+		assertThat(loaded.getDistricts().size(), is(written.getDistricts().size()));
+		for (int index = 0; index < written.getDistricts().size(); index++) {
+			District expected = written.getDistricts().get(index);
+			District actual = loaded.getDistricts().get(index);
+			assertThat(actual.getName(), is(expected.getName()));
+			assertThat(actual.borderSize(), is(expected.borderSize()));
+			for (int corner = 0; corner < expected.borderSize(); corner++) {
+				assertThat(actual.borderX(corner), is(expected.borderX(corner)));
+				assertThat(actual.borderY(corner), is(expected.borderY(corner)));
+			}
+		}
+	}
+
+	@Test
+	public void ignoresCacheOfChangedKml() throws Exception {
+		File kml = temporaryKml("<kml/>");
+		new DistrictCache(kml, COORDINATE_SYSTEM).write(cityWithDistricts().getDistricts());
+		Files.write(kml.toPath(), "<kml></kml>".getBytes(StandardCharsets.UTF_8));
+
+		City loaded = emptyCity();
+		boolean fromCache = new DistrictCache(kml, COORDINATE_SYSTEM).loadInto(loaded);
+
+		assertThat(fromCache, is(false));
+		assertThat(loaded.getDistricts().isEmpty(), is(true));
+	}
+
+	@Test
+	public void ignoresCacheOfOtherCoordinateSystem() throws Exception {
+		File kml = temporaryKml("<kml/>");
+		new DistrictCache(kml, COORDINATE_SYSTEM).write(cityWithDistricts().getDistricts());
+
+		City loaded = emptyCity();
+		boolean fromCache = new DistrictCache(kml, "EPSG:4326").loadInto(loaded);
+
+		assertThat(fromCache, is(false));
+		assertThat(loaded.getDistricts().isEmpty(), is(true));
+	}
+
+	@Test
+	public void truncatedCacheLeavesCityEmpty() throws Exception {
+		File kml = temporaryKml("<kml/>");
+		new DistrictCache(kml, COORDINATE_SYSTEM).write(cityWithDistricts().getDistricts());
+		File cache = cacheOf(kml);
+		byte[] content = Files.readAllBytes(cache.toPath());
+		Files.write(cache.toPath(), Arrays.copyOf(content, content.length - 3));
+
+		City loaded = emptyCity();
+		boolean fromCache = new DistrictCache(kml, COORDINATE_SYSTEM).loadInto(loaded);
+
+		assertThat(fromCache, is(false));
+		assertThat(loaded.getDistricts().isEmpty(), is(true));
+	}
+
+	@Test
+	public void corruptCornerCountLeavesCityEmpty() throws Exception {
+		File kml = temporaryKml("<kml/>");
+		new DistrictCache(kml, COORDINATE_SYSTEM).write(cityWithDistricts().getDistricts());
+		File cache = cacheOf(kml);
+		ByteBuffer content = ByteBuffer.wrap(Files.readAllBytes(cache.toPath()));
+		int cornersOfFirstDistrict = 2 * Integer.BYTES + 2 * Long.BYTES + Integer.BYTES
+				+ COORDINATE_SYSTEM.getBytes(StandardCharsets.UTF_8).length + Integer.BYTES + Integer.BYTES
+				+ FIRST.getBytes(StandardCharsets.UTF_8).length;
+		content.putInt(cornersOfFirstDistrict, Integer.MAX_VALUE);
+		Files.write(cache.toPath(), content.array());
+
+		City loaded = emptyCity();
+		boolean fromCache = new DistrictCache(kml, COORDINATE_SYSTEM).loadInto(loaded);
+
+		assertThat(fromCache, is(false));
+		assertThat(loaded.getDistricts().isEmpty(), is(true));
+	}
+
+	@Test
+	public void corruptDistrictCountLeavesCityEmpty() throws Exception {
+		File kml = temporaryKml("<kml/>");
+		new DistrictCache(kml, COORDINATE_SYSTEM).write(cityWithDistricts().getDistricts());
+		File cache = cacheOf(kml);
+		ByteBuffer content = ByteBuffer.wrap(Files.readAllBytes(cache.toPath()));
+		int districtCount = 2 * Integer.BYTES + 2 * Long.BYTES + Integer.BYTES
+				+ COORDINATE_SYSTEM.getBytes(StandardCharsets.UTF_8).length;
+		content.putInt(districtCount, -1);
+		Files.write(cache.toPath(), content.array());
+
+		City loaded = emptyCity();
+		boolean fromCache = new DistrictCache(kml, COORDINATE_SYSTEM).loadInto(loaded);
+
+		assertThat(fromCache, is(false));
+		assertThat(loaded.getDistricts().isEmpty(), is(true));
+	}
+
+	private static City cityWithDistricts() {
+		City city = emptyCity();
+		city.addProjectedDistrict(FIRST, new double[] { 0.0, 10.0, 10.0, 0.0 },
+				new double[] { 0.0, 0.0, 10.0, 10.0 });
+		city.addProjectedDistrict(SECOND, new double[] { 10.0, 20.0, 15.0 }, new double[] { 0.0, 0.0, 10.0 });
+		return city;
+	}
+
+	private static City emptyCity() {
+		Statistic statistic = new Statistic();
+		statistic.add(new Census(FIRST, 10, 20));
+		statistic.add(new Census(SECOND, 30, 40));
+		return new City(statistic, new IdentityTransformation());
+	}
+
+	private static File temporaryKml(String content) throws Exception {
+		File kml = File.createTempFile("districts", ".kml");
+		kml.deleteOnExit();
+		cacheOf(kml).deleteOnExit();
+		Files.write(kml.toPath(), content.getBytes(StandardCharsets.UTF_8));
+		return kml;
+	}
+
+	private static File cacheOf(File kml) {
+		return new File(kml.getPath() + ".districts");
+	}
+}
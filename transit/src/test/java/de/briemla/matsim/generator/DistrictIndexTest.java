@@ -0,0 +1,116 @@
+package de.briemla.matsim.generator;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.awt.geom.Path2D;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.matsim.core.utils.geometry.CoordImpl;
+
+public class DistrictIndexTest {
+
+	private static final int RANDOM_POINTS = 20000;
+
+	private final List<District> districts = new ArrayList<>();
+	private final List<Path2D> borders = new ArrayList<>();
+	private final List<double[]> testPoints = new ArrayList<>();
+
+	@Test
+	public void adjacentSquaresLikePath2D() throws Exception {
+		for (int column = 0; column < 6; column++) {
+			for (int row = 0; row < 5; row++) {
+				double x = column * 100.0;
+				double y = row * 100.0;
+				addDistrict(new double[] { x, x + 100.0, x + 100.0, x }, new double[] { y, y, y + 100.0, y + 100.0 });
+			}
+		}
+		addRandomPoints(new Random(1), -50.0, 650.0, -50.0, 550.0);
+		for (double x = 0.0; x <= 600.0; x += 25.0) {
+			for (double y = 0.0; y <= 500.0; y += 25.0) {
+				testPoints.add(new double[] { x, y });
+			}
+		}
+
+		assertSameAsPath2D();
+	}
+
+	@Test
+	public void overlappingStarsLikePath2D() throws Exception {
+		Random random = new Random(2);
+		for (int star = 0; star < 8; star++) {
+			addStar(random, random.nextDouble() * 1000.0, random.nextDouble() * 1000.0);
+		}
+		addRandomPoints(random, -200.0, 1200.0, -200.0, 1200.0);
+
+		assertSameAsPath2D();
+	}
+
+	@Test
+	public void realisticCoordinatesLikePath2D() throws Exception {
+		Random random = new Random(3);
+		for (int star = 0; star < 5; star++) {
+			addStar(random, 456000.0 + random.nextDouble() * 5000.0, 5429000.0 + random.nextDouble() * 5000.0);
+		}
+		addRandomPoints(random, 455000.0, 462000.0, 5428000.0, 5435000.0);
+
+		assertSameAsPath2D();
+	}
+
+	private void addStar(Random random, double centerX, double centerY) {
+		int corners = 5 + random.nextInt(30);
+		double[] x = new double[corners];
+		double[] y = new double[corners];
+		for (int corner = 0; corner < corners; corner++) {
+			double angle = 2.0 * Math.PI * corner / corners;
+			double radius = 50.0 + random.nextDouble() * 300.0;
+			x[corner] = centerX + Math.cos(angle) * radius;
+			y[corner] = centerY + Math.sin(angle) * radius;
+		}
+		addDistrict(x, y);
+	}
+
+	private void addDistrict(double[] x, double[] y) {
+		String name = "District" + districts.size();
+		District district = new District(name, new Census(name, 1, 1));
+		Path2D border = new Path2D.Double(Path2D.WIND_EVEN_ODD);
+		border.moveTo(x[0], y[0]);
+		for (int corner = 0; corner < x.length; corner++) {
+			district.add(new CoordImpl(x[corner], y[corner]));
+			if (corner > 0) {
+				border.lineTo(x[corner], y[corner]);
+			}
+			testPoints.add(new double[] { x[corner], y[corner] });
+			int next = (corner + 1) % x.length;
+			testPoints.add(new double[] { (x[corner] + x[next]) / 2.0, (y[corner] + y[next]) / 2.0 });
+		}
+		districts.add(district);
+		borders.add(border);
+	}
+
+	private void addRandomPoints(Random random, double minX, double maxX, double minY, double maxY) {
+		for (int point = 0; point < RANDOM_POINTS; point++) {
+			double x = minX + random.nextDouble() * (maxX - minX);
+			double y = minY + random.nextDouble() * (maxY - minY);
+			testPoints.add(new double[] { x, y });
+		}
+	}
+
+	private void assertSameAsPath2D() {
+		DistrictIndex index = new DistrictIndex(districts);
+		for (double[] point : testPoints) {
+			District expected = null;
+			for (int district = 0; district < borders.size(); district++) {
+				if (borders.get(district).contains(point[0], point[1])) {
+					expected = districts.get(district);
+					break;
+				}
+			}
+			assertThat(point[0] + ", " + point[1] + " in " + index.find(point[0], point[1]),
+					index.find(point[0], point[1]), is(expected));
+		}
+	}
+}
@@ -0,0 +1,51 @@
+package de.briemla.matsim.generator;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class DistrictRankingTest {
+
+	@Test
+	public void ordersByDistance() throws Exception {
+		double[] distances = new double[] { 5.0, 1.0, 4.0, 0.0, 3.0, 2.0 };
+
+		int[] ranking = DistrictRanking.nearest(distances, distances.length);
+
+		assertThat(ranking, is(new int[] { 3, 1, 5, 4, 2, 0 }));
+	}
+
+	@Test
+	public void ordersEqualDistancesByIndex() throws Exception {
+		double[] distances = new double[] { 2.0, 1.0, 2.0, 1.0, 2.0, 1.0, 0.0 };
+
+		int[] ranking = DistrictRanking.nearest(distances, distances.length);
+
+		assertThat(ranking, is(new int[] { 6, 1, 3, 5, 0, 2, 4 }));
+	}
+
+	@Test
+	public void truncatedRankingIsPrefixOfFullRanking() throws Exception {
+		double[] distances = new double[100];
+		for (int index = 0; index < distances.length; index++) {
+			distances[index] = (index * 37) % 11;
+		}
+
+		int[] full = DistrictRanking.nearest(distances, distances.length);
+		int[] truncated = DistrictRanking.nearest(distances, 27);
+
+		assertThat(truncated, is(Arrays.copyOf(full, 27)));
+	}
+
+	@Test
+	public void doesNotChangeDistances() throws Exception {
+		double[] distances = new double[] { 3.0, 1.0, 2.0 };
+
+		DistrictRanking.nearest(distances, 2);
+
+		assertThat(distances, is(new double[] { 3.0, 1.0, 2.0 }));
+	}
+}
@@ -3,6 +3,12 @@ package de.briemla.matsim.generator;
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
 
+import java.io.BufferedWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
 import org.junit.Test;
 import org.matsim.api.core.v01.Coord;
 import org.matsim.core.utils.geometry.CoordImpl;
@@ -95,6 +101,157 @@ public class DistrictTest {
 		assertThat(district.isInside(coord(21.0, 19.0)), is(false));
 	}
 
+	@Test
+	public void squareBorderCoordOnUpperLine() throws Exception {
+		District district = squareDistrict();
+
+		assertThat(district.isInside(coord(15.0, 20.0)), is(false));
+	}
+
+	@Test
+	public void squareBorderCoordOnRightLine() throws Exception {
+		District district = squareDistrict();
+
+		assertThat(district.isInside(coord(20.0, 15.0)), is(false));
+	}
+
+	@Test
+	public void squareBorderCoordOutsideBoundingBox() throws Exception {
+		District district = squareDistrict();
+
+		assertThat(district.isInside(coord(25.0, 15.0)), is(false));
+		assertThat(district.isInside(coord(5.0, 15.0)), is(false));
+	}
+
+	@Test
+	public void closedBorderCoordInside() throws Exception {
+		District district = squareDistrict();
+		district.add(coord(10.0, 10.0));
+
+		assertThat(district.isInside(coord(11.0, 19.0)), is(true));
+	}
+
+	@Test
+	public void centerOfBoundingBox() throws Exception {
+		District district = newDistrict();
+		district.add(coord(20.0, 20.0));
+		district.add(coord(10.0, 20.0));
+		district.add(coord(12.0, 12.0));
+		district.add(coord(20.0, 10.0));
+
+		assertThat(district.getCenter().getX(), is(15.0));
+		assertThat(district.getCenter().getY(), is(15.0));
+	}
+
+	@Test
+	public void fullWorkDistrictDropsOutOfEveryRanking() throws Exception {
+		District home = squareDistrict("Home", 0, 50, 0);
+		District otherHome = squareDistrict("OtherHome", 1, 50, 0);
+		District small = squareDistrict("Small", 2, 0, 1);
+		District large = squareDistrict("Large", 5, 0, 100);
+		List<District> districts = districtList(home, otherHome, small, large);
+		int[] filled = new int[1];
+		small.setListener(new DistrictListener() {
+
+			@Override
+			public void allInhabitantsWorking(District district) {
+			}
+
+			@Override
+			public void allWorkplacesTaken(District district) {
+				filled[0]++;
+			}
+		});
+		districts.forEach(district -> district.rankDistricts(districts));
+		SplittableRandom random = new SplittableRandom(4711L);
+
+		while (small.hasFreeWorkplace()) {
+			home.assignWorkplace(random);
+		}
+		for (int inhabitant = 0; inhabitant < 50; inhabitant++) {
+			home.assignWorkplace(random);
+			otherHome.assignWorkplace(random);
+		}
+
+		assertThat(filled[0], is(1));
+		assertThat(workers(home, districts), is("Home;0;0;1;49;50"));
+		assertThat(workers(otherHome, districts), is("OtherHome;0;0;0;50;50"));
+	}
+
+	@Test
+	public void selectsNearestFreeDistrictOutsideDistanceProfile() throws Exception {
+		List<District> districts = new ArrayList<>();
+		District home = squareDistrict("Home", 0, 4, 0);
+		districts.add(home);
+		for (int distance = 1; distance < 30; distance++) {
+			int workplaces = distance < 27 ? 0 : 1;
+			districts.add(squareDistrict("District" + distance, distance, 0, workplaces));
+		}
+		home.rankDistricts(districts);
+		SplittableRandom random = new SplittableRandom(4711L);
+
+		for (int inhabitant = 0; inhabitant < 3; inhabitant++) {
+			home.assignWorkplace(random);
+		}
+
+		assertThat(home.getDistrictsByDistance().size(), is(30));
+		assertThat(districts.get(27).hasFreeWorkplace(), is(false));
+		assertThat(districts.get(28).hasFreeWorkplace(), is(false));
+		assertThat(districts.get(29).hasFreeWorkplace(), is(false));
+		assertThat(home.getWorkingInhabitants(), is(3));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void failsWithoutFreeWorkplace() throws Exception {
+		District home = squareDistrict("Home", 0, 2, 0);
+		District work = squareDistrict("Work", 1, 0, 1);
+		List<District> districts = districtList(home, work);
+		districts.forEach(district -> district.rankDistricts(districts));
+		SplittableRandom random = new SplittableRandom(4711L);
+
+		home.assignWorkplace(random);
+		home.assignWorkplace(random);
+	}
+
+	private static List<District> districtList(District... districts) {
+		List<District> list = new ArrayList<>();
+		for (District district : districts) {
+			list.add(district);
+		}
+		return list;
+	}
+
+	private static String workers(District home, List<District> districts) throws Exception {
+		StringWriter text = new StringWriter();
+		try (BufferedWriter output = new BufferedWriter(text)) {
+			home.printWorkerTo(output, districts);
+		}
+		return text.toString().trim();
+	}
+
+	/**
+	 * Create a square {@link District} of size 10 whose center lies at the
+	 * given multiple of 10 on the x axis.
+	 */
+	private static District squareDistrict(String name, int position, int inhabitants, int workplaces) {
+		District district = new District(name, new Census(name, inhabitants, workplaces));
+		double x = position * 10.0;
+		district.add(coord(x, 0.0));
+		district.add(coord(x + 10.0, 0.0));
+		district.add(coord(x + 10.0, 10.0));
+		district.add(coord(x, 10.0));
+		return district;
+	}
+
+	private static District squareDistrict() {
+		District district = newDistrict();
+		district.add(coord(10.0, 10.0));
+		district.add(coord(20.0, 10.0));
+		district.add(coord(20.0, 20.0));
+		district.add(coord(10.0, 20.0));
+		return district;
+	}
+
 	private static District newDistrict() {
 		return new District("Test", dummyCensus());
 	}
@@ -0,0 +1,83 @@
+package de.briemla.matsim.generator;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.SplittableRandom;
+
+import org.junit.Test;
+
+public class FenwickTreeTest {
+
+	private static final int SAMPLES = 100000;
+
+	@Test
+	public void findsIndexOfCumulativeWeight() throws Exception {
+		FenwickTree tree = new FenwickTree(new long[] { 2, 0, 3, 1, 4 });
+
+		assertThat(tree.total(), is(10L));
+		assertThat(tree.find(0), is(0));
+		assertThat(tree.find(1), is(0));
+		assertThat(tree.find(2), is(2));
+		assertThat(tree.find(4), is(2));
+		assertThat(tree.find(5), is(3));
+		assertThat(tree.find(6), is(4));
+		assertThat(tree.find(9), is(4));
+	}
+
+	@Test
+	public void samplesProportionalToWeights() throws Exception {
+		long[] weights = new long[] { 5, 23, 0, 38, 43, 10, 1 };
+		FenwickTree tree = new FenwickTree(weights);
+		SplittableRandom random = new SplittableRandom(4711L);
+
+		int[] counts = new int[weights.length];
+		for (int sample = 0; sample < SAMPLES; sample++) {
+			counts[tree.sample(random)]++;
+		}
+
+		for (int index = 0; index < weights.length; index++) {
+			double expected = SAMPLES * weights[index] / (double) tree.total();
+			assertThat(Math.abs(counts[index] - expected) < 4 * Math.sqrt(expected) + 1, is(true));
+		}
+		assertThat(counts[2], is(0));
+	}
+
+	@Test
+	public void zeroedWeightIsNeverSampled() throws Exception {
+		FenwickTree tree = new FenwickTree(new long[] { 1, 100, 1 });
+		SplittableRandom random = new SplittableRandom(4711L);
+
+		tree.set(1, 0);
+
+		assertThat(tree.weight(1), is(0L));
+		assertThat(tree.total(), is(2L));
+		for (int sample = 0; sample < SAMPLES; sample++) {
+			assertThat(tree.sample(random) != 1, is(true));
+		}
+	}
+
+	@Test
+	public void totalIsZeroAfterZeroingAllWeights() throws Exception {
+		FenwickTree tree = new FenwickTree(new long[] { 3, 7, 2, 5, 1 });
+
+		for (int index = 0; index < tree.size(); index++) {
+			tree.set(index, 0);
+		}
+
+		assertThat(tree.total(), is(0L));
+	}
+
+	@Test
+	public void emptyTreeHasZeroTotal() throws Exception {
+		FenwickTree tree = new FenwickTree(new long[0]);
+
+		assertThat(tree.size(), is(0));
+		assertThat(tree.total(), is(0L));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsNegativeWeight() throws Exception {
+		new FenwickTree(new long[] { 1, -1 });
+	}
+}
@@ -0,0 +1,184 @@
+package de.briemla.matsim.generator;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.junit.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.population.routes.NetworkRoute;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.core.utils.geometry.CoordImpl;
+
+import de.briemla.matsim.converter.CompactNetwork;
+
+public class InitialRoutesTest {
+
+	private static final int SIZE = 12;
+	private static final int ROWS = 500;
+
+	@Test
+	public void treeFindsLeastCostOfAllReachableNodes() throws Exception {
+		for (long seed = 0; seed < 10; seed++) {
+			Network network = gridNetwork(seed);
+			CompactNetwork compact = CompactNetwork.of(network);
+			double[] travelTime = travelTimes(compact);
+			ShortestPathTree tree = new ShortestPathTree(compact, travelTime);
+			int[] all = new int[compact.nodeCount()];
+			Arrays.setAll(all, node -> node);
+
+			for (int origin = 0; origin < compact.nodeCount(); origin += 7) {
+				double[] expected = bellmanFord(compact, travelTime, origin);
+				tree.search(origin, all);
+				for (int node = 0; node < compact.nodeCount(); node++) {
+					assertThat(tree.isSettled(node), is(expected[node] < Double.POSITIVE_INFINITY));
+					if (tree.isSettled(node)) {
+						assertThat(Math.abs(tree.cost(node) - expected[node]) < 1e-9, is(true));
+						assertThat(Math.abs(cost(tree.path(node), travelTime) - expected[node]) < 1e-9, is(true));
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void routesAreConnectedAndIndependentOfNumberOfThreads() throws Exception {
+		Network network = gridNetwork(5);
+		PlanTable table = randomTable(network, 5);
+		InitialRoutes single = InitialRoutes.compute(table, network, 1);
+		InitialRoutes parallel = InitialRoutes.compute(table, network, 4);
+
+		assertThat(parallel.pairs(), is(single.pairs()));
+		assertThat(single.pairs() < InitialRoutes.LEGS_PER_PLAN * ROWS, is(true));
+		int routed = 0;
+		for (int row = 0; row < table.size(); row++) {
+			for (int leg = 0; leg < InitialRoutes.LEGS_PER_PLAN; leg++) {
+				NetworkRoute expected = single.route(row, leg);
+				NetworkRoute actual = parallel.route(row, leg);
+				if (expected == null) {
+					assertThat(actual == null, is(true));
+					continue;
+				}
+				assertThat(actual.getStartLinkId(), is(table.activityLink(row, leg)));
+				assertThat(actual.getEndLinkId(), is(table.activityLink(row, leg + 1)));
+				assertThat(actual.getLinkIds(), is(expected.getLinkIds()));
+				assertThat(actual.getTravelTime(), is(expected.getTravelTime()));
+				assertConnected(network, actual);
+				routed++;
+			}
+		}
+		assertThat(routed > ROWS, is(true));
+	}
+
+	private static void assertConnected(Network network, NetworkRoute route) {
+		List<Id<Link>> links = new ArrayList<>();
+		links.add(route.getStartLinkId());
+		links.addAll(route.getLinkIds());
+		if (!route.getEndLinkId().equals(route.getStartLinkId()) || !route.getLinkIds().isEmpty()) {
+			links.add(route.getEndLinkId());
+		}
+		for (int index = 1; index < links.size(); index++) {
+			Node previousEnd = network.getLinks().get(links.get(index - 1)).getToNode();
+			Node nextStart = network.getLinks().get(links.get(index)).getFromNode();
+			assertThat(nextStart.getId(), is(previousEnd.getId()));
+		}
+	}
+
+	/**
+	 * Grid of nodes connected to their right and upper neighbour in random
+	 * directions, so some nodes can not reach others.
+	 */
+	private static Network gridNetwork(long seed) {
+		Network network = ScenarioUtils.createScenario(ConfigUtils.createConfig()).getNetwork();
+		SplittableRandom random = new SplittableRandom(seed);
+		Node[][] nodes = new Node[SIZE][SIZE];
+		for (int x = 0; x < SIZE; x++) {
+			for (int y = 0; y < SIZE; y++) {
+				nodes[x][y] = network.getFactory().createNode(Id.createNodeId(x + "_" + y),
+						new CoordImpl(100.0 * x, 100.0 * y));
+				network.addNode(nodes[x][y]);
+			}
+		}
+		for (int x = 0; x < SIZE; x++) {
+			for (int y = 0; y < SIZE; y++) {
+				if (x + 1 < SIZE) {
+					connect(network, nodes[x][y], nodes[x + 1][y], random);
+				}
+				if (y + 1 < SIZE) {
+					connect(network, nodes[x][y], nodes[x][y + 1], random);
+				}
+			}
+		}
+		return network;
+	}
+
+	private static void connect(Network network, Node first, Node second, SplittableRandom random) {
+		int directions = random.nextInt(4);
+		if (directions != 1) {
+			addLink(network, first, second, random);
+		}
+		if (directions != 2) {
+			addLink(network, second, first, random);
+		}
+	}
+
+	private static void addLink(Network network, Node from, Node to, SplittableRandom random) {
+		Link link = network.getFactory().createLink(Id.createLinkId(from.getId() + "-" + to.getId()), from, to);
+		link.setLength(100.0);
+		link.setFreespeed(5.0 + random.nextInt(4) * 5.0);
+		network.addLink(link);
+	}
+
+	private static PlanTable randomTable(Network network, long seed) {
+		NodeCoordinates nodes = NodeCoordinates.of(network.getNodes().values())
+				.withNearestLinks(LinkIndex.of(network));
+		PlanTable table = new PlanTable(nodes, new String[] { "City" }, new int[] { 0, ROWS });
+		SplittableRandom random = new SplittableRandom(seed);
+		for (int row = 0; row < ROWS; row++) {
+			int home = random.nextInt(10);
+			int work = nodes.size() - 1 - random.nextInt(10);
+			int workLeave = random.nextBoolean() ? 16 * 3600 : PlanTable.SECONDS_PER_DAY + 3600;
+			table.set(row, home, work, row % 2 == 0 ? home : work, 7 * 3600, workLeave, PlanTable.CAR);
+		}
+		return table;
+	}
+
+	private static double[] travelTimes(CompactNetwork compact) {
+		double[] travelTime = new double[compact.linkCount()];
+		for (int link = 0; link < compact.linkCount(); link++) {
+			travelTime[link] = compact.link(link).getLength() / compact.link(link).getFreespeed();
+		}
+		return travelTime;
+	}
+
+	private static double[] bellmanFord(CompactNetwork compact, double[] travelTime, int origin) {
+		double[] cost = new double[compact.nodeCount()];
+		Arrays.fill(cost, Double.POSITIVE_INFINITY);
+		cost[origin] = 0.0;
+		for (int round = 0; round < compact.nodeCount(); round++) {
+			for (int link = 0; link < compact.linkCount(); link++) {
+				double candidate = cost[compact.fromNode(link)] + travelTime[link];
+				if (candidate < cost[compact.toNode(link)]) {
+					cost[compact.toNode(link)] = candidate;
+				}
+			}
+		}
+		return cost;
+	}
+
+	private static double cost(int[] path, double[] travelTime) {
+		double cost = 0.0;
+		for (int link : path) {
+			cost += travelTime[link];
+		}
+		return cost;
+	}
+}
@@ -0,0 +1,45 @@
+package de.briemla.matsim.generator;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class KmlDistrictReaderTest {
+
+	private static final String KML = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+			+ "<kml xmlns=\"http://www.opengis.net/kml/2.2\"><Document><name>doc</name>"
+			+ "<Style id=\"border\"><LineStyle><color>ff0000ff</color></LineStyle></Style>"
+			+ "<Folder><name>Stadtteile</name>"
+			+ "<Placemark><name>Landkreisgrenze</name><styleUrl>#border</styleUrl>"
+			+ "<LineString><coordinates>8.0,49.0,0 8.1,49.0,0</coordinates></LineString></Placemark>"
+			+ "<Placemark><name>Innenstadt-Ost</name><styleUrl>#border</styleUrl><Polygon>"
+			+ "<outerBoundaryIs><LinearRing><coordinates>\n\t8.4,49.0,0 8.5,49.0,0\n\t8.5,49.1,0 8.4,49.0,0\n"
+			+ "</coordinates></LinearRing></outerBoundaryIs>"
+			+ "<innerBoundaryIs><LinearRing><coordinates>8.45,49.01,0 8.46,49.01,0 8.45,49.02,0"
+			+ "</coordinates></LinearRing></innerBoundaryIs></Polygon></Placemark>"
+			+ "<Placemark><Polygon><outerBoundaryIs><LinearRing><coordinates>1,2 3,4 5,6</coordinates>"
+			+ "</LinearRing></outerBoundaryIs></Polygon><name>Grötzingen</name></Placemark>"
+			+ "</Folder></Document></kml>";
+
+	@Test
+	public void readsOuterBoundaryOfPolygonPlacemarks() throws Exception {
+		File kml = File.createTempFile("districts", ".kml");
+		kml.deleteOnExit();
+		Files.write(kml.toPath(), KML.getBytes(StandardCharsets.UTF_8));
+		List<String> districts = new ArrayList<>();
+
+		new KmlDistrictReader(kml).read((name, longitudes, latitudes) -> districts
+				.add(name + " " + Arrays.toString(longitudes) + " " + Arrays.toString(latitudes)));
+
+		assertThat(districts, is(Arrays.asList("Innenstadt-Ost [8.4, 8.5, 8.5, 8.4] [49.0, 49.0, 49.1, 49.0]",
+				"Grötzingen [1.0, 3.0, 5.0] [2.0, 4.0, 6.0]")));
+	}
+}
@@ -0,0 +1,117 @@
+package de.briemla.matsim.generator;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.junit.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.NetworkFactory;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.core.utils.geometry.CoordImpl;
+
+public class LinkIndexTest {
+
+	private static final int NODES = 300;
+	private static final int LINKS = 600;
+	private static final int QUERIES = 2000;
+
+	@Test
+	public void findsSameLinkAsLinearSearch() throws Exception {
+		for (long seed = 0; seed < 10; seed++) {
+			Network network = randomNetwork(seed);
+			List<Link> links = new ArrayList<>(network.getLinks().values());
+			LinkIndex index = LinkIndex.of(network);
+			SplittableRandom random = new SplittableRandom(seed);
+
+			for (int query = 0; query < QUERIES; query++) {
+				double x = -500.0 + random.nextDouble() * 11000.0;
+				double y = -500.0 + random.nextDouble() * 6000.0;
+				assertThat("seed " + seed, index.id(index.nearest(x, y)), is(nearest(links, x, y).getId()));
+			}
+		}
+	}
+
+	@Test
+	public void tiesGoToFirstLink() throws Exception {
+		Network network = ScenarioUtils.createScenario(ConfigUtils.createConfig()).getNetwork();
+		NetworkFactory factory = network.getFactory();
+		Node left = node(network, "left", 0.0, 0.0);
+		Node right = node(network, "right", 100.0, 0.0);
+		network.addLink(factory.createLink(Id.createLinkId("forward"), left, right));
+		network.addLink(factory.createLink(Id.createLinkId("backward"), right, left));
+		LinkIndex index = LinkIndex.of(network);
+
+		assertThat(index.id(index.nearest(50.0, 10.0)), is(Id.createLinkId("forward")));
+	}
+
+	@Test
+	public void activitiesAreCreatedOnNearestLink() throws Exception {
+		Network network = randomNetwork(3);
+		NodeCoordinates nodes = NodeCoordinates.of(network.getNodes().values())
+				.withNearestLinks(LinkIndex.of(network));
+		List<Link> links = new ArrayList<>(network.getLinks().values());
+
+		for (int node = 0; node < nodes.size(); node++) {
+			Activity activity = nodes.activity(
+					ScenarioUtils.createScenario(ConfigUtils.createConfig()).getPopulation().getFactory(), "home",
+					node);
+			assertThat(activity.getLinkId(), is(nearest(links, nodes.x(node), nodes.y(node)).getId()));
+		}
+	}
+
+	private static Network randomNetwork(long seed) {
+		Network network = ScenarioUtils.createScenario(ConfigUtils.createConfig()).getNetwork();
+		SplittableRandom random = new SplittableRandom(seed);
+		List<Node> nodes = new ArrayList<>();
+		for (int node = 0; node < NODES; node++) {
+			nodes.add(node(network, "n" + node, random.nextInt(100) * 100.0, random.nextInt(50) * 100.0));
+		}
+		for (int link = 0; link < LINKS; link++) {
+			Node from = nodes.get(random.nextInt(NODES));
+			Node to = nodes.get(random.nextInt(NODES));
+			network.addLink(network.getFactory().createLink(Id.createLinkId("l" + link), from, to));
+		}
+		return network;
+	}
+
+	private static Node node(Network network, String id, double x, double y) {
+		Node node = network.getFactory().createNode(Id.createNodeId(id), new CoordImpl(x, y));
+		network.addNode(node);
+		return node;
+	}
+
+	private static Link nearest(List<Link> links, double x, double y) {
+		Link best = null;
+		double bestDistance = Double.POSITIVE_INFINITY;
+		for (Link link : links) {
+			double distance = distance(link, x, y);
+			if (distance < bestDistance) {
+				bestDistance = distance;
+				best = link;
+			}
+		}
+		return best;
+	}
+
+	private static double distance(Link link, double x, double y) {
+		double fromX = link.getFromNode().getCoord().getX();
+		double fromY = link.getFromNode().getCoord().getY();
+		double dx = link.getToNode().getCoord().getX() - fromX;
+		double dy = link.getToNode().getCoord().getY() - fromY;
+		double lengthSquared = dx * dx + dy * dy;
+		double t = lengthSquared > 0.0
+				? Math.max(0.0, Math.min(1.0, ((x - fromX) * dx + (y - fromY) * dy) / lengthSquared)) : 0.0;
+		double nearestX = fromX + t * dx - x;
+		double nearestY = fromY + t * dy - y;
+		return nearestX * nearestX + nearestY * nearestY;
+	}
+}
@@ -0,0 +1,162 @@
+package de.briemla.matsim.generator;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.NetworkFactory;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.network.LinkImpl;
+import org.matsim.core.network.MatsimNetworkReader;
+import org.matsim.core.network.NetworkWriter;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.core.utils.geometry.CoordImpl;
+
+public class NetworkSnapshotTest {
+
+	@Test
+	public void loadsSameNetworkAsWritten() throws Exception {
+		File networkFile = temporaryNetworkFile("<network/>");
+		Network network = createNetwork();
+		new NetworkSnapshot(networkFile).write(network);
+
+		Network loaded = emptyNetwork();
+		boolean fromSnapshot = new NetworkSnapshot(networkFile).loadInto(loaded);
+
+		assertThat(fromSnapshot, is(true));
+		assertSameNetwork(loaded, network);
+	}
+
+	@Test
+	public void loadsSameNetworkAsMatsimNetworkReader() throws Exception {
+		File networkFile = writeNetworkFile(createNetwork());
+		Scenario parsed = ScenarioUtils.createScenario(ConfigUtils.createConfig());
+		new MatsimNetworkReader(parsed).readFile(networkFile.getPath());
+		new NetworkSnapshot(networkFile).write(parsed.getNetwork());
+
+		Network loaded = emptyNetwork();
+		boolean fromSnapshot = new NetworkSnapshot(networkFile).loadInto(loaded);
+
+		assertThat(fromSnapshot, is(true));
+		assertThat(loaded.getCapacityPeriod(), is(parsed.getNetwork().getCapacityPeriod()));
+		assertThat(loaded.getEffectiveLaneWidth(), is(parsed.getNetwork().getEffectiveLaneWidth()));
+		assertSameNetwork(loaded, parsed.getNetwork());
+	}
+
+	@Test
+	public void loadScenarioReadsPopulationAgainstSnapshotNetwork() throws Exception {
+		File networkFile = writeNetworkFile(createNetwork());
+		Scenario parsed = ScenarioUtils.createScenario(ConfigUtils.createConfig());
+		new MatsimNetworkReader(parsed).readFile(networkFile.getPath());
+		new NetworkSnapshot(networkFile).write(parsed.getNetwork());
+		File plansFile = File.createTempFile("plans", ".xml");
+		plansFile.deleteOnExit();
+		Files.write(plansFile.toPath(), ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<population>\n"
+				+ "<person id=\"1\"><plan selected=\"yes\">\n"
+				+ "<act type=\"home\" link=\"forward\" x=\"0.0\" y=\"0.0\" end_time=\"08:00:00\"/>\n"
+				+ "<leg mode=\"car\"><route type=\"links\">forward 7 forward</route></leg>\n"
+				+ "<act type=\"work\" link=\"forward\" x=\"0.0\" y=\"0.0\"/>\n"
+				+ "</plan></person>\n</population>\n").getBytes(StandardCharsets.UTF_8));
+		Config config = ConfigUtils.createConfig();
+		config.network().setInputFile(networkFile.getPath());
+		config.plans().setInputFile(plansFile.getPath());
+
+		Scenario scenario = NetworkSnapshot.loadScenario(config);
+
+		assertSameNetwork(scenario.getNetwork(), parsed.getNetwork());
+		Leg leg = (Leg) scenario.getPopulation().getPersons().get(Id.createPersonId(1)).getSelectedPlan()
+				.getPlanElements().get(1);
+		assertThat(leg.getRoute().getDistance(), is(parsed.getNetwork().getLinks().get(Id.createLinkId(7)).getLength()));
+		assertThat(config.network().getInputFile(), is(networkFile.getPath()));
+	}
+
+	@Test
+	public void ignoresSnapshotOfChangedNetworkFile() throws Exception {
+		File networkFile = temporaryNetworkFile("<network/>");
+		new NetworkSnapshot(networkFile).write(createNetwork());
+		Files.write(networkFile.toPath(), "<network />".getBytes(StandardCharsets.UTF_8));
+
+		Network loaded = emptyNetwork();
+		boolean fromSnapshot = new NetworkSnapshot(networkFile).loadInto(loaded);
+
+		assertThat(fromSnapshot, is(false));
+		assertThat(loaded.getNodes().isEmpty(), is(true));
+	}
+
+	private static void assertSameNetwork(Network loaded, Network network) {
+		assertThat(new ArrayList<>(loaded.getNodes().keySet()), is(new ArrayList<>(network.getNodes().keySet())));
+		assertThat(new ArrayList<>(loaded.getLinks().keySet()), is(new ArrayList<>(network.getLinks().keySet())));
+		for (Node node : network.getNodes().values()) {
+			Node loadedNode = loaded.getNodes().get(node.getId());
+			assertThat(loadedNode.getCoord().getX(), is(node.getCoord().getX()));
+			assertThat(loadedNode.getCoord().getY(), is(node.getCoord().getY()));
+		}
+		for (Link link : network.getLinks().values()) {
+			Link loadedLink = loaded.getLinks().get(link.getId());
+			assertThat(loadedLink.getFromNode().getId(), is(link.getFromNode().getId()));
+			assertThat(loadedLink.getToNode().getId(), is(link.getToNode().getId()));
+			assertThat(loadedLink.getLength(), is(link.getLength()));
+			assertThat(loadedLink.getFreespeed(), is(link.getFreespeed()));
+			assertThat(loadedLink.getCapacity(), is(link.getCapacity()));
+			assertThat(loadedLink.getNumberOfLanes(), is(link.getNumberOfLanes()));
+			assertThat(loadedLink.getAllowedModes(), is(link.getAllowedModes()));
+			assertThat(((LinkImpl) loadedLink).getOrigId(), is(((LinkImpl) link).getOrigId()));
+			assertThat(((LinkImpl) loadedLink).getType(), is(((LinkImpl) link).getType()));
+		}
+	}
+
+	private static File writeNetworkFile(Network network) throws Exception {
+		File networkFile = temporaryNetworkFile("");
+		new NetworkWriter(network).write(networkFile.getPath());
+		return networkFile;
+	}
+
+	private static File temporaryNetworkFile(String content) throws Exception {
+		File networkFile = File.createTempFile("network", ".xml");
+		networkFile.deleteOnExit();
+		new File(networkFile.getPath() + ".snapshot").deleteOnExit();
+		Files.write(networkFile.toPath(), content.getBytes(StandardCharsets.UTF_8));
+		return networkFile;
+	}
+
+	private static Network emptyNetwork() {
+		return ScenarioUtils.createScenario(ConfigUtils.createConfig()).getNetwork();
+	}
+
+	private static Network createNetwork() {
+		Network network = emptyNetwork();
+		NetworkFactory factory = network.getFactory();
+		Node first = factory.createNode(Id.createNodeId("first"), new CoordImpl(457000.25, 5428000.5));
+		Node second = factory.createNode(Id.createNodeId(2), new CoordImpl(-1.0, 0.1));
+		network.addNode(first);
+		network.addNode(second);
+		Link forward = factory.createLink(Id.createLinkId("forward"), first, second);
+		forward.setLength(123.4);
+		forward.setFreespeed(13.89);
+		forward.setCapacity(1800.0);
+		forward.setNumberOfLanes(2.0);
+		forward.setAllowedModes(new HashSet<>(Arrays.asList("car", "bus")));
+		((LinkImpl) forward).setOrigId("4711");
+		((LinkImpl) forward).setType("primary");
+		Link backward = factory.createLink(Id.createLinkId(7), second, first);
+		backward.setLength(98.7);
+		backward.setAllowedModes(new HashSet<>());
+		network.addLink(forward);
+		network.addLink(backward);
+		return network;
+	}
+}
@@ -0,0 +1,216 @@
+package de.briemla.matsim.generator;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.junit.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.PlanElement;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.api.core.v01.population.PopulationFactory;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.population.ActivityImpl;
+import org.matsim.core.population.MatsimPopulationReader;
+import org.matsim.core.population.routes.NetworkRoute;
+import org.matsim.core.population.routes.RouteUtils;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.core.utils.geometry.CoordImpl;
+import org.w3c.dom.Document;
+
+public class ParallelPopulationWriterTest {
+
+	private static final int PERSONS = 5000;
+
+	@Test
+	public void compressedChunksContainSamePlansAsSingleThread() throws Exception {
+		Population population = createPopulation();
+		Path plain = temporaryFile(".xml");
+		Path compressed = temporaryFile(".xml.gz");
+
+		new ParallelPopulationWriter(1).write(population, plain);
+		new ParallelPopulationWriter(4).write(population, compressed);
+
+		byte[] expected = Files.readAllBytes(plain);
+		byte[] uncompressed = uncompress(compressed);
+		assertThat(new String(uncompressed, "UTF-8"), is(new String(expected, "UTF-8")));
+		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+		factory.setValidating(false);
+		factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+		Document document = factory.newDocumentBuilder().parse(new ByteArrayInputStream(uncompressed));
+		assertThat(document.getElementsByTagName("person").getLength(), is(PERSONS));
+		assertThat(document.getElementsByTagName("act").getLength(), is(3 * PERSONS));
+	}
+
+	@Test
+	public void writesNetworkRoutesFromStartToEndLink() throws Exception {
+		Population population = ScenarioUtils.createScenario(ConfigUtils.createConfig()).getPopulation();
+		PopulationFactory factory = population.getFactory();
+		Person person = factory.createPerson(Id.createPersonId("driver"));
+		Plan plan = factory.createPlan();
+		plan.addActivity(factory.createActivityFromLinkId("home", Id.createLinkId("a")));
+		Leg leg = factory.createLeg("car");
+		NetworkRoute route = RouteUtils.createNetworkRoute(
+				Arrays.asList(Id.createLinkId("a"), Id.createLinkId("b"), Id.createLinkId("c")),
+				ScenarioUtils.createScenario(ConfigUtils.createConfig()).getNetwork());
+		route.setTravelTime(90.0);
+		route.setDistance(250.0);
+		leg.setRoute(route);
+		plan.addLeg(leg);
+		plan.addActivity(factory.createActivityFromLinkId("work", Id.createLinkId("c")));
+		person.addPlan(plan);
+		population.addPerson(person);
+		Path file = temporaryFile(".xml");
+
+		new ParallelPopulationWriter(2).write(population, file);
+
+		String xml = new String(Files.readAllBytes(file), "UTF-8");
+		assertThat(xml.contains("<route type=\"links\" start_link=\"a\" end_link=\"c\" trav_time=\"00:01:30\" "
+				+ "distance=\"250.0\">a b c</route>"), is(true));
+	}
+
+	@Test
+	public void matsimReadsSamePlansAsWritten() throws Exception {
+		Population population = createRoutedPopulation();
+		Path file = temporaryFile(".xml.gz");
+
+		new ParallelPopulationWriter(3).write(population, file);
+
+		Scenario scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
+		new MatsimPopulationReader(scenario).readFile(file.toString());
+		assertThat(scenario.getPopulation().getPersons().size(), is(PERSONS));
+		assertThat(describe(scenario.getPopulation()), is(describe(population)));
+	}
+
+	/**
+	 * Create {@link Person}s whose activities have coordinates and links and
+	 * whose legs have {@link NetworkRoute}s, like the plans written by the
+	 * generator.
+	 */
+	private static Population createRoutedPopulation() {
+		Population population = ScenarioUtils.createScenario(ConfigUtils.createConfig()).getPopulation();
+		PopulationFactory factory = population.getFactory();
+		for (int index = 0; index < PERSONS; index++) {
+			Person person = factory.createPerson(Id.createPersonId("Person<" + index + ">&"));
+			Plan plan = factory.createPlan();
+			Activity home = activity(factory, "home", index, 2.5 * index, "home" + index);
+			home.setEndTime(6 * 3600 + index);
+			plan.addActivity(home);
+			plan.addLeg(leg(factory, "home" + index, "road" + index % 7, "work" + index));
+			Activity work = activity(factory, "work", -index, 0.5, "work" + index);
+			work.setEndTime(16 * 3600 + index % 60);
+			plan.addActivity(work);
+			plan.addLeg(leg(factory, "work" + index, "work" + index, "home" + index));
+			plan.addActivity(activity(factory, "home", index, 2.5 * index, "home" + index));
+			person.addPlan(plan);
+			population.addPerson(person);
+		}
+		return population;
+	}
+
+	private static Activity activity(PopulationFactory factory, String type, double x, double y, String link) {
+		ActivityImpl activity = (ActivityImpl) factory.createActivityFromCoord(type, new CoordImpl(x, y));
+		activity.setLinkId(Id.createLinkId(link));
+		return activity;
+	}
+
+	private static Leg leg(PopulationFactory factory, String... links) {
+		Leg leg = factory.createLeg("car");
+		List<Id<Link>> linkIds = new ArrayList<>();
+		for (String link : links) {
+			linkIds.add(Id.createLinkId(link));
+		}
+		NetworkRoute route = RouteUtils.createNetworkRoute(linkIds,
+				ScenarioUtils.createScenario(ConfigUtils.createConfig()).getNetwork());
+		route.setTravelTime(60.0 * links.length);
+		route.setDistance(100.0 * links.length);
+		leg.setRoute(route);
+		return leg;
+	}
+
+	/**
+	 * @return one line per {@link Person} with the id, all activities and all
+	 *         routes, sorted by id
+	 */
+	private static List<String> describe(Population population) {
+		List<String> description = new ArrayList<>();
+		for (Person person : population.getPersons().values()) {
+			StringBuilder plan = new StringBuilder(person.getId().toString());
+			for (PlanElement element : person.getSelectedPlan().getPlanElements()) {
+				if (element instanceof Activity) {
+					Activity activity = (Activity) element;
+					plan.append(';').append(activity.getType()).append(';').append(activity.getCoord().getX())
+							.append(';').append(activity.getCoord().getY()).append(';')
+							.append(activity.getLinkId()).append(';').append(activity.getEndTime());
+				}
+				if (element instanceof Leg) {
+					NetworkRoute route = (NetworkRoute) ((Leg) element).getRoute();
+					plan.append(';').append(((Leg) element).getMode()).append(';').append(route.getStartLinkId())
+							.append(';').append(route.getLinkIds()).append(';').append(route.getEndLinkId())
+							.append(';').append(route.getTravelTime()).append(';').append(route.getDistance());
+				}
+			}
+			description.add(plan.toString());
+		}
+		Collections.sort(description);
+		return description;
+	}
+
+	private static Population createPopulation() {
+		Population population = ScenarioUtils.createScenario(ConfigUtils.createConfig()).getPopulation();
+		PopulationFactory factory = population.getFactory();
+		for (int index = 0; index < PERSONS; index++) {
+			Person person = factory.createPerson(Id.createPersonId("Person<" + index + ">&"));
+			Plan plan = factory.createPlan();
+			Activity home = factory.createActivityFromCoord("home", new CoordImpl(index, 2.5 * index));
+			home.setEndTime(6 * 3600 + index);
+			plan.addActivity(home);
+			plan.addLeg(factory.createLeg("car"));
+			Activity work = factory.createActivityFromCoord("work", new CoordImpl(-index, 0.5));
+			work.setEndTime(16 * 3600);
+			plan.addActivity(work);
+			plan.addLeg(factory.createLeg("car"));
+			plan.addActivity(factory.createActivityFromCoord("home", new CoordImpl(index, 2.5 * index)));
+			person.addPlan(plan);
+			population.addPerson(person);
+		}
+		return population;
+	}
+
+	private static Path temporaryFile(String suffix) throws Exception {
+		File file = File.createTempFile("population", suffix);
+		file.deleteOnExit();
+		return file.toPath();
+	}
+
+	private static byte[] uncompress(Path file) throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (InputStream input = new GZIPInputStream(Files.newInputStream(file))) {
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = input.read(buffer)) > 0) {
+				bytes.write(buffer, 0, read);
+			}
+		}
+		return bytes.toByteArray();
+	}
+}
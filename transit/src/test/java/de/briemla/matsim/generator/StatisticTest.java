@@ -0,0 +1,62 @@
+package de.briemla.matsim.generator;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+public class StatisticTest {
+
+	@Test
+	public void defaultSampleIsHalfOfKarlsruhe() throws Exception {
+		Census durlach = Statistic.karlsruhe().findCensus("Durlach");
+
+		assertThat(durlach.getInhabitants(), is(9358));
+		assertThat(durlach.getWorkplaces(), is(20837));
+	}
+
+	@Test
+	public void scalesCensusBySampleRate() throws Exception {
+		Statistic statistic = Statistic.karlsruhe(0.1);
+		Census durlach = statistic.findCensus("Durlach");
+
+		assertThat(statistic.getSampleRate(), is(0.1));
+		assertThat(durlach.getInhabitants(), is(1872));
+		assertThat(durlach.getWorkplaces(), is(4167));
+	}
+
+	@Test
+	public void roundsSampledCounts() throws Exception {
+		assertThat(Statistic.sample(100, 0.29), is(29));
+		assertThat(Statistic.sample(3, 0.5), is(2));
+		assertThat(Statistic.sample(1, 0.1), is(0));
+		assertThat(Statistic.sample(18716, 1.0), is(18716));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsEmptySample() throws Exception {
+		Statistic.karlsruhe(0.0);
+	}
+
+	@Test
+	public void parsesSampleRateAsFractionOrPercentage() throws Exception {
+		assertThat(PrimitivePopulationGenerator.sampleRate(new String[] {}), is(Statistic.DEFAULT_SAMPLE_RATE));
+		assertThat(PrimitivePopulationGenerator.sampleRate(new String[] { "--sample-rate=0.25" }), is(0.25));
+		assertThat(PrimitivePopulationGenerator.sampleRate(new String[] { "--streaming", "--sample-rate=10%" }),
+				is(0.1));
+	}
+
+	@Test
+	public void namesSampleConfigByPercentage() throws Exception {
+		assertThat(PrimitivePopulationGenerator.sampleConfigFile(0.01),
+				is("./input/config_population_karlsruhe_1pct.xml"));
+		assertThat(PrimitivePopulationGenerator.sampleConfigFile(0.075),
+				is("./input/config_population_karlsruhe_7.5pct.xml"));
+	}
+
+	@Test
+	public void namesSamplePopulationByPercentage() throws Exception {
+		assertThat(PrimitivePopulationGenerator.samplePopulationFile(0.01), is("./input/population_1pct.xml"));
+		assertThat(PrimitivePopulationGenerator.samplePopulationFile(0.5), is("./input/population_50pct.xml"));
+	}
+}
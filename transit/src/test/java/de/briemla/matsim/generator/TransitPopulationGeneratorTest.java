@@ -0,0 +1,102 @@
+package de.briemla.matsim.generator;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+import org.junit.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.PopulationFactory;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.core.utils.geometry.CoordImpl;
+
+public class TransitPopulationGeneratorTest {
+
+	private static final int NODES = 100;
+	private static final long SEED = 4711L;
+
+	@Test
+	public void homeIsSameInMorningAndEveningAndWorkIsSampled() throws Exception {
+		NodeCoordinates nodes = createNodes();
+		PopulationFactory factory = factory();
+		Set<String> workplaces = new HashSet<>();
+
+		for (int node = 0; node < NODES; node++) {
+			Person person = TransitPopulationGenerator.createPerson(factory, nodes, node, SEED);
+			List<Activity> activities = activities(person);
+
+			assertThat(person.getId().toString(), is(nodes.id(node)));
+			assertThat(activities.get(0).getCoord().getX(), is(nodes.x(node)));
+			assertThat(activities.get(2).getCoord().getX(), is(nodes.x(node)));
+			assertThat(activities.get(2).getCoord().getY(), is(nodes.y(node)));
+			workplaces.add(activities.get(1).getCoord().getX() + "," + activities.get(1).getCoord().getY());
+		}
+		assertThat(workplaces.size() > NODES / 2, is(true));
+	}
+
+	@Test
+	public void sameSeedCreatesSamePersonInAnyOrder() throws Exception {
+		NodeCoordinates nodes = createNodes();
+		PopulationFactory factory = factory();
+
+		for (int node = NODES - 1; node >= 0; node--) {
+			List<Activity> first = activities(TransitPopulationGenerator.createPerson(factory, nodes, node, SEED));
+			List<Activity> second = activities(TransitPopulationGenerator.createPerson(factory, nodes, node, SEED));
+			for (int activity = 0; activity < first.size(); activity++) {
+				Coord expected = first.get(activity).getCoord();
+				assertThat(second.get(activity).getCoord().getX(), is(expected.getX()));
+				assertThat(second.get(activity).getCoord().getY(), is(expected.getY()));
+				assertThat(second.get(activity).getEndTime(), is(first.get(activity).getEndTime()));
+			}
+		}
+	}
+
+	@Test
+	public void neighbouringSeedsDrawUnrelatedValues() throws Exception {
+		Set<Long> firstValues = new HashSet<>();
+
+		for (int node = 0; node < NODES; node++) {
+			SplittableRandom person = new SplittableRandom(TransitPopulationGenerator.personSeed(SEED, node));
+			SplittableRandom nextPopulation = new SplittableRandom(
+					TransitPopulationGenerator.personSeed(SEED + 1, node));
+			long first = person.nextLong();
+			long second = person.nextLong();
+			long firstOfNextPopulation = nextPopulation.nextLong();
+
+			assertThat(second == firstOfNextPopulation, is(false));
+			firstValues.add(first);
+			firstValues.add(firstOfNextPopulation);
+		}
+		assertThat(firstValues.size(), is(2 * NODES));
+	}
+
+	private static NodeCoordinates createNodes() {
+		Network network = ScenarioUtils.createScenario(ConfigUtils.createConfig()).getNetwork();
+		for (int node = 0; node < NODES; node++) {
+			network.addNode(network.getFactory().createNode(Id.createNodeId("node" + node),
+					new CoordImpl(node, 1000 + node)));
+		}
+		return NodeCoordinates.of(network.getNodes().values());
+	}
+
+	private static PopulationFactory factory() {
+		return ScenarioUtils.createScenario(ConfigUtils.createConfig()).getPopulation().getFactory();
+	}
+
+	private static List<Activity> activities(Person person) {
+		List<Activity> activities = new ArrayList<>();
+		person.getSelectedPlan().getPlanElements().stream().filter(element -> element instanceof Activity)
+				.forEach(element -> activities.add((Activity) element));
+		return activities;
+	}
+}
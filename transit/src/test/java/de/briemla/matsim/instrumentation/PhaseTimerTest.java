@@ -0,0 +1,104 @@
+package de.briemla.matsim.instrumentation;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import de.briemla.matsim.instrumentation.PhaseTimer.Phase;
+
+public class PhaseTimerTest {
+
+	private static final int HEAP_BYTES = 4 * 1024 * 1024;
+
+	@Test
+	public void reportsEndedPhasesOnly() {
+		PhaseTimer timer = new PhaseTimer("test \"run\"");
+		Phase outer = timer.start("outer");
+		Phase inner = timer.start("inner");
+		long[][] garbage = new long[64][];
+		for (int index = 0; index < garbage.length; index++) {
+			garbage[index] = new long[1024];
+		}
+		inner.end();
+		inner.end();
+		Phase running = timer.start("running");
+
+		String json = timer.toJson();
+
+		assertThat(garbage.length, is(64));
+		assertThat(json.contains("\"program\": \"test \\\"run\\\"\""), is(true));
+		assertThat(json.contains("\"name\": \"inner\""), is(true));
+		assertThat(json.contains("\"name\": \"outer\""), is(false));
+		assertThat(json.contains("\"name\": \"running\""), is(false));
+		assertThat(inner.getWallTime() > 0, is(true));
+		assertThat(inner.allocatedBytes() >= 64 * 1024 * Long.BYTES, is(true));
+		outer.end();
+		assertThat(timer.toJson().contains("\"name\": \"outer\""), is(true));
+		running.end();
+	}
+
+	@Test
+	public void countsAllocationsOfExitedPoolThreads() throws Exception {
+		PhaseTimer timer = new PhaseTimer("pool");
+		Phase phase = timer.start("pool");
+		ExecutorService pool = Executors.newFixedThreadPool(2, PhaseTimer.threadFactory());
+		Future<long[]> garbage = pool.submit(() -> new long[1024 * 1024]);
+		assertThat(garbage.get().length, is(1024 * 1024));
+		pool.shutdown();
+		assertThat(pool.awaitTermination(10, TimeUnit.SECONDS), is(true));
+		Thread.sleep(100);
+		phase.end();
+
+		assertThat(phase.allocatedBytes() >= 1024 * 1024 * Long.BYTES, is(true));
+	}
+
+	@Test
+	public void measuresPeakHeapOfEachPhase() {
+		PhaseTimer timer = new PhaseTimer("peak");
+		Phase outer = timer.start("outer");
+		Phase large = timer.start("large");
+		long[] garbage = new long[HEAP_BYTES / Long.BYTES];
+		large.end();
+		outer.end();
+
+		assertThat(garbage.length, is(HEAP_BYTES / Long.BYTES));
+		assertThat(large.getPeakHeap() - large.getStartHeap() >= HEAP_BYTES, is(true));
+		assertThat(outer.getPeakHeap() >= large.getPeakHeap(), is(true));
+	}
+
+	@Test
+	public void dropsExitedThreadsAfterLastPhaseEnded() throws Exception {
+		PhaseTimer timer = new PhaseTimer("pool");
+		Phase first = timer.start("first");
+		runPool();
+		Phase second = timer.start("second");
+		runPool();
+		first.end();
+
+		assertThat(PhaseTimer.keptExitedThreads(), is(1));
+
+		second.end();
+
+		assertThat(PhaseTimer.keptExitedThreads(), is(0));
+		assertThat(first.allocatedBytes() >= 2 * 1024 * Long.BYTES, is(true));
+		assertThat(second.allocatedBytes() >= 1024 * Long.BYTES, is(true));
+	}
+
+	/**
+	 * Let a single pool thread allocate and wait until it reported its
+	 * allocations.
+	 */
+	private static void runPool() throws Exception {
+		ExecutorService pool = Executors.newSingleThreadExecutor(PhaseTimer.threadFactory());
+		assertThat(pool.submit(() -> new long[1024]).get().length, is(1024));
+		pool.shutdown();
+		assertThat(pool.awaitTermination(10, TimeUnit.SECONDS), is(true));
+		Thread.sleep(100);
+	}
+}